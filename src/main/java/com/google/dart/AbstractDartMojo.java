@@ -2,12 +2,44 @@ package com.google.dart;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
 import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.sonatype.aether.RepositorySystem;
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.repository.RemoteRepository;
+import org.sonatype.aether.resolution.ArtifactRequest;
+import org.sonatype.aether.resolution.ArtifactResolutionException;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
+import org.sonatype.plexus.build.incremental.BuildContext;
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+
+import com.google.dart.util.ArchiveCache;
+import com.google.dart.util.Diagnostic;
+import com.google.dart.util.ExecutionSnapshot;
+import com.google.dart.util.Fingerprint;
+import com.google.dart.util.OsUtil;
+import com.google.dart.util.PackageGraph;
+import com.google.dart.util.ProcessRunner;
+import com.google.dart.util.Pub;
 
 public abstract class AbstractDartMojo extends AbstractMojo {
 
@@ -35,18 +67,144 @@ public abstract class AbstractDartMojo extends AbstractMojo {
 
 	/**
 	 * provide a dart-sdk
+	 * <p/>
+	 * Not needed if dartSdkArtifact is configured.
 	 *
 	 * @since 2.0.0
 	 */
-	@Parameter(required = true, defaultValue = "${env.DART_SDK}")
+	@Parameter(defaultValue = "${env.DART_SDK}")
     protected File dartSdk;
 
+	/**
+	 * Take the dart-sdk from a maven artifact, given as <code>groupId:artifactId:version</code>, instead of
+	 * dartSdk. The artifact is resolved from the project repositories with the dartSdkClassifier and
+	 * dartSdkType and extracted once into the dartSdkCacheDirectory.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(property = "dart.sdk.artifact")
+	protected String dartSdkArtifact;
+
+	/**
+	 * The classifier of the dart-sdk artifact. Defaults to the platform the build runs on, one of
+	 * <code>linux-x64</code>, <code>linux-ia32</code>, <code>macos-x64</code>, <code>macos-ia32</code>,
+	 * <code>windows-x64</code> and <code>windows-ia32</code>.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(property = "dart.sdk.classifier")
+	protected String dartSdkClassifier;
+
+	/**
+	 * The type of the dart-sdk artifact, <code>zip</code> or <code>tar.gz</code>.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "zip", property = "dart.sdk.type")
+	protected String dartSdkType;
+
+	/**
+	 * The SHA-256 of the dart-sdk artifact in hex. If set the artifact is verified before it is extracted.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(property = "dart.sdk.sha256")
+	protected String dartSdkSha256;
+
+	/**
+	 * Directory to extract dart-sdk artifacts to. Shared by all builds on this machine.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${user.home}/.m2/dart-sdk", property = "dart.sdk.cacheDirectory")
+	protected File dartSdkCacheDirectory;
+
+	@Parameter(defaultValue = "${repositorySystemSession}", readonly = true)
+	private RepositorySystemSession repositorySession;
+
+	@Parameter(defaultValue = "${project.remoteProjectRepositories}", readonly = true)
+	private List<RemoteRepository> remoteRepositories;
+
+	@Component
+	private RepositorySystem repositorySystem;
+
+	/**
+	 * Directory to keep fingerprints and caches between builds.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/dart-maven-plugin", property = "dart.stateDirectory")
+	protected File stateDirectory;
+
+	/**
+	 * Maximum number of dart processes to run concurrently. 0 means one per available processor.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "0", property = "dart.threads")
+	protected int threads;
+
+	/**
+	 * Process every package (directory containing a pubspec.yaml) found below the package roots instead of the
+	 * sourceDirectory only. Packages are processed in the order of their path dependencies, independent
+	 * packages concurrently.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "false", property = "dart.discoverPackages")
+	protected boolean discoverPackages;
+
+	/**
+	 * Directories to search for packages if discoverPackages is set.
+	 * <p/>
+	 * If not specified the default is the sourceDirectory.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter
+	protected List<File> packageRoots = new ArrayList<>();
+
+	/**
+	 * Time in seconds after which a dart process is killed and the build fails. 0 means no timeout.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "0", property = "dart.processTimeout")
+	protected int processTimeout;
+
+	/**
+	 * Additional environment variables for all dart processes.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter
+	protected Map<String, String> environmentVariables = new HashMap<>();
+
+	/**
+	 * Skip dart2js, dwc and pub without scanning the sources if the parameters, the dart-sdk and the timestamps
+	 * of all files and directories they read and wrote are unchanged since their last successful execution.
+	 * Not used for dart-sdk snapshot artifacts, which may change without a timestamp to tell.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "true", property = "dart.skipUpToDate")
+	protected boolean skipUpToDate;
+
+	/**
+	 * Knows about changed files and refreshes outputs when running incrementally inside an IDE.
+	 */
+	@Component
+	private BuildContext buildContext;
+
 	protected void checkDartSdk() {
 
 		if (getLog().isDebugEnabled()) {
 			getLog().debug("Check for DART_SDK.");
 		}
 
+		if (!StringUtils.isEmpty(dartSdkArtifact)) {
+			dartSdk = provideDartSdk();
+		}
 		if (dartSdk == null) {
 			throw new NullPointerException("Dart-sdk required. Configuration error for dartSdk?");
 		}
@@ -59,6 +217,146 @@ public abstract class AbstractDartMojo extends AbstractMojo {
 
 	}
 
+	/**
+	 * Resolves the dartSdkArtifact and extracts it into the cache, unless an earlier build did already.
+	 *
+	 * @return the root of the extracted dart-sdk
+	 */
+	private File provideDartSdk() {
+		final String[] coordinates = dartSdkArtifact.split(":");
+		if (coordinates.length != 3) {
+			throw new IllegalArgumentException("dartSdkArtifact must be groupId:artifactId:version, but is "
+					+ dartSdkArtifact);
+		}
+		final String classifier = StringUtils.isEmpty(dartSdkClassifier) ? OsUtil.getPlatform()
+				: dartSdkClassifier;
+		final DefaultArtifact artifact = new DefaultArtifact(coordinates[0], coordinates[1], classifier,
+				dartSdkType, coordinates[2]);
+
+		final File archive;
+		try {
+			archive = repositorySystem.resolveArtifact(repositorySession,
+					new ArtifactRequest(artifact, remoteRepositories, null)).getArtifact().getFile();
+		} catch (ArtifactResolutionException e) {
+			throw new IllegalStateException("Unable to resolve dart-sdk " + artifact, e);
+		}
+
+		final StringBuilder key = new StringBuilder();
+		key.append(artifact.getGroupId()).append('/').append(artifact.getArtifactId()).append('/')
+				.append(artifact.getVersion()).append('/').append(classifier);
+		if (artifact.isSnapshot()) {
+			key.append('-').append(new Fingerprint().add(String.valueOf(archive.length()))
+					.add(String.valueOf(archive.lastModified())).toString().substring(0, 12));
+		}
+
+		try {
+			final File root = findDartSdkRoot(new ArchiveCache(dartSdkCacheDirectory).extract(archive,
+					key.toString(), StringUtils.isEmpty(dartSdkSha256) ? null : dartSdkSha256));
+			markExecutable(new File(root, "bin"));
+			return root;
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to extract dart-sdk " + archive, e);
+		}
+	}
+
+	/**
+	 * @return the directory containing the version file, which may be nested in a single top level directory
+	 *         (e.g. dart-sdk)
+	 */
+	private File findDartSdkRoot(final File extracted) {
+		final File[] children = extracted.listFiles();
+		if (!new File(extracted, "version").isFile() && children != null) {
+			for (final File child : children) {
+				if (new File(child, "version").isFile()) {
+					return child;
+				}
+			}
+		}
+		return extracted;
+	}
+
+	/**
+	 * Zip files do not keep the executable bit, so the executables are marked once after extraction.
+	 */
+	private void markExecutable(final File directory) {
+		final File[] files = directory.listFiles();
+		if (files == null || OsUtil.isWindows()) {
+			return;
+		}
+		for (final File file : files) {
+			if (file.isDirectory()) {
+				markExecutable(file);
+			} else if (!file.canExecute() && !file.setExecutable(true, false)) {
+				getLog().warn("Unable to make " + file + " executable.");
+			}
+		}
+	}
+
+	/**
+	 * @return true if the snapshot of the last successful execution of the goal still matches
+	 */
+	protected boolean isSnapshotUpToDate(final String goal) {
+		if (dartSdkArtifact != null && dartSdkArtifact.endsWith("-SNAPSHOT")) {
+			return false;
+		}
+		return ExecutionSnapshot.matches(getSnapshotFile(goal), fingerprintParameters().toString());
+	}
+
+	/**
+	 * Removes the snapshot of the last execution of the goal and starts a new one.
+	 */
+	protected ExecutionSnapshot beginSnapshot(final String goal) {
+		final File file = getSnapshotFile(goal);
+		if (file.exists() && !file.delete()) {
+			getLog().warn("Unable to delete snapshot '" + file.getAbsolutePath() + "'.");
+		}
+		return new ExecutionSnapshot(fingerprintParameters().toString());
+	}
+
+	/**
+	 * Writes the snapshot of a successful execution of the goal, together with the dart-sdk it used.
+	 */
+	protected void writeSnapshot(final String goal, final ExecutionSnapshot snapshot) {
+		if (dartSdk != null) {
+			snapshot.addFile(new File(dartSdk, "version"));
+		}
+		final File file = getSnapshotFile(goal);
+		try {
+			snapshot.write(file);
+			if (getLog().isDebugEnabled()) {
+				getLog().debug("Snapshot of " + goal + " with " + snapshot.size() + " entries written to " + file);
+			}
+		} catch (IOException e) {
+			getLog().warn("Unable to write snapshot '" + file.getAbsolutePath() + "'.", e);
+		}
+	}
+
+	private File getSnapshotFile(final String goal) {
+		return new File(stateDirectory, "snapshots/" + goal + ".snapshot");
+	}
+
+	/**
+	 * Fingerprint of the parameters an execution depends on, the key of its snapshot. Goals using snapshots add
+	 * their own parameters.
+	 */
+	protected Fingerprint fingerprintParameters() {
+		final Fingerprint fingerprint = new Fingerprint()
+				.add(getClass().getName())
+				.add(basedir.getAbsolutePath())
+				.add(sourceDirectory.getAbsolutePath())
+				.add(packagePath)
+				.add(dartSdk != null ? dartSdk.getAbsolutePath() : null)
+				.add(dartSdkArtifact)
+				.add(dartSdkClassifier)
+				.add(dartSdkType)
+				.add(String.valueOf(discoverPackages))
+				.add(packageRoots.toString());
+		for (final Map.Entry<String, String> variable : new TreeMap<>(environmentVariables).entrySet()) {
+			fingerprint.add(variable.getKey()).add(variable.getValue());
+		}
+		return fingerprint;
+	}
+
     protected String readDartVersion() {
 		File dartVersionFile = new File(dartSdk, "version");
 		if (!dartVersionFile.isFile()) {
@@ -77,12 +375,186 @@ public abstract class AbstractDartMojo extends AbstractMojo {
 	}
 
     protected String buildPackagePath() {
+        return buildPackagePath(sourceDirectory);
+    }
+
+    protected String buildPackagePath(final File packageDirectory) {
         StringBuilder sb = new StringBuilder();
-        sb.append(new File(sourceDirectory, packagePath).getAbsolutePath());
+        sb.append(new File(packageDirectory, packagePath).getAbsolutePath());
         sb.append(File.separator);
         return sb.toString();
     }
 
+	/**
+	 * Creates a runner for the commandline, configured with the environment, timeout and listener of this mojo.
+	 */
+	protected ProcessRunner createProcessRunner(final Commandline cl) {
+		return ProcessRunner.forCommandline(cl)
+				.setEnvironment(environmentVariables)
+				.setTimeout(processTimeout * 1000L)
+				.addListener(new ProcessRunner.Listener() {
+					@Override
+					public void started(final ProcessRunner runner, final Integer pid) {
+						if (getLog().isDebugEnabled()) {
+							getLog().debug("Started " + runner.getName() + (pid != null ? " (pid " + pid + ")" : ""));
+						}
+					}
+
+					@Override
+					public void finished(final ProcessRunner runner, final int exitCode, final long durationMillis) {
+						if (getLog().isDebugEnabled()) {
+							getLog().debug(runner.getName() + " exited with code " + exitCode + " after "
+									+ durationMillis + " ms");
+						}
+					}
+				});
+	}
+
+	/**
+	 * Runs the commandline and waits for it to finish.
+	 *
+	 * @return the exit code
+	 * @throws MojoExecutionException if the process cannot be started, times out or the build is interrupted
+	 */
+	protected int executeCommandLine(final Commandline cl, final StreamConsumer output, final StreamConsumer error)
+			throws MojoExecutionException {
+		return executeCommandLine(createProcessRunner(cl).setOutput(output).setError(error));
+	}
+
+	protected int executeCommandLine(final ProcessRunner runner) throws MojoExecutionException {
+		try {
+			return runner.run();
+		} catch (ProcessRunner.TimeoutException e) {
+			throw new MojoExecutionException(e.getMessage(), e);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to execute " + runner.getName(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while executing " + runner.getName(), e);
+		}
+	}
+
+	protected BuildContext getBuildContext() {
+		if (buildContext == null) {
+			final DefaultBuildContext defaultBuildContext = new DefaultBuildContext();
+			defaultBuildContext.enableLogging(new ConsoleLogger(Logger.LEVEL_INFO, getClass().getSimpleName()));
+			buildContext = defaultBuildContext;
+		}
+		return buildContext;
+	}
+
+	/**
+	 * Attaches diagnostics to the files they refer to, e.g. as markers in the IDE.
+	 */
+	protected void addMessages(final List<Diagnostic> diagnostics) {
+		for (final Diagnostic diagnostic : diagnostics) {
+			getBuildContext().addMessage(diagnostic.getFile(), diagnostic.getLine(), diagnostic.getColumn(),
+					diagnostic.getMessage(), diagnostic.getSeverity() == Diagnostic.Severity.ERROR
+							? BuildContext.SEVERITY_ERROR : BuildContext.SEVERITY_WARNING, null);
+		}
+	}
+
+	/**
+	 * @return true if running incrementally (i.e. in an IDE) and none of the given files or directories changed
+	 *         since the last build
+	 */
+	protected boolean isUnchangedInIncrementalBuild(final File... files) {
+		if (!getBuildContext().isIncremental()) {
+			return false;
+		}
+		for (final File file : files) {
+			if (getBuildContext().hasDelta(file)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected int getThreadCount() {
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return the file the goals keep the {@link com.google.dart.util.SourceIndex} of the dart sources in
+	 */
+	protected File getSourceIndexFile() {
+		return new File(stateDirectory, "sources.index");
+	}
+
+	protected List<Pub> findPackages() throws MojoExecutionException {
+		final List<File> roots = packageRoots.isEmpty() ? Collections.singletonList(sourceDirectory) : packageRoots;
+		final List<Pub> pubs = new ArrayList<>();
+		for (final File root : roots) {
+			try {
+				pubs.addAll(Pub.findAll(root));
+			} catch (FileNotFoundException e) {
+				throw new MojoExecutionException("Unable to read pubspec below " + root.getAbsolutePath(), e);
+			}
+		}
+		if (getLog().isDebugEnabled()) {
+			for (final Pub pub : pubs) {
+				getLog().debug("Found package " + pub.getName() + " in " + relativePath(pub.getPath()));
+			}
+		}
+		return pubs;
+	}
+
+	/**
+	 * Runs the task for all packages in the order of their path dependencies, independent packages concurrently.
+	 * Failures are reported together after all packages are done.
+	 */
+	protected void executeForPackages(final String name, final List<Pub> pubs, final PackageGraph.Task task)
+			throws MojoExecutionException {
+		if (pubs.isEmpty()) {
+			getLog().info("No packages found.");
+			return;
+		}
+
+		final PackageGraph graph = new PackageGraph(pubs);
+
+		getLog().info("Run " + name + " for " + pubs.size() + " package" + (pubs.size() == 1 ? "" : "s")
+				+ " using " + getThreadCount() + " threads.");
+
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(getThreadCount(), pubs.size()));
+		final Map<Pub, Throwable> failures;
+		try {
+			failures = graph.execute(executor, task);
+		} catch (IllegalStateException e) {
+			throw new MojoExecutionException(e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while running " + name, e);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		if (failures.isEmpty()) {
+			return;
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<Pub, Throwable> failure : failures.entrySet()) {
+			getLog().error(name + " failed for " + relativePath(failure.getKey().getPath()) + ": "
+					+ failure.getValue().getMessage());
+			sb.append(sb.length() == 0 ? "" : ", ").append(failure.getKey().getName());
+		}
+		throw new MojoExecutionException(StringUtils.capitalizeFirstLetter(name) + " failed for "
+				+ failures.size() + " package" + (failures.size() == 1 ? "" : "s") + ": " + sb);
+	}
+
+	/**
+	 * Logs output collected for a package as a whole.
+	 */
+	protected void logPackageOutput(final String name, final Pub pub, final String output, final String error) {
+		if (output.isEmpty() && error.isEmpty()) {
+			return;
+		}
+		final StringBuilder sb = new StringBuilder();
+		sb.append(name).append(" output for ").append(pub.getName()).append(" (")
+				.append(relativePath(pub.getPath())).append("):").append(System.lineSeparator());
+		sb.append(output).append(error);
+		getLog().info(sb.toString());
+	}
+
 	protected String relativePath(final File absolutePath) {
 		return absolutePath.getAbsolutePath().replace(basedir + "/", "");
 	}
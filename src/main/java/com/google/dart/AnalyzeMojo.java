@@ -0,0 +1,467 @@
+package com.google.dart;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.Commandline;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.google.dart.util.DartSource;
+import com.google.dart.util.Diagnostic;
+import com.google.dart.util.Fingerprint;
+import com.google.dart.util.OsUtil;
+
+/**
+ * Goal to analyze dart sources with dartanalyzer.
+ * <p/>
+ * The results are cached per library and reused as long as neither the library nor any file it imports, exports
+ * or includes as a part changed. Changed libraries are analyzed in batches, one dartanalyzer process per thread.
+ */
+@Mojo(name = "analyze", defaultPhase = LifecyclePhase.COMPILE)
+public class AnalyzeMojo extends AbstractDartMojo {
+
+	private final static String ARGUMENT_MACHINE = "--machine";
+
+	private final static String ARGUMENT_PACKAGE_ROOT = "--package-root=";
+
+	private final static String SEVERITY_NONE = "none";
+
+	/**
+	 * Skip the execution of dartanalyzer.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "false", property = "dart.analyze.skip")
+	private boolean skipAnalyze;
+
+	/**
+	 * Analyze all libraries, ignoring cached results.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "false", property = "dart.analyze.force")
+	private boolean force;
+
+	/**
+	 * The lowest severity failing the build: error, warning, hint, info or none.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "error", property = "dart.analyze.failOnSeverity")
+	private String failOnSeverity;
+
+	/**
+	 * A list of inclusion filters for the libraries to analyze.
+	 * <p/>
+	 * If not specified the default is '**&#47;*.dart'
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter
+	private Set<String> includes = new HashSet<>();
+
+	/**
+	 * A list of exclusion filters for the libraries to analyze.
+	 * <p/>
+	 * If not specified the default is '**&#47;packages&#47;**'
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter
+	private Set<String> excludes = new HashSet<>();
+
+	/**
+	 * A library to analyze with the files it references and its cache key.
+	 */
+	private static class Library {
+
+		private final File file;
+
+		private final Set<File> closure;
+
+		private final String fingerprint;
+
+		Library(final File file, final Set<File> closure, final String fingerprint) {
+			this.file = file;
+			this.closure = closure;
+			this.fingerprint = fingerprint;
+		}
+	}
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (skipAnalyze) {
+			getLog().info("skipping dartanalyzer execution");
+			return;
+		}
+		if (isUnchangedInIncrementalBuild(sourceDirectory)) {
+			getLog().info("Nothing to analyze - no dart sources changed");
+			return;
+		}
+		final Diagnostic.Severity threshold = getFailSeverity();
+
+		checkAnalyzer();
+
+		final Map<File, List<Diagnostic>> results = new LinkedHashMap<>();
+		final List<Library> stale = new ArrayList<>();
+		try {
+			final String baseFingerprint = new Fingerprint()
+					.add(dartSdk.getAbsolutePath())
+					.add(readDartVersion())
+					.add(buildPackagePath())
+					.toString();
+			final File packagesDirectory = new File(sourceDirectory, packagePath);
+			for (final File file : findLibraries()) {
+				final Set<File> closure = DartSource.closure(Collections.singleton(file), packagesDirectory);
+				final Fingerprint fingerprint = new Fingerprint().add(baseFingerprint);
+				for (final File referenced : new TreeSet<>(closure)) {
+					fingerprint.add(referenced.getAbsolutePath()).addFile(referenced);
+				}
+				final Library library = new Library(closure.iterator().next(), closure, fingerprint.toString());
+				final List<Diagnostic> cached = force ? null : readResults(library);
+				if (cached != null) {
+					results.put(library.file, cached);
+				} else {
+					stale.add(library);
+				}
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to read dart sources in " + relativePath(sourceDirectory), e);
+		}
+
+		if (stale.isEmpty()) {
+			getLog().info("Nothing to analyze - all " + results.size() + " libraries are up to date");
+		} else {
+			getLog().info("Analyzing " + stale.size() + " of " + (stale.size() + results.size()) + " libraries");
+			results.putAll(analyze(stale));
+		}
+
+		report(results, threshold);
+	}
+
+	private Map<File, List<Diagnostic>> analyze(final List<Library> libraries) throws MojoExecutionException {
+		final int batchCount = Math.min(getThreadCount(), libraries.size());
+		final List<List<Library>> batches = new ArrayList<>();
+		for (int i = 0; i < batchCount; i++) {
+			batches.add(new ArrayList<Library>());
+		}
+		for (int i = 0; i < libraries.size(); i++) {
+			batches.get(i % batchCount).add(libraries.get(i));
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(batchCount);
+		try {
+			final List<Future<Map<File, List<Diagnostic>>>> futures = new ArrayList<>();
+			for (final List<Library> batch : batches) {
+				futures.add(executor.submit(new Callable<Map<File, List<Diagnostic>>>() {
+					@Override
+					public Map<File, List<Diagnostic>> call() throws MojoExecutionException {
+						return analyzeBatch(batch);
+					}
+				}));
+			}
+			final Map<File, List<Diagnostic>> results = new LinkedHashMap<>();
+			for (final Future<Map<File, List<Diagnostic>>> future : futures) {
+				results.putAll(future.get());
+			}
+			return results;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MojoExecutionException) {
+				throw (MojoExecutionException) e.getCause();
+			}
+			throw new MojoExecutionException("Unable to analyze dart sources", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while analyzing dart sources", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Map<File, List<Diagnostic>> analyzeBatch(final List<Library> batch) throws MojoExecutionException {
+		final Commandline cl = new Commandline();
+		cl.setExecutable(getAnalyzerExecutable().getAbsolutePath());
+		cl.setWorkingDirectory(basedir);
+		cl.createArg().setValue(ARGUMENT_MACHINE);
+		if (isPackagePath()) {
+			cl.createArg().setValue(ARGUMENT_PACKAGE_ROOT + buildPackagePath());
+		}
+		for (final Library library : batch) {
+			cl.createArg().setValue(library.file.getAbsolutePath());
+		}
+		if (getLog().isDebugEnabled()) {
+			getLog().debug(cl.toString());
+		}
+
+		// one consumer per stream, the streams are pumped by different threads
+		final CommandLineUtils.StringStreamConsumer output = new CommandLineUtils.StringStreamConsumer();
+		final CommandLineUtils.StringStreamConsumer error = new CommandLineUtils.StringStreamConsumer();
+		final Diagnostic.AnalyzerCollector outputDiagnostics = new Diagnostic.AnalyzerCollector(output);
+		final Diagnostic.AnalyzerCollector errorDiagnostics = new Diagnostic.AnalyzerCollector(error);
+		final int returnValue = executeCommandLine(cl, outputDiagnostics, errorDiagnostics);
+
+		final List<Diagnostic> diagnostics = new ArrayList<>(outputDiagnostics.getDiagnostics());
+		diagnostics.addAll(errorDiagnostics.getDiagnostics());
+		if (returnValue != 0 && diagnostics.isEmpty()) {
+			throw new MojoExecutionException("dartanalyzer returned error code " + returnValue
+					+ System.lineSeparator() + output.getOutput() + error.getOutput());
+		}
+
+		final Map<File, List<Diagnostic>> results = new LinkedHashMap<>();
+		for (final Library library : batch) {
+			results.put(library.file, new ArrayList<Diagnostic>());
+		}
+		for (final Diagnostic diagnostic : diagnostics) {
+			results.get(findOwner(batch, diagnostic.getFile())).add(diagnostic);
+		}
+		for (final Library library : batch) {
+			writeResults(library, results.get(library.file));
+		}
+		return results;
+	}
+
+	/**
+	 * @return the library of the batch a diagnostic belongs to: the library itself, else the first library
+	 *         referencing the file, e.g. as a part
+	 */
+	private static File findOwner(final List<Library> batch, final File file) {
+		final File normalized = file.toPath().toAbsolutePath().normalize().toFile();
+		for (final Library library : batch) {
+			if (library.file.equals(normalized)) {
+				return library.file;
+			}
+		}
+		for (final Library library : batch) {
+			if (library.closure.contains(normalized)) {
+				return library.file;
+			}
+		}
+		return batch.get(0).file;
+	}
+
+	private void report(final Map<File, List<Diagnostic>> results, final Diagnostic.Severity threshold)
+			throws MojoFailureException {
+		final List<Diagnostic> diagnostics = new ArrayList<>();
+		for (final Map.Entry<File, List<Diagnostic>> result : results.entrySet()) {
+			removeMessages(result.getKey());
+			diagnostics.addAll(result.getValue());
+		}
+		Collections.sort(diagnostics, new Comparator<Diagnostic>() {
+			@Override
+			public int compare(final Diagnostic d1, final Diagnostic d2) {
+				final int file = d1.getFile().compareTo(d2.getFile());
+				return file != 0 ? file : d1.getLine() - d2.getLine();
+			}
+		});
+
+		int failures = 0;
+		for (final Diagnostic diagnostic : diagnostics) {
+			final String message = relativePath(diagnostic.getFile()) + ":" + diagnostic.getLine() + ":"
+					+ diagnostic.getColumn() + ": " + diagnostic.getMessage();
+			switch (diagnostic.getSeverity()) {
+			case ERROR:
+				getLog().error(message);
+				break;
+			case WARNING:
+				getLog().warn(message);
+				break;
+			default:
+				getLog().info(message);
+			}
+			if (threshold != null && diagnostic.getSeverity().compareTo(threshold) <= 0) {
+				failures++;
+			}
+		}
+		addMessages(diagnostics);
+		for (final Map.Entry<File, List<Diagnostic>> result : results.entrySet()) {
+			recordMarkedFiles(result.getKey(), result.getValue());
+		}
+
+		getLog().info("Analyzed " + results.size() + " libraries, " + diagnostics.size() + " issue"
+				+ (diagnostics.size() == 1 ? "" : "s") + " found");
+		if (failures > 0) {
+			throw new MojoFailureException("dartanalyzer found " + failures + " issue" + (failures == 1 ? "" : "s")
+					+ " of severity " + failOnSeverity + " or higher");
+		}
+	}
+
+	/**
+	 * Removes the messages of the last analysis of a library, from the library and from the files they were
+	 * attached to, e.g. its parts.
+	 */
+	private void removeMessages(final File library) {
+		getBuildContext().removeMessages(library);
+		final File markedFiles = getMarkedFilesFile(library);
+		if (!markedFiles.isFile()) {
+			return;
+		}
+		try {
+			for (final String markedFile : Files.readLines(markedFiles, Charsets.UTF_8)) {
+				getBuildContext().removeMessages(new File(markedFile));
+			}
+		} catch (IOException e) {
+			getLog().debug("Unable to read the files with messages of " + relativePath(library) + ".", e);
+		}
+	}
+
+	/**
+	 * Records the files the messages of a library were attached to, to remove them before the next analysis.
+	 */
+	private void recordMarkedFiles(final File library, final List<Diagnostic> diagnostics) {
+		final Set<String> markedFiles = new TreeSet<>();
+		for (final Diagnostic diagnostic : diagnostics) {
+			markedFiles.add(diagnostic.getFile().getAbsolutePath());
+		}
+		final File file = getMarkedFilesFile(library);
+		try {
+			if (markedFiles.isEmpty()) {
+				if (file.exists() && !file.delete()) {
+					throw new IOException("Unable to delete " + file);
+				}
+			} else {
+				Files.createParentDirs(file);
+				Files.write(Joiner.on('\n').join(markedFiles) + '\n', file, Charsets.UTF_8);
+			}
+		} catch (IOException e) {
+			getLog().warn("Unable to record the files with messages of " + relativePath(library) + ".", e);
+		}
+	}
+
+	private List<Diagnostic> readResults(final Library library) throws IOException {
+		final File resultFile = getResultFile(library.file);
+		if (!resultFile.isFile()) {
+			return null;
+		}
+		final List<String> lines = Files.readLines(resultFile, Charsets.UTF_8);
+		if (lines.isEmpty() || !lines.get(0).equals(library.fingerprint)) {
+			return null;
+		}
+		final List<Diagnostic> diagnostics = new ArrayList<>();
+		for (final String line : lines.subList(1, lines.size())) {
+			final Diagnostic diagnostic = Diagnostic.parseMachineFormat(line);
+			if (diagnostic == null) {
+				return null;
+			}
+			diagnostics.add(diagnostic);
+		}
+		return diagnostics;
+	}
+
+	private void writeResults(final Library library, final List<Diagnostic> diagnostics)
+			throws MojoExecutionException {
+		final StringBuilder sb = new StringBuilder(library.fingerprint).append('\n');
+		for (final Diagnostic diagnostic : diagnostics) {
+			sb.append(diagnostic.toMachineFormat()).append('\n');
+		}
+		final File resultFile = getResultFile(library.file);
+		try {
+			Files.createParentDirs(resultFile);
+			Files.write(sb, resultFile, Charsets.UTF_8);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to write analysis results to " + resultFile, e);
+		}
+	}
+
+	private File getResultFile(final File library) {
+		return getStateFile(library, ".results");
+	}
+
+	private File getMarkedFilesFile(final File library) {
+		return getStateFile(library, ".files");
+	}
+
+	private File getStateFile(final File library, final String extension) {
+		final String key = new Fingerprint().add(library.getAbsolutePath()).toString();
+		return new File(stateDirectory, "analyze/" + library.getName() + "-" + key + extension);
+	}
+
+	/**
+	 * @return all included dart files of the sourceDirectory, except parts of other libraries
+	 */
+	private List<File> findLibraries() throws IOException {
+		final List<File> libraries = new ArrayList<>();
+		if (!sourceDirectory.isDirectory()) {
+			return libraries;
+		}
+		final DirectoryScanner ds = new DirectoryScanner();
+		ds.setBasedir(sourceDirectory);
+		ds.setIncludes(getIncludes().toArray(new String[0]));
+		ds.setExcludes(getExcludes().toArray(new String[0]));
+		ds.addDefaultExcludes();
+		ds.scan();
+		for (final String path : ds.getIncludedFiles()) {
+			final File file = new File(sourceDirectory, path);
+			if (!DartSource.parse(file).isPart()) {
+				libraries.add(file);
+			}
+		}
+		Collections.sort(libraries);
+		return libraries;
+	}
+
+	private Diagnostic.Severity getFailSeverity() throws MojoExecutionException {
+		if (SEVERITY_NONE.equalsIgnoreCase(failOnSeverity)) {
+			return null;
+		}
+		final Diagnostic.Severity severity = Diagnostic.Severity.forName(failOnSeverity);
+		if (severity == null) {
+			throw new MojoExecutionException("Unknown failOnSeverity '" + failOnSeverity
+					+ "', expected error, warning, hint, info or none");
+		}
+		return severity;
+	}
+
+	protected void checkAnalyzer() {
+		checkDartSdk();
+		if (!getAnalyzerExecutable().canExecute()) {
+			throw new IllegalArgumentException("Dartanalyzer not executable! Configuration error for dartSdk? dartSdk="
+					+ dartSdk.getAbsolutePath());
+		}
+	}
+
+	protected File getAnalyzerExecutable() {
+		return new File(dartSdk, "bin/dartanalyzer" + (OsUtil.isWindows() ? ".bat" : ""));
+	}
+
+	protected Set<String> getIncludes() {
+		if (includes.isEmpty()) {
+			return ImmutableSet.of("**/*.dart");
+		}
+		return includes;
+	}
+
+	protected Set<String> getExcludes() {
+		if (excludes.isEmpty()) {
+			return ImmutableSet.of("**/packages/**");
+		}
+		return excludes;
+	}
+
+	protected boolean isPackagePath() {
+		return packagePath != null;
+	}
+}
@@ -0,0 +1,313 @@
+package com.google.dart;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.dart.util.LinkUtil;
+import com.google.dart.util.OutputCommitter;
+
+/**
+ * Goal to assemble a deployable web directory from the dart sources, the dwc output and the dart2js output, in
+ * that order, later files replacing earlier ones.
+ * <p/>
+ * Files are hard linked where the file system allows it and copied otherwise. Instead of repeating the
+ * <code>packages</code> directory of every source directory, the packages are assembled once at the top of the
+ * web directory and every nested <code>packages</code> directory links to it. Unchanged files of an earlier
+ * assembly are left alone.
+ */
+@Mojo(name = "assemble", defaultPhase = LifecyclePhase.PREPARE_PACKAGE)
+public class AssembleMojo extends AbstractDartMojo {
+
+	private static final String DART_SUFFIX = ".dart";
+
+	/**
+	 * The directory to assemble the web application into.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/dart-web", property = "dart.assemble.directory")
+	private File webDirectory;
+
+	/**
+	 * The output directory of dwc.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/generated-sources/dart/dwc", property = "dart.assemble.dwcDirectory")
+	private File dwcOutputDirectory;
+
+	/**
+	 * The output directory of dart2js.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/generated-sources/dart/dart2js", property = "dart.assemble.dart2jsDirectory")
+	private File dart2jsOutputDirectory;
+
+	/**
+	 * A list of inclusion filters for the files of the sourceDirectory.
+	 * <p/>
+	 * If not specified the default is '**'
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter
+	private Set<String> includes = new HashSet<>();
+
+	/**
+	 * A list of exclusion filters for the files of the sourceDirectory.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter
+	private Set<String> excludes = new HashSet<>();
+
+	/**
+	 * Leave out all dart files, for deployments running the compiled javascript only.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "false", property = "dart.assemble.jsOnly")
+	private boolean jsOnly;
+
+	/**
+	 * Files linked into the staging directory and directories that get a link to the shared packages.
+	 */
+	private static class Assembly {
+
+		private final Path staging;
+
+		private final Set<String> packageLinks = new TreeSet<>();
+
+		private int files;
+
+		private int copies;
+
+		Assembly(final Path staging) {
+			this.staging = staging;
+		}
+
+		void link(final String relativePath, final Path source) throws IOException {
+			final Path target = staging.resolve(relativePath);
+			Files.createDirectories(target.getParent());
+			if (LinkUtil.linkFile(target, source) == LinkUtil.Mode.COPY) {
+				copies++;
+			}
+			files++;
+		}
+	}
+
+	@Override
+	public void execute() throws MojoExecutionException {
+		final Path staging = new File(webDirectory.getPath() + ".staging").toPath();
+		final Assembly assembly = new Assembly(staging);
+		try {
+			LinkUtil.delete(staging);
+			Files.createDirectories(staging);
+
+			final File packagesDirectory = new File(sourceDirectory, packagePath);
+			if (packagesDirectory.isDirectory()) {
+				assemblePackages(assembly, packagesDirectory.toPath());
+			}
+			assembleSources(assembly);
+			assembleTree(assembly, dwcOutputDirectory);
+			assembleTree(assembly, dart2jsOutputDirectory);
+			linkPackages(assembly);
+
+			final OutputCommitter.Result result = OutputCommitter.commitDirectory(staging, webDirectory.toPath());
+			getBuildContext().refresh(webDirectory);
+
+			getLog().info("Assembled " + assembly.files + " files into " + relativePath(webDirectory) + ": "
+					+ result);
+			if (assembly.copies > 0) {
+				getLog().info(assembly.copies + " files were copied, the file system does not support hard links");
+			}
+			if (!assembly.packageLinks.isEmpty()) {
+				getLog().info("Packages shared by " + assembly.packageLinks.size() + " director"
+						+ (assembly.packageLinks.size() == 1 ? "y" : "ies"));
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to assemble " + relativePath(webDirectory), e);
+		}
+	}
+
+	/**
+	 * Links the files of all packages, following the links pub creates, into the top level packages directory.
+	 */
+	private void assemblePackages(final Assembly assembly, final Path packagesDirectory) throws IOException {
+		walk(packagesDirectory, new FileCallback() {
+			@Override
+			public void file(final String relativePath, final Path file) throws IOException {
+				if (!jsOnly || !relativePath.endsWith(DART_SUFFIX)) {
+					assembly.link(packagePath + "/" + relativePath, file);
+				}
+			}
+
+			@Override
+			public boolean directory(final String relativePath) {
+				return true;
+			}
+		});
+	}
+
+	private void assembleSources(final Assembly assembly) throws IOException {
+		if (!sourceDirectory.isDirectory()) {
+			return;
+		}
+		final DirectoryScanner ds = new DirectoryScanner();
+		ds.setBasedir(sourceDirectory);
+		ds.setIncludes(getIncludes().toArray(new String[0]));
+		final List<String> allExcludes = new ArrayList<>(excludes);
+		allExcludes.add("**/" + packagePath);
+		allExcludes.add("**/" + packagePath + "/**");
+		if (jsOnly) {
+			allExcludes.add("**/*" + DART_SUFFIX);
+		}
+		ds.setExcludes(allExcludes.toArray(new String[allExcludes.size()]));
+		ds.addDefaultExcludes();
+		ds.scan();
+		for (final String included : ds.getIncludedFiles()) {
+			final String relativePath = included.replace(File.separatorChar, '/');
+			assembly.link(relativePath, new File(sourceDirectory, included).toPath());
+			final String parent = parent(relativePath);
+			if (!parent.isEmpty() && new File(sourceDirectory, parent + "/" + packagePath).exists()) {
+				assembly.packageLinks.add(parent);
+			}
+		}
+	}
+
+	/**
+	 * Links all files of a generated directory, except its packages directories which are replaced by links to
+	 * the shared packages.
+	 */
+	private void assembleTree(final Assembly assembly, final File directory) throws IOException {
+		if (!directory.isDirectory()) {
+			return;
+		}
+		walk(directory.toPath(), new FileCallback() {
+			@Override
+			public void file(final String relativePath, final Path file) throws IOException {
+				if (!jsOnly || !relativePath.endsWith(DART_SUFFIX)) {
+					assembly.link(relativePath, file);
+				}
+			}
+
+			@Override
+			public boolean directory(final String relativePath) {
+				if (relativePath.equals(packagePath) || relativePath.endsWith("/" + packagePath)) {
+					final String parent = parent(relativePath);
+					if (!parent.isEmpty()) {
+						assembly.packageLinks.add(parent);
+					}
+					return false;
+				}
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Makes the packages directory of every directory needing one a relative symbolic link to the shared
+	 * packages, or a tree of hard links to them if symbolic links are not supported.
+	 */
+	private void linkPackages(final Assembly assembly) throws IOException {
+		final Path sharedPackages = assembly.staging.resolve(packagePath);
+		if (!Files.isDirectory(sharedPackages)) {
+			return;
+		}
+		for (final String directory : assembly.packageLinks) {
+			final Path link = assembly.staging.resolve(directory).resolve(packagePath);
+			if (Files.exists(link, LinkOption.NOFOLLOW_LINKS)) {
+				continue;
+			}
+			Files.createDirectories(link.getParent());
+			try {
+				Files.createSymbolicLink(link, link.getParent().relativize(sharedPackages));
+			} catch (UnsupportedOperationException | IOException e) {
+				LinkUtil.linkTree(sharedPackages, link);
+			}
+		}
+	}
+
+	private interface FileCallback {
+
+		void file(String relativePath, Path file) throws IOException;
+
+		/**
+		 * @return true to descend into the directory
+		 */
+		boolean directory(String relativePath);
+	}
+
+	/**
+	 * Walks a directory tree following symbolic links, reporting paths relative to the root with '/' as
+	 * separator.
+	 */
+	private static void walk(final Path root, final FileCallback callback) throws IOException {
+		Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+				new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+						if (dir.equals(root)) {
+							return FileVisitResult.CONTINUE;
+						}
+						return callback.directory(relative(root, dir)) ? FileVisitResult.CONTINUE
+								: FileVisitResult.SKIP_SUBTREE;
+					}
+
+					@Override
+					public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+							throws IOException {
+						if (attrs.isRegularFile()) {
+							callback.file(relative(root, file), file);
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(final Path file, final IOException e) throws IOException {
+						if (e instanceof FileSystemLoopException) {
+							return FileVisitResult.SKIP_SUBTREE;
+						}
+						throw e;
+					}
+				});
+	}
+
+	private static String relative(final Path root, final Path path) {
+		return root.relativize(path).toString().replace(File.separatorChar, '/');
+	}
+
+	private static String parent(final String relativePath) {
+		final int slash = relativePath.lastIndexOf('/');
+		return slash < 0 ? "" : relativePath.substring(0, slash);
+	}
+
+	protected Set<String> getIncludes() {
+		if (includes.isEmpty()) {
+			return ImmutableSet.of("**");
+		}
+		return includes;
+	}
+}
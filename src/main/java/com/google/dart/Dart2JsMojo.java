@@ -17,12 +17,21 @@ package com.google.dart;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -30,19 +39,26 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.compiler.util.scan.InclusionScanException;
+import org.codehaus.plexus.compiler.util.scan.SimpleSourceInclusionScanner;
 import org.codehaus.plexus.compiler.util.scan.SourceInclusionScanner;
-import org.codehaus.plexus.compiler.util.scan.StaleSourceScanner;
 import org.codehaus.plexus.compiler.util.scan.mapping.SourceMapping;
 import org.codehaus.plexus.compiler.util.scan.mapping.SuffixMapping;
 import org.codehaus.plexus.util.cli.Arg;
-import org.codehaus.plexus.util.cli.CommandLineException;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
-import org.codehaus.plexus.util.cli.StreamConsumer;
-import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.dart.util.Diagnostic;
+import com.google.dart.util.DiagnosticReport;
+import com.google.dart.util.ExecutionSnapshot;
+import com.google.dart.util.Fingerprint;
+import com.google.dart.util.LinkUtil;
+import com.google.dart.util.MemoryScheduler;
 import com.google.dart.util.OsUtil;
+import com.google.dart.util.OutputCommitter;
+import com.google.dart.util.ProcessRunner;
+import com.google.dart.util.SourceIndex;
 
 /**
  * Goal to compile dart files to javascript.
@@ -66,6 +82,16 @@ public class Dart2JsMojo extends AbstractDartMojo {
 	 */
 	private final static String ARGUMENT_OUTPUT_FILE = "-o";
 
+	private final static long MEGABYTE = 1024 * 1024;
+
+	private final static String SNAPSHOT = "dart2js";
+
+	/**
+	 * The variant compiled if none are configured, with the options of the goal, directly into the
+	 * outputDirectory.
+	 */
+	private final static Variant DEFAULT_VARIANT = new Variant();
+
 	/**
 	 * Where to find packages, that is, "package:..." imports.
 	 *
@@ -176,6 +202,50 @@ public class Dart2JsMojo extends AbstractDartMojo {
 	@Parameter(defaultValue = "false", property = "dart.force")
 	private boolean force;
 
+	/**
+	 * Compile only the included files that are programs, i.e. libraries with a top level main function, and
+	 * skip other libraries and part files.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "true", property = "dart.dart2js.entrypointsOnly")
+	private boolean entrypointsOnly;
+
+	/**
+	 * Start another dart2js process only while the available memory covers the memory it is expected to take,
+	 * in addition to the limit of threads. The expected memory of a file is the peak measured when it was
+	 * compiled last. Needs /proc, i.e. Linux, elsewhere only threads limits the number of processes.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "true", property = "dart.dart2js.memoryAware")
+	private boolean memoryAware;
+
+	/**
+	 * The memory in megabytes a file that was not compiled before is expected to take.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "1024", property = "dart.dart2js.memoryEstimate")
+	private int memoryEstimate;
+
+	/**
+	 * The memory in megabytes to leave available for other processes.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "512", property = "dart.dart2js.memoryReserve")
+	private int memoryReserve;
+
+	/**
+	 * The JSON file listing the distinct diagnostics of all compilations of an execution, each with its file,
+	 * line, column, severity, message and the entrypoints whose compilation reported it.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/dart2js-diagnostics.json", property = "dart.dart2js.diagnosticsFile")
+	private File diagnosticsFile;
+
     /**
      * bootstrap file generated by dwc
      * http://www.dartlang.org/articles/web-ui/tools.html#command-line-api
@@ -228,23 +298,97 @@ public class Dart2JsMojo extends AbstractDartMojo {
 	@Parameter(property = "lastModGranularityMs", defaultValue = "0")
 	private int staleMillis;
 
+	/**
+	 * Named combinations of dart2js options to compile every file with, each into a subdirectory of the
+	 * outputDirectory named after the variant, e.g.
+	 * <pre>
+	 * &lt;variants&gt;
+	 *   &lt;variant&gt;&lt;name&gt;debug&lt;/name&gt;&lt;checkedMode&gt;true&lt;/checkedMode&gt;&lt;/variant&gt;
+	 *   &lt;variant&gt;&lt;name&gt;release&lt;/name&gt;&lt;minify&gt;true&lt;/minify&gt;&lt;/variant&gt;
+	 * &lt;/variants&gt;
+	 * </pre>
+	 * Options a variant does not set (checkedMode, minify, analyseAll, suppressWarnings) are taken from the goal.
+	 * The sources are scanned once for all variants and all compilations share one pool of threads. Without
+	 * variants the files are compiled directly into the outputDirectory.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter
+	private List<Variant> variants = new ArrayList<>();
+
+	private DiagnosticReport diagnosticReport;
+
 	public void execute() throws MojoExecutionException {
 		if (isSkipDart2Js()) {
 			getLog().info("skipping dart2js execution");
 			return;
 		}
+		if (!skipUpToDate) {
+			processDart2Js(dwcSourceDirectory);
+			return;
+		}
+		if (!isForce() && isSnapshotUpToDate(SNAPSHOT)) {
+			getLog().info("Nothing to compile - sources, options and dart-sdk unchanged since the last build");
+			return;
+		}
+		final ExecutionSnapshot snapshot = beginSnapshot(SNAPSHOT).addTree(sourceDirectory)
+				.addTree(dwcSourceDirectory);
+		if (webMode) {
+			snapshot.addFile(bootstrapFile);
+		}
 		processDart2Js(dwcSourceDirectory);
+		writeSnapshot(SNAPSHOT, snapshot.addTree(outputDirectory));
+	}
+
+	@Override
+	protected Fingerprint fingerprintParameters() {
+		final Fingerprint fingerprint = super.fingerprintParameters()
+				.add(String.valueOf(verbose))
+				.add(String.valueOf(diagnosticColors))
+				.add(String.valueOf(entrypointsOnly))
+				.add(String.valueOf(bootstrapFile))
+				.add(String.valueOf(webMode))
+				.add(dwcSourceDirectory.getAbsolutePath())
+				.add(outputDirectory.getAbsolutePath())
+				.add(new TreeSet<>(getIncludes()).toString())
+				.add(new TreeSet<>(getExcludes()).toString())
+				.add(String.valueOf(staleMillis));
+		for (final Variant variant : variants.isEmpty() ? Collections.singletonList(DEFAULT_VARIANT) : variants) {
+			fingerprint.add(variant.getName())
+					.add(String.valueOf(variant.isCheckedMode(checkedMode)))
+					.add(String.valueOf(variant.isMinify(minify)))
+					.add(String.valueOf(variant.isAnalyseAll(analyseAll)))
+					.add(String.valueOf(variant.isSuppressWarnings(suppressWarnings)));
+		}
+		return fingerprint;
 	}
 
 	private void processDart2Js(File dwcSourceDirectory) throws MojoExecutionException {
 
-		final Commandline cl = createBaseCommandline();
+		if (isUnchangedInIncrementalBuild(dwcSourceDirectory, sourceDirectory)) {
+			getLog().info("Nothing to compile - no dart sources changed");
+			return;
+		}
+
+		final List<Variant> variants = getVariants();
+		final Map<Variant, Commandline> commandlines = new LinkedHashMap<>();
+		for (final Variant variant : variants) {
+			commandlines.put(variant, createBaseCommandline(variant));
+		}
 
 		if (isForce()) {
 			clearOutputDirectory();
 		}
 
-		final Set<File> staleDartSources = webMode ? Collections.singleton(bootstrapFile): computeStaleSources(dwcSourceDirectory, getSourceInclusionScanner());
+		final Map<Variant, Set<File>> staleDartSources;
+		if (webMode) {
+			staleDartSources = new LinkedHashMap<>();
+			for (final Variant variant : variants) {
+				staleDartSources.put(variant, Collections.singleton(bootstrapFile));
+			}
+		} else {
+			staleDartSources = computeStaleSources(dwcSourceDirectory, variants);
+		}
 
 		if (getLog().isDebugEnabled()) {
 			getLog().debug("staleMillis: " + staleMillis);
@@ -264,65 +408,381 @@ public class Dart2JsMojo extends AbstractDartMojo {
 
 		checkAndCreateOutputDirectory();
 
-		final Arg outPutFileArg = cl.createArg();
-		final Arg dartFileArg = cl.createArg();
+		int compilations = 0;
+		for (final Set<File> sources : staleDartSources.values()) {
+			compilations += sources.size();
+		}
+		if (compilations == 0) {
+			getLog().info("Nothing to compile - all dart javascripts are up to date");
+			return;
+		}
 
-		final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
-		final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
+		getLog().info("Compiling " + compilations + " dart file" + (compilations == 1 ? "" : "s")
+				+ (variants.size() > 1 ? " in " + variants.size() + " variants" : "") + " to "
+				+ outputDirectory.getAbsolutePath() + " using " + getThreadCount() + " threads"
+				+ (memoryAware ? ", admitted by available memory" : ""));
 
 		System.out.println();
 		System.out.println();
 
-		for (final File dartSourceFile : staleDartSources) {
-			try {
-				final File dartOutputFile = createOutputFileArgument(outPutFileArg, dartSourceFile);
-				createDartfileArgument(dartFileArg, dartSourceFile);
-
-				if (getLog().isDebugEnabled()) {
-					getLog().debug(cl.toString());
-				}
-				if (!dartOutputFile.getParentFile().exists()) {
-					if (getLog().isDebugEnabled()) {
-						getLog().debug("Create directory " + dartOutputFile.getParentFile().getAbsolutePath());
-					}
-					dartOutputFile.getParentFile().mkdirs();
+		final MemoryScheduler scheduler = createMemoryScheduler();
+		beginDiagnostics();
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(getThreadCount(), compilations));
+		final Map<String, Future<?>> results = new LinkedHashMap<>();
+		try {
+			int index = 0;
+			for (final Map.Entry<Variant, Set<File>> stale : staleDartSources.entrySet()) {
+				final Variant variant = stale.getKey();
+				final Commandline cl = commandlines.get(variant);
+				for (final File dartSourceFile : stale.getValue()) {
+					// compile next to the output directory, so that relative paths in source maps stay valid
+					final File stagingDirectory = new File(getOutputDirectory(variant).getPath() + ".staging-"
+							+ index++);
+					results.put(describe(variant, dartSourceFile), executor.submit(new Callable<Void>() {
+						@Override
+						public Void call() throws MojoExecutionException {
+							compile(cl, variant, dartSourceFile, stagingDirectory, scheduler);
+							return null;
+						}
+					}));
 				}
+			}
 
-				if (getLog().isDebugEnabled()) {
-					getLog().debug(cl.toString());
+			final List<String> failures = new ArrayList<>();
+			for (final Map.Entry<String, Future<?>> result : results.entrySet()) {
+				try {
+					result.getValue().get();
+				} catch (ExecutionException e) {
+					getLog().error("dart2js failed for " + result.getKey() + ": " + e.getCause().getMessage());
+					failures.add(result.getKey());
 				}
+			}
+			if (!failures.isEmpty()) {
+				throw new MojoExecutionException("Dart2Js failed for " + failures.size() + " dart file"
+						+ (failures.size() == 1 ? "" : "s") + ": " + failures);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while running dart2js", e);
+		} finally {
+			executor.shutdownNow();
+			closeMemoryScheduler(scheduler);
+			reportDiagnostics();
+		}
 
-				final int returnValue = CommandLineUtils.executeCommandLine(cl, output, error);
+		System.out.println();
+		System.out.println();
+	}
+
+	/**
+	 * @return a scheduler admitting dart2js processes by the available memory or <code>null</code> if memoryAware
+	 *         is off
+	 */
+	protected MemoryScheduler createMemoryScheduler() {
+		return memoryAware ? new MemoryScheduler(getMemoryFile(), memoryEstimate * MEGABYTE,
+				memoryReserve * MEGABYTE) : null;
+	}
+
+	protected void closeMemoryScheduler(final MemoryScheduler scheduler) {
+		if (scheduler != null) {
+			try {
+				scheduler.close();
+			} catch (IOException e) {
+				getLog().warn("Unable to write dart2js memory peaks '" + getMemoryFile().getAbsolutePath() + "'.", e);
+			}
+		}
+	}
+
+	/**
+	 * Starts collecting the diagnostics of the following compilations.
+	 */
+	protected void beginDiagnostics() {
+		diagnosticReport = new DiagnosticReport();
+	}
+
+	/**
+	 * Logs every distinct diagnostic collected since {@link #beginDiagnostics()} once, with the number of
+	 * entrypoints reporting it, and writes them to the diagnosticsFile.
+	 */
+	protected void reportDiagnostics() {
+		final Map<Diagnostic, Set<String>> entries = diagnosticReport.getEntries();
+		for (final Map.Entry<Diagnostic, Set<String>> entry : entries.entrySet()) {
+			final Diagnostic diagnostic = entry.getKey();
+			final String text = relativePath(diagnostic.getFile()) + ":" + diagnostic.getLine() + ":"
+					+ diagnostic.getColumn() + ": " + diagnostic.getMessage() + " (" + entry.getValue().size()
+					+ " entrypoint" + (entry.getValue().size() == 1 ? "" : "s") + ")";
+			switch (diagnostic.getSeverity()) {
+			case ERROR:
+				getLog().error(text);
+				break;
+			case WARNING:
+				getLog().warn(text);
+				break;
+			default:
+				getLog().info(diagnostic.getSeverity().name().toLowerCase() + ": " + text);
+			}
+		}
+		if (diagnosticsFile == null) {
+			return;
+		}
+		try {
+			// an unchanged report keeps its timestamp
+			final File staged = new File(diagnosticsFile.getPath() + ".tmp");
+			FileUtils.writeStringToFile(staged, diagnosticReport.toJson(basedir), "UTF-8");
+			OutputCommitter.commitFile(staged.toPath(), diagnosticsFile.toPath());
+			if (!entries.isEmpty()) {
+				getLog().info(entries.size() + " distinct dart2js diagnostic" + (entries.size() == 1 ? "" : "s")
+						+ " written to " + relativePath(diagnosticsFile));
+			}
+		} catch (IOException e) {
+			getLog().warn("Unable to write dart2js diagnostics '" + diagnosticsFile.getAbsolutePath() + "'.", e);
+		}
+	}
+
+	/**
+	 * Compiles one dart file into its own staging directory, once the scheduler admits it, and commits the
+	 * output. The output of dart2js, if there is any, is logged as a whole when it is done.
+	 *
+	 * @param scheduler the scheduler admitting the process or <code>null</code> to start it right away
+	 * @return the compiled javascript file
+	 */
+	protected File compile(final Commandline baseCommandline, final File dartSourceFile, final File stagingDirectory,
+			final MemoryScheduler scheduler) throws MojoExecutionException {
+		return compile(baseCommandline, DEFAULT_VARIANT, dartSourceFile, stagingDirectory, scheduler);
+	}
+
+	private File compile(final Commandline baseCommandline, final Variant variant, final File dartSourceFile,
+			final File stagingDirectory, final MemoryScheduler scheduler) throws MojoExecutionException {
+		final String description = describe(variant, dartSourceFile);
+		final Commandline cl = (Commandline) baseCommandline.clone();
+		final Arg outPutFileArg = cl.createArg();
+		final Arg dartFileArg = cl.createArg();
+
+		final File dartOutputFile = createOutputFileArgument(outPutFileArg, dartSourceFile, variant);
+		createDartfileArgument(dartFileArg, dartSourceFile, description);
+
+		final File stagedOutputFile = new File(stagingDirectory,
+				getOutputDirectory(variant).toPath().relativize(dartOutputFile.toPath()).toString());
+		outPutFileArg.setValue(ARGUMENT_OUTPUT_FILE + stagedOutputFile.getAbsolutePath());
+		deleteStagingDirectory(stagingDirectory);
+		stagedOutputFile.getParentFile().mkdirs();
+
+		if (getLog().isDebugEnabled()) {
+			getLog().debug(cl.toString());
+		}
+
+		// one consumer per stream, the streams are pumped by different threads
+		final CommandLineUtils.StringStreamConsumer output = new CommandLineUtils.StringStreamConsumer();
+		final CommandLineUtils.StringStreamConsumer error = new CommandLineUtils.StringStreamConsumer();
+		// diagnostics are logged once for all compilations by reportDiagnostics()
+		final Diagnostic.Dart2JsCollector outputDiagnostics = new Diagnostic.Dart2JsCollector(output, basedir,
+				false);
+		final Diagnostic.Dart2JsCollector errorDiagnostics = new Diagnostic.Dart2JsCollector(error, basedir,
+				false);
+		synchronized (this) {
+			removeMessages(description, dartSourceFile);
+		}
 
-				if (getLog().isDebugEnabled()) {
-					getLog().debug("dart2js return code: " + returnValue);
+		final ProcessRunner runner = createProcessRunner(cl).setOutput(outputDiagnostics)
+				.setError(errorDiagnostics);
+		MemoryScheduler.Ticket ticket = null;
+		boolean succeeded = false;
+		try {
+			if (scheduler != null) {
+				try {
+					ticket = scheduler.acquire(variant.getName() != null ? variant.getName() + ":"
+							+ relativePath(dartSourceFile) : relativePath(dartSourceFile));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MojoExecutionException("Interrupted while waiting for memory", e);
 				}
-				if (returnValue != 0) {
-					throw new MojoExecutionException("Dart2Js returned error code " + returnValue);
+				runner.addListener(ticket);
+			}
+
+			final int returnValue = executeCommandLine(runner);
+			outputDiagnostics.flush();
+			errorDiagnostics.flush();
+
+			synchronized (this) {
+				addMessages(outputDiagnostics.getDiagnostics());
+				addMessages(errorDiagnostics.getDiagnostics());
+				recordMarkedFiles(description, Iterables.concat(outputDiagnostics.getDiagnostics(),
+						errorDiagnostics.getDiagnostics()));
+			}
+			if (diagnosticReport != null) {
+				diagnosticReport.add(description, outputDiagnostics.getDiagnostics());
+				diagnosticReport.add(description, errorDiagnostics.getDiagnostics());
+			}
+
+			if (getLog().isDebugEnabled()) {
+				getLog().debug("dart2js return code: " + returnValue);
+			}
+			if (returnValue != 0) {
+				throw new MojoExecutionException("Dart2Js returned error code " + returnValue);
+			}
+
+			final OutputCommitter.Result result = commitOutput(stagingDirectory, variant, dartSourceFile,
+					dartOutputFile);
+			final StringBuilder sb = new StringBuilder("Compiled '").append(description).append("': ")
+					.append(result);
+			if (ticket != null) {
+				sb.append(" (peak ").append(ticket.getPeak() / MEGABYTE).append(" MB, expected ")
+						.append(ticket.getEstimate() / MEGABYTE).append(" MB");
+				if (ticket.getWaitMillis() > 0) {
+					sb.append(", waited ").append(ticket.getWaitMillis()).append(" ms for memory");
 				}
+				sb.append(")");
+			}
+			getLog().info(sb.toString());
+			succeeded = true;
+		} finally {
+			if (ticket != null) {
+				scheduler.release(ticket, succeeded);
+			}
+			deleteStagingDirectory(stagingDirectory);
+			if (!output.getOutput().isEmpty() || !error.getOutput().isEmpty()) {
+				getLog().info("dart2js output for '" + description + "':" + System.lineSeparator()
+						+ output.getOutput() + error.getOutput());
+			}
+		}
+		return dartOutputFile;
+	}
 
-				System.out.println();
-				System.out.println();
+	/**
+	 * Removes the messages of the last compilation of an entrypoint, from the entrypoint and from the libraries
+	 * they were attached to.
+	 */
+	private void removeMessages(final String description, final File dartSourceFile) {
+		getBuildContext().removeMessages(dartSourceFile);
+		final File markedFiles = getMarkedFilesFile(description);
+		if (!markedFiles.isFile()) {
+			return;
+		}
+		try {
+			for (final String markedFile : FileUtils.readLines(markedFiles, "UTF-8")) {
+				getBuildContext().removeMessages(new File(markedFile));
+			}
+		} catch (IOException e) {
+			getLog().debug("Unable to read the files with messages of " + description + ".", e);
+		}
+	}
 
-			} catch (final CommandLineException e) {
-				getLog().debug("dart2js error: ", e);
+	/**
+	 * Records the files the messages of a compilation were attached to, to remove them before the next
+	 * compilation of the entrypoint.
+	 */
+	private void recordMarkedFiles(final String description, final Iterable<Diagnostic> diagnostics) {
+		final Set<String> markedFiles = new TreeSet<>();
+		for (final Diagnostic diagnostic : diagnostics) {
+			markedFiles.add(diagnostic.getFile().getAbsolutePath());
+		}
+		final File file = getMarkedFilesFile(description);
+		try {
+			if (markedFiles.isEmpty()) {
+				FileUtils.deleteQuietly(file);
+			} else {
+				FileUtils.writeLines(file, "UTF-8", markedFiles);
 			}
+		} catch (IOException e) {
+			getLog().warn("Unable to record the files with messages of " + description + ".", e);
 		}
+	}
 
-		if (staleDartSources.isEmpty()) {
-			getLog().info("Nothing to compile - all dart javascripts are up to date");
-		} else {
-			getLog().info(
-					"Compiling " + staleDartSources.size() + " dart file" + (staleDartSources.size() == 1 ? ""
-							: "s")
-							+ " to " + outputDirectory.getAbsolutePath());
+	private File getMarkedFilesFile(final String description) {
+		return new File(stateDirectory, "dart2js/messages/" + new Fingerprint().add(description) + ".files");
+	}
+
+	/**
+	 * Moves the compiled files into the output directory, leaving files with unchanged content (and their
+	 * modification time) alone, and records the compilation time of the source.
+	 *
+	 * @return the number of updated, unchanged and deleted files
+	 */
+	private OutputCommitter.Result commitOutput(final File stagingDirectory, final Variant variant,
+			final File dartSourceFile, final File dartOutputFile) throws MojoExecutionException {
+		try {
+			final OutputCommitter.Result result = OutputCommitter.mergeDirectory(stagingDirectory.toPath(),
+					getOutputDirectory(variant).toPath());
+			if (result.getUpdated() > 0) {
+				getBuildContext().refresh(dartOutputFile.getParentFile());
+			}
+			final File stamp = getStampFile(variant, dartSourceFile);
+			if (stamp != null) {
+				FileUtils.touch(stamp);
+			}
+			return result;
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to move dart2js output to "
+					+ relativePath(getOutputDirectory(variant)), e);
 		}
+	}
 
-		System.out.println();
-		System.out.println();
+	private void deleteStagingDirectory(final File stagingDirectory) throws MojoExecutionException {
+		try {
+			LinkUtil.delete(stagingDirectory.toPath());
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to delete " + relativePath(stagingDirectory), e);
+		}
+	}
+
+	/**
+	 * Compiled files keep their modification time if their content did not change, so the time of the last
+	 * compilation of a source is recorded by a stamp file instead.
+	 *
+	 * @return the stamp file of the source or <code>null</code> if it is not below the dwcSourceDirectory
+	 */
+	private File getStampFile(final Variant variant, final File dartSourceFile) {
+		final String relative = dartSourceFile.getAbsolutePath();
+		final String root = dwcSourceDirectory.getAbsolutePath() + File.separator;
+		if (!relative.startsWith(root)) {
+			return null;
+		}
+		return new File(getStampDirectory(variant), relative.substring(root.length()) + ".js");
 	}
 
-	private Commandline createBaseCommandline() throws MojoExecutionException {
+	private File getMemoryFile() {
+		return new File(stateDirectory, "dart2js/memory.properties");
+	}
+
+	private File getStampDirectory(final Variant variant) {
+		final File stamps = new File(stateDirectory, "dart2js/stamps");
+		return variant.getName() != null ? new File(stamps, variant.getName()) : stamps;
+	}
+
+	/**
+	 * @return the configured variants or the default variant if there are none
+	 */
+	private List<Variant> getVariants() throws MojoExecutionException {
+		if (variants.isEmpty()) {
+			return Collections.singletonList(DEFAULT_VARIANT);
+		}
+		final Set<String> names = new HashSet<>();
+		for (final Variant variant : variants) {
+			final String name = variant.getName();
+			if (name == null || name.isEmpty() || name.contains("/") || name.contains(File.separator)
+					|| name.startsWith(".")) {
+				throw new MojoExecutionException("Every dart2js variant needs a name usable as directory name, not '"
+						+ name + "'");
+			}
+			if (!names.add(name)) {
+				throw new MojoExecutionException("Duplicate dart2js variant '" + name + "'");
+			}
+		}
+		return variants;
+	}
+
+	/**
+	 * @return the path of the source relative to the basedir, followed by the name of the variant if it has one
+	 */
+	private String describe(final Variant variant, final File dartSourceFile) {
+		return relativePath(dartSourceFile) + (variant.getName() != null ? " [" + variant.getName() + "]" : "");
+	}
+
+	protected Commandline createBaseCommandline() throws MojoExecutionException {
+		return createBaseCommandline(DEFAULT_VARIANT);
+	}
+
+	private Commandline createBaseCommandline(final Variant variant) throws MojoExecutionException {
 
 		String dart2jsPath = null;
 		checkDart2Js();
@@ -340,7 +800,7 @@ public class Dart2JsMojo extends AbstractDartMojo {
 		final Commandline cl = new Commandline();
 		cl.setExecutable(dart2jsPath);
 
-		if (isCheckedMode()) {
+		if (variant.isCheckedMode(isCheckedMode())) {
 			cl.createArg().setValue(ARGUMENT_CHECKED_MODE);
 		}
 
@@ -348,15 +808,15 @@ public class Dart2JsMojo extends AbstractDartMojo {
 			cl.createArg().setValue(ARGUMENT_VERBOSE);
 		}
 
-		if (isAnalyseAll()) {
+		if (variant.isAnalyseAll(isAnalyseAll())) {
 			cl.createArg().setValue(ARGUMENT_ANALYSE_ALL);
 		}
 
-		if (isMinify()) {
+		if (variant.isMinify(isMinify())) {
 			cl.createArg().setValue(ARGUMENT_MINIFY);
 		}
 
-		if (isSuppressWarnings()) {
+		if (variant.isSuppressWarnings(isSuppressWarnings())) {
 			cl.createArg().setValue(ARGUMENT_SUPPRESS_WARNINGS);
 		}
 
@@ -409,14 +869,15 @@ public class Dart2JsMojo extends AbstractDartMojo {
 		}
 	}
 
-	private void createDartfileArgument(final Arg compilerArguments, final File dartSourceFile) {
+	private void createDartfileArgument(final Arg compilerArguments, final File dartSourceFile,
+			final String description) {
 		final String dartSourceFileAbsolutePath = dartSourceFile.getAbsolutePath();
 		compilerArguments.setValue(dartSourceFileAbsolutePath);
-		getLog().info("dart2js for '" + relativePath(dartSourceFile) + "'");
+		getLog().info("dart2js for '" + description + "'");
 	}
 
-	private File createOutputFileArgument(final Arg outPutFileArg, final File dartSourceFile)
-			throws MojoExecutionException {
+	private File createOutputFileArgument(final Arg outPutFileArg, final File dartSourceFile,
+			final Variant variant) throws MojoExecutionException {
 		final String dartSourceFileAbsolutePath = dartSourceFile.getAbsolutePath();
 
         List<File> compileSourceRoots = Collections.singletonList(dwcSourceDirectory); // TODO getCompileSourceRoots();
@@ -445,7 +906,7 @@ public class Dart2JsMojo extends AbstractDartMojo {
 			throw new MojoExecutionException("There is something wrong. ");
 		}
 
-		final String dartOutputFile = outputDirectory.getAbsolutePath() + dartOutputFileRelativeToBasedir;
+		final String dartOutputFile = getOutputDirectory(variant).getAbsolutePath() + dartOutputFileRelativeToBasedir;
 
 		if (getLog().isDebugEnabled()) {
 			getLog().debug(
@@ -456,27 +917,88 @@ public class Dart2JsMojo extends AbstractDartMojo {
 		return new File(dartOutputFile);
 	}
 
-	private Set<File> computeStaleSources(final File dwcSourceDirectory, final SourceInclusionScanner scanner)
+	/**
+	 * Scans the sources once for all variants.
+	 *
+	 * @return per variant the sources compiled before their last modification, according to the stamp files of
+	 *         the variant, and the sources whose output is missing
+	 */
+	private Map<Variant, Set<File>> computeStaleSources(final File dwcSourceDirectory, final List<Variant> variants)
 			throws MojoExecutionException {
 		final SourceMapping mapping = new SuffixMapping("dart", "dart.js");
-		scanner.addSourceMapping(mapping);
+		final SourceInclusionScanner allSources = new SimpleSourceInclusionScanner(getIncludes(), getExcludes());
+		allSources.addSourceMapping(mapping);
 
-		final Set<File> staleSources = new HashSet<File>();
-			try {
-				staleSources.addAll(scanner.getIncludedSources(dwcSourceDirectory, outputDirectory));
-			} catch (final InclusionScanException e) {
-				throw new MojoExecutionException(
-						"Error scanning source root: \'" + relativePath(dwcSourceDirectory)
-								+ "\' for stale files to recompile.", e);
+		final Set<File> sources;
+		try {
+			sources = allSources.getIncludedSources(dwcSourceDirectory, outputDirectory);
+		} catch (final InclusionScanException e) {
+			throw new MojoExecutionException(
+					"Error scanning source root: \'" + relativePath(dwcSourceDirectory)
+							+ "\' for stale files to recompile.", e);
+		}
+
+		final Map<Variant, Set<File>> staleSources = new LinkedHashMap<>();
+		final Set<File> allStale = new HashSet<>();
+		try {
+			for (final Variant variant : variants) {
+				final Set<File> stale = new TreeSet<>();
+				for (final File source : sources) {
+					final String relative = dwcSourceDirectory.toPath().relativize(source.toPath()).toString();
+					final File stamp = new File(getStampDirectory(variant), relative + ".js");
+					boolean isStale = !stamp.isFile() || stamp.lastModified() + staleMillis < source.lastModified();
+					for (final File target : mapping.getTargetFiles(getOutputDirectory(variant), relative)) {
+						isStale |= !target.isFile();
+					}
+					if (isStale) {
+						stale.add(source);
+					}
+				}
+				staleSources.put(variant, stale);
+				allStale.addAll(stale);
 			}
+		} catch (final InclusionScanException e) {
+			throw new MojoExecutionException("Unable to map the sources in " + relativePath(dwcSourceDirectory), e);
+		}
 
+		if (entrypointsOnly) {
+			retainEntrypoints(allStale);
+			for (final Set<File> stale : staleSources.values()) {
+				stale.retainAll(allStale);
+			}
+		}
 		return staleSources;
 	}
 
-	private SourceInclusionScanner getSourceInclusionScanner() {
-		return new StaleSourceScanner(getStaleMillis(), getIncludes(), getExcludes());
+	/**
+	 * Removes all files that are not programs, using the source index in the state directory to avoid scanning
+	 * unchanged files again.
+	 */
+	private void retainEntrypoints(final Set<File> sources) throws MojoExecutionException {
+		final SourceIndex index = new SourceIndex(getSourceIndexFile());
+		int skipped = 0;
+		try {
+			for (final Iterator<File> iterator = sources.iterator(); iterator.hasNext();) {
+				final File source = iterator.next();
+				if (!index.classify(source).isEntrypoint()) {
+					iterator.remove();
+					skipped++;
+				}
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to read dart sources in " + relativePath(dwcSourceDirectory), e);
+		}
+		try {
+			index.save();
+		} catch (IOException e) {
+			getLog().warn("Unable to write source index '" + getSourceIndexFile().getAbsolutePath() + "'.", e);
+		}
+		if (getLog().isDebugEnabled()) {
+			getLog().debug("Skipped " + skipped + " dart files without main, scanned " + index.getScanned());
+		}
 	}
 
+
 	public Set<String> getIncludes() {
 		if (includes.isEmpty()) {
 			return ImmutableSet.copyOf(Arrays.asList(new String[] {"**/*.dart"}));
@@ -495,10 +1017,21 @@ public class Dart2JsMojo extends AbstractDartMojo {
 		return skipDart2Js;
 	}
 
+	protected File getDwcSourceDirectory() {
+		return dwcSourceDirectory;
+	}
+
 	protected File getOutputDirectory() {
 		return outputDirectory;
 	}
 
+	/**
+	 * @return the directory the variant is compiled into
+	 */
+	protected File getOutputDirectory(final Variant variant) {
+		return variant.getName() != null ? new File(outputDirectory, variant.getName()) : outputDirectory;
+	}
+
 	protected boolean isCheckedMode() {
 		return checkedMode;
 	}
@@ -1,20 +1,29 @@
 package com.google.dart;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.StringUtils;
-import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.StreamConsumer;
 import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.dart.util.DartProfiler;
 import com.google.dart.util.OsUtil;
+import com.google.dart.util.ProcessRunner;
 
 /**
  * Goal to invoke the dart scripts.
@@ -62,6 +71,27 @@ public class DartMojo extends AbstractDartMojo {
 	 */
 	private final static String ARGUMENT_USE_SCRIPT_SNAPSHOT = "--use_script_snapshot=";
 
+	/**
+	 * enables the VM service (observatory) on the specified port
+	 *
+	 * @since 2.1.2
+	 */
+	private final static String ARGUMENT_OBSERVE = "--observe=";
+
+	/**
+	 * keeps isolates alive at their exit until resumed through the VM service
+	 *
+	 * @since 2.1.2
+	 */
+	private final static String ARGUMENT_PAUSE_ISOLATES_ON_EXIT = "--pause-isolates-on-exit";
+
+	/**
+	 * records the timeline of the VM, the isolates, the garbage collector and dart code
+	 *
+	 * @since 2.1.2
+	 */
+	private final static String ARGUMENT_TIMELINE_STREAMS = "--timeline_streams=VM,Isolate,GC,Dart";
+
 	/**
 	 * the Dart script file to run
 	 *
@@ -114,6 +144,39 @@ public class DartMojo extends AbstractDartMojo {
 	@Parameter(property = "dart.useScriptSnapshot")
 	private String useScriptSnapshot;
 
+	/**
+	 * Profile the script: the VM is started with its service on profilePort, and the CPU samples and the timeline
+	 * of the whole run are saved below profileDirectory, with a summary of the hottest functions in the log.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "false", property = "dart.profile")
+	private boolean profile;
+
+	/**
+	 * The local port of the VM service while profiling.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "8181", property = "dart.profile.port")
+	private int profilePort;
+
+	/**
+	 * The directory profiles are saved in, one subdirectory per run.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/dart-profiles", property = "dart.profile.directory")
+	private File profileDirectory;
+
+	/**
+	 * The number of functions in the profile summary.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "10", property = "dart.profile.functions")
+	private int profileFunctions;
+
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		executeDart();
@@ -133,7 +196,13 @@ public class DartMojo extends AbstractDartMojo {
 			throw new IllegalArgumentException("Script must be a readable file. scripte=" + script.getAbsolutePath());
 		}
 
-		cl.createArg(true).setValue(script.getAbsolutePath());
+		if (profile) {
+			cl.createArg().setValue(ARGUMENT_OBSERVE + profilePort);
+			cl.createArg().setValue(ARGUMENT_PAUSE_ISOLATES_ON_EXIT);
+			cl.createArg().setValue(ARGUMENT_TIMELINE_STREAMS);
+		}
+
+		cl.createArg().setValue(script.getAbsolutePath());
 
 		final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
 		final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
@@ -143,25 +212,93 @@ public class DartMojo extends AbstractDartMojo {
 		System.out.println();
 		System.out.println();
 
-		try {
+		final int returnValue = profile ? executeProfiled(cl, script, output, error)
+				: executeCommandLine(cl, output, error);
+
+		if (getLog().isDebugEnabled()) {
+			getLog().debug("dart return code: " + returnValue);
+		}
+		if (returnValue != 0) {
+			throw new MojoExecutionException("Dart returned error code " + returnValue);
+		}
 
-			final int returnValue = CommandLineUtils.executeCommandLine(cl, output, error);
+		System.out.println();
+		System.out.println();
+	}
 
-			if (getLog().isDebugEnabled()) {
-				getLog().debug("dart return code: " + returnValue);
+	/**
+	 * Runs the commandline while capturing profiles through the VM service on a background thread.
+	 */
+	private int executeProfiled(final Commandline cl, final File script, final StreamConsumer output,
+			final StreamConsumer error) throws MojoExecutionException {
+		final File directory = new File(profileDirectory, script.getName().replaceFirst("\\.dart$", "") + "-"
+				+ new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()));
+		final DartProfiler profiler = new DartProfiler(profilePort, directory);
+		final ProcessRunner runner = createProcessRunner(cl).setOutput(profiler.watch(output))
+				.setError(profiler.watch(error));
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("dart-profiler").setDaemon(true).build());
+		final Future<Integer> capture = executor.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				try {
+					return profiler.capture();
+				} catch (IOException e) {
+					// the VM waits for a resume that will not come
+					runner.cancel();
+					throw e;
+				}
 			}
-			if (returnValue != 0) {
-				throw new MojoExecutionException("Dart returned error code " + returnValue);
+		});
+		try {
+			final int returnValue;
+			try {
+				returnValue = executeCommandLine(runner);
+			} catch (MojoExecutionException e) {
+				// a failed capture cancels the process, its error is the one to report
+				if (capture.isDone()) {
+					capture.get();
+				}
+				throw e;
 			}
-		} catch (final CommandLineException e) {
-			getLog().debug("dart error: ", e);
+			profiler.finished();
+			final int isolates = capture.get();
+			logProfile(profiler, directory, isolates);
+			return returnValue;
+		} catch (ExecutionException e) {
+			throw new MojoExecutionException("Unable to profile " + relativePath(script) + ": "
+					+ e.getCause().getMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while profiling " + relativePath(script), e);
+		} finally {
+			profiler.finished();
+			executor.shutdownNow();
 		}
+	}
 
-		System.out.println();
-		System.out.println();
+	private void logProfile(final DartProfiler profiler, final File directory, final int isolates) {
+		if (isolates == 0) {
+			getLog().warn("No profile captured, the VM service did not report an exiting isolate");
+			return;
+		}
+		final long samples = Math.max(1, profiler.getSampleCount());
+		getLog().info("Profiled " + isolates + " isolate" + (isolates == 1 ? "" : "s") + " with "
+				+ profiler.getSampleCount() + " samples, saved to " + relativePath(directory));
+		getLog().info(String.format("%8s %8s  %s", "self %", "total %", "function"));
+		for (final DartProfiler.HotFunction function : profiler.getHotFunctions(profileFunctions)) {
+			getLog().info(String.format("%8.1f %8.1f  %s%s", 100.0 * function.getExclusiveTicks() / samples,
+					100.0 * function.getInclusiveTicks() / samples, function.getName(),
+					function.getUrl() != null ? " (" + function.getUrl() + ")" : ""));
+		}
 	}
 
 	protected Commandline createBaseCommandline() throws MojoExecutionException {
+		return createBaseCommandline(sourceDirectory);
+	}
+
+	protected Commandline createBaseCommandline(final File packageDirectory) throws MojoExecutionException {
 
 		checkDart();
 		String dartPath = getDartExecutable().getAbsolutePath();
@@ -189,7 +326,7 @@ public class DartMojo extends AbstractDartMojo {
 			cl.createArg().setValue(ARGUMENT_USE_SCRIPT_SNAPSHOT + useScriptSnapshot);
 		}
 
-        cl.createArg().setValue(ARGUMENT_PACKAGE_PATH + buildPackagePath());
+        cl.createArg().setValue(ARGUMENT_PACKAGE_PATH + buildPackagePath(packageDirectory));
 
 		if (getLog().isDebugEnabled()) {
 			getLog().debug("Base dart command: " + cl.toString());
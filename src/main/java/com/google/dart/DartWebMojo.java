@@ -3,20 +3,43 @@ package com.google.dart;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.FileUtils;
-import org.codehaus.plexus.util.cli.CommandLineException;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.StreamConsumer;
 import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
-import com.google.common.base.Throwables;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.dart.util.DartSource;
+import com.google.dart.util.ExecutionSnapshot;
+import com.google.dart.util.Fingerprint;
+import com.google.dart.util.OutputCommitter;
 
 /**
  * Goal to invoke the dart web compiler.
@@ -28,69 +51,215 @@ public class DartWebMojo extends DartMojo {
 
     private final static String ARGUMENT_OUT = "--out";
 
+    private final static String SNAPSHOT = "dwc";
+
+    private final static Pattern HTML_REFERENCE = Pattern.compile(
+            "<(link|script)\\b[^>]*?\\b(href|src)\\s*=\\s*[\"']([^\"']+)[\"'][^>]*>", Pattern.CASE_INSENSITIVE);
+
     @Parameter(property = "output", defaultValue = "${project.build.directory}/generated-sources/dart/dwc")
     private File outputDir;
 
     @Parameter(property = "htmlFile", defaultValue = "web/index.html")
     private String htmlFile;
 
+    /**
+     * Inclusion patterns, relative to the sourceDirectory, of HTML entrypoints to compile instead of htmlFile,
+     * e.g. 'web&#47;*.html'. They are compiled concurrently, each into a subdirectory of the output directory
+     * named after its path without the extension, e.g. 'web&#47;index'.
+     *
+     * @since 2.1.2
+     */
+    @Parameter
+    private Set<String> htmlFiles = new HashSet<>();
+
     @Parameter(property = "script", defaultValue = "packages/web_ui/dwc.dart", required = true)
     protected String script;
 
+    /**
+     * Force running dwc even if the HTML file, its components and the dwc script are unchanged since the last
+     * run.
+     *
+     * @since 2.1.2
+     */
+    @Parameter(defaultValue = "false", property = "dart.dwc.force")
+    private boolean force;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
 
-        checkDart();
-        String dartPath = getDartExecutable().getAbsolutePath();
-
-        if (getLog().isDebugEnabled()) {
-            getLog().debug("Using dart '" + dartPath + "'.");
+        if (!skipUpToDate) {
+            processDwc();
+            return;
         }
+        if (!force && isSnapshotUpToDate(SNAPSHOT)) {
+            getLog().info("dwc output is up to date - sources, options and dart-sdk unchanged since the last build");
+            return;
+        }
+        final ExecutionSnapshot snapshot = beginSnapshot(SNAPSHOT).addTree(sourceDirectory);
+        processDwc();
+        writeSnapshot(SNAPSHOT, snapshot.addTree(outputDir));
+    }
 
-        final Commandline cl = new Commandline();
-        cl.setExecutable(dartPath);
+    @Override
+    protected Fingerprint fingerprintParameters() {
+        return super.fingerprintParameters()
+                .add(outputDir.getAbsolutePath())
+                .add(htmlFile)
+                .add(new TreeSet<>(htmlFiles).toString())
+                .add(script);
+    }
 
-	    cl.createArg().setValue(ARGUMENT_PACKAGE_PATH + buildPackagePath());
+    private void processDwc() throws MojoExecutionException {
+
+        if (outputDir.isDirectory() && isUnchangedInIncrementalBuild(sourceDirectory)) {
+            getLog().info("dwc output is up to date - no sources changed");
+            return;
+        }
+
+        checkDart();
 
         File dwc = new File(sourceDirectory, script);
         if( !dwc.exists() )
             throw new MojoExecutionException("The dwc script does not exist here: " + dwc.getAbsolutePath());
 
-        cl.createArg().setValue(dwc.getAbsolutePath());
-
-        // Ensure the output location exists.
+        final String baseFingerprint = computeBaseFingerprint(dwc);
 
-        try {
-            FileUtils.deleteDirectory(outputDir);
-        } catch (IOException e) {
-            throw Throwables.propagate(e);
+        if (!htmlFiles.isEmpty()) {
+            executeDwc(dwc, findHtmlFiles(), baseFingerprint);
+            return;
         }
 
-        outputDir.mkdirs();
-
-        cl.createArg().setValue(ARGUMENT_OUT);
-        cl.createArg().setValue(outputDir.getAbsolutePath());
-
-
         // Root HTML:
         File html = new File(sourceDirectory, htmlFile);
         if( !html.exists() )
             throw new MojoExecutionException("The HTML file does not exist here: " + html.getAbsolutePath());
-        cl.createArg().setValue(html.getAbsolutePath());
-
-
 
         final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
         final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
 
-        getLog().info("Execute dart: " + cl.toString());
+        System.out.println();
+        System.out.println();
+
+        runDwc(dwc, html, outputDir, baseFingerprint, output, error);
 
         System.out.println();
         System.out.println();
+    }
+
+    /**
+     * Runs dwc for all HTML files concurrently, each into its own output subdirectory. The output of every run
+     * is logged as a whole once it is done, failures are reported together at the end.
+     */
+    private void executeDwc(final File dwc, final List<File> htmls, final String baseFingerprint)
+            throws MojoExecutionException {
+
+        if (htmls.isEmpty()) {
+            getLog().info("No HTML files found for " + htmlFiles);
+            return;
+        }
+
+        getLog().info("Run dwc for " + htmls.size() + " HTML file" + (htmls.size() == 1 ? "" : "s") + " using "
+                + getThreadCount() + " threads.");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(getThreadCount(), htmls.size()));
+        final Map<File, Future<?>> results = new LinkedHashMap<>();
+        try {
+            for (final File html : htmls) {
+                results.put(html, executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws MojoExecutionException {
+                        final CommandLineUtils.StringStreamConsumer output = new CommandLineUtils.StringStreamConsumer();
+                        final CommandLineUtils.StringStreamConsumer error = new CommandLineUtils.StringStreamConsumer();
+                        try {
+                            runDwc(dwc, html, getOutputDirectory(html), baseFingerprint, output, error);
+                        } finally {
+                            if (!output.getOutput().isEmpty() || !error.getOutput().isEmpty()) {
+                                getLog().info("dwc output for " + relativePath(html) + ":" + System.lineSeparator()
+                                        + output.getOutput() + error.getOutput());
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            final List<String> failures = new ArrayList<>();
+            for (final Map.Entry<File, Future<?>> result : results.entrySet()) {
+                try {
+                    result.getValue().get();
+                } catch (ExecutionException e) {
+                    getLog().error("dwc failed for " + relativePath(result.getKey()) + ": " + e.getCause().getMessage());
+                    failures.add(relativePath(result.getKey()));
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new MojoExecutionException("Dwc failed for " + failures.size() + " HTML file"
+                        + (failures.size() == 1 ? "" : "s") + ": " + failures);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while running dwc", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
+    private List<File> findHtmlFiles() {
+        final DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(sourceDirectory);
+        ds.setIncludes(htmlFiles.toArray(new String[htmlFiles.size()]));
+        ds.setExcludes(new String[] {"**/packages/**"});
+        ds.addDefaultExcludes();
+        ds.scan();
+        final List<File> htmls = new ArrayList<>();
+        for (final String included : ds.getIncludedFiles()) {
+            htmls.add(new File(sourceDirectory, included));
+        }
+        Collections.sort(htmls);
+        return htmls;
+    }
+
+    /**
+     * @return the output subdirectory for an HTML file, its path relative to the sourceDirectory without the
+     *         extension
+     */
+    protected File getOutputDirectory(final File html) {
+        final String relative = sourceDirectory.toPath().relativize(html.toPath()).toString();
+        return new File(outputDir, relative.substring(0, relative.length() - ".html".length()));
+    }
+
+    private void runDwc(final File dwc, final File html, final File outputDir, final String baseFingerprint,
+            final StreamConsumer output, final StreamConsumer error) throws MojoExecutionException {
+
+        final File fingerprintFile = new File(stateDirectory, "dwc/" + outputDir.getName() + "-"
+                + new Fingerprint().add(outputDir.getAbsolutePath()).toString() + ".fingerprint");
+        final String fingerprint = computeFingerprint(baseFingerprint, html, outputDir);
+        if (!force && outputDir.isDirectory() && fingerprint.equals(Fingerprint.read(fingerprintFile))) {
+            getLog().info("dwc output for " + relativePath(html) + " is up to date.");
+            return;
+        }
+
+        final Commandline cl = new Commandline();
+        cl.setExecutable(getDartExecutable().getAbsolutePath());
+
+	    cl.createArg().setValue(ARGUMENT_PACKAGE_PATH + buildPackagePath());
+
+        cl.createArg().setValue(dwc.getAbsolutePath());
+
+        // dwc writes to a staging directory, only changed files are moved to the output location afterwards.
+        final File stagingDir = new File(outputDir.getParentFile(), outputDir.getName() + ".staging");
+        deleteStagingDirectory(stagingDir);
         try {
+            stagingDir.mkdirs();
+
+            cl.createArg().setValue(ARGUMENT_OUT);
+            cl.createArg().setValue(stagingDir.getAbsolutePath());
+
+            cl.createArg().setValue(html.getAbsolutePath());
 
-            final int returnValue = CommandLineUtils.executeCommandLine(cl, output, error);
+            getLog().info("Execute dart: " + cl.toString());
+
+            final int returnValue = executeCommandLine(cl, output, error);
 
             if (getLog().isDebugEnabled()) {
                 getLog().debug("dart return code: " + returnValue);
@@ -98,12 +267,97 @@ public class DartWebMojo extends DartMojo {
             if (returnValue != 0) {
                 throw new MojoExecutionException("Dart returned error code " + returnValue);
             }
-        } catch (final CommandLineException e) {
-            getLog().debug("dart error: ", e);
+
+            try {
+                final OutputCommitter.Result result = OutputCommitter.commitDirectory(stagingDir.toPath(),
+                        outputDir.toPath());
+                getLog().info("dwc output in " + relativePath(outputDir) + ": " + result);
+                getBuildContext().refresh(outputDir);
+                Fingerprint.write(fingerprintFile, fingerprint);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to move dwc output to " + outputDir.getAbsolutePath(), e);
+            }
+        } finally {
+            deleteStagingDirectory(stagingDir);
         }
+    }
 
-        System.out.println();
-        System.out.println();
+    private void deleteStagingDirectory(final File stagingDir) throws MojoExecutionException {
+        try {
+            FileUtils.deleteDirectory(stagingDir);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to delete " + stagingDir.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Fingerprint of everything shared by all HTML files: the dart executable and version, the package links
+     * and the dwc script.
+     */
+    private String computeBaseFingerprint(final File dwc) throws MojoExecutionException {
+        final File packagesDirectory = new File(buildPackagePath());
+        try {
+            return new Fingerprint()
+                    .add(getDartExecutable().getAbsolutePath())
+                    .add(readDartVersion())
+                    .add(packagesDirectory.getAbsolutePath())
+                    .addLinkTargets(packagesDirectory)
+                    .addFile(dwc)
+                    .toString();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to compute the dwc fingerprint of " + dwc.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Fingerprint of the shared inputs, the output location and the content of the HTML file with all components,
+     * scripts and dart sources it references directly or indirectly.
+     */
+    private String computeFingerprint(final String baseFingerprint, final File html, final File outputDir)
+            throws MojoExecutionException {
+        final File packagesDirectory = new File(buildPackagePath());
+        try {
+            final Fingerprint fingerprint = new Fingerprint()
+                    .add(baseFingerprint)
+                    .add(outputDir.getAbsolutePath());
+            for (final File input : collectInputs(html, packagesDirectory)) {
+                fingerprint.add(input.getAbsolutePath()).addFile(input);
+            }
+            return fingerprint.toString();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to compute the dwc fingerprint of " + html.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * @return the HTML file with all components, scripts and dart sources it references directly or indirectly
+     */
+    static Set<File> collectInputs(final File html, final File packagesDirectory) throws IOException {
+        final Set<File> htmlFiles = new LinkedHashSet<>();
+        final List<File> dartFiles = new ArrayList<>();
+        final Deque<File> todo = new ArrayDeque<>();
+        todo.push(html.getAbsoluteFile());
+        while (!todo.isEmpty()) {
+            final File file = todo.pop().toPath().normalize().toFile();
+            if (!htmlFiles.add(file) || !file.isFile()) {
+                continue;
+            }
+            final Matcher matcher = HTML_REFERENCE.matcher(Files.toString(file, Charsets.UTF_8));
+            while (matcher.find()) {
+                final File referenced = DartSource.resolve(file, matcher.group(3), packagesDirectory);
+                if (referenced == null) {
+                    continue;
+                }
+                if (referenced.getName().endsWith(".html")) {
+                    todo.push(referenced);
+                } else if (referenced.getName().endsWith(".dart")) {
+                    dartFiles.add(referenced);
+                }
+            }
+        }
+        final Set<File> inputs = new TreeSet<>(htmlFiles);
+        inputs.addAll(DartSource.closure(dartFiles, packagesDirectory));
+        return inputs;
     }
 
 }
@@ -0,0 +1,207 @@
+package com.google.dart;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.google.dart.util.HashedNames;
+
+/**
+ * Goal to give compiled javascript files content-hashed names, so that they can be cached by browsers forever.
+ * <p/>
+ * Every file is linked (or copied) to a name containing a hash of its content, e.g.
+ * <code>index.html_bootstrap.dart.js</code> to <code>index.html_bootstrap.1a2b3c4d5e.dart.js</code>. A JSON
+ * manifest maps the logical names to the hashed ones and optionally the HTML files are copied with their script
+ * references rewritten to the hashed names.
+ */
+@Mojo(name = "fingerprint", defaultPhase = LifecyclePhase.PROCESS_CLASSES)
+public class FingerprintMojo extends AbstractDartMojo {
+
+	private final static Pattern SCRIPT_SRC = Pattern.compile("(<script\\b[^>]*?\\bsrc\\s*=\\s*[\"'])([^\"']+)([\"'])",
+			Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * The directory with the files to fingerprint, by default the output directory of dart2js.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/generated-sources/dart/dart2js", property = "dart.fingerprint.directory")
+	private File fingerprintDirectory;
+
+	/**
+	 * A list of inclusion filters for the files to fingerprint.
+	 * <p/>
+	 * If not specified the default is '**&#47;*.dart.js'
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter
+	private Set<String> includes = new HashSet<>();
+
+	/**
+	 * Number of hex digits of the content hash used in the file names.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "10", property = "dart.fingerprint.hashLength")
+	private int hashLength;
+
+	/**
+	 * The JSON manifest mapping logical names to hashed names, both relative to the fingerprint directory.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/generated-sources/dart/dart2js/manifest.json", property = "dart.fingerprint.manifest")
+	private File manifestFile;
+
+	/**
+	 * Copy the HTML files of the htmlDirectory to the htmlOutputDirectory, with script references to fingerprinted
+	 * files rewritten.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "false", property = "dart.fingerprint.rewriteHtml")
+	private boolean rewriteHtml;
+
+	/**
+	 * The directory with the HTML files to rewrite, by default the output directory of dwc.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/generated-sources/dart/dwc", property = "dart.fingerprint.htmlDirectory")
+	private File htmlDirectory;
+
+	/**
+	 * The directory to write the rewritten HTML files to. The htmlDirectory is left untouched, so every execution
+	 * rewrites from the original references.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/generated-sources/dart/fingerprint", property = "dart.fingerprint.htmlOutputDirectory")
+	private File htmlOutputDirectory;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (!fingerprintDirectory.isDirectory()) {
+			getLog().info("Nothing to fingerprint - " + relativePath(fingerprintDirectory) + " does not exist");
+			return;
+		}
+
+		final HashedNames hashedNames = new HashedNames(fingerprintDirectory, hashLength);
+		final Map<String, String> manifest = new TreeMap<>();
+		try {
+			for (final String logicalName : scan(fingerprintDirectory, getIncludes())) {
+				if (hashedNames.isHashedName(logicalName)) {
+					continue;
+				}
+				manifest.put(logicalName, hashedNames.link(logicalName));
+			}
+			HashedNames.writeManifest(manifestFile, manifest);
+			getBuildContext().refresh(fingerprintDirectory);
+
+			getLog().info("Fingerprinted " + manifest.size() + " file" + (manifest.size() == 1 ? "" : "s")
+					+ ", manifest: " + relativePath(manifestFile));
+
+			if (rewriteHtml && htmlDirectory.isDirectory()) {
+				int rewritten = 0;
+				for (final String html : scan(htmlDirectory, ImmutableSet.of("**/*.html"))) {
+					if (rewriteHtml(html, hashedNames, manifest)) {
+						rewritten++;
+					}
+				}
+				getBuildContext().refresh(htmlOutputDirectory);
+				getLog().info("Rewrote script references in " + rewritten + " HTML file" + (rewritten == 1 ? "" : "s"));
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to fingerprint files in " + fingerprintDirectory, e);
+		}
+	}
+
+	/**
+	 * Writes the HTML file to the htmlOutputDirectory with script sources referring to a fingerprinted file
+	 * replaced by the hashed name. A source is matched by its logical path or, if no path matches, by its file
+	 * name, which must then be unique among the fingerprinted files. Sources with a hashed name are matched by
+	 * their logical name.
+	 *
+	 * @return true if the file changed
+	 */
+	private boolean rewriteHtml(final String html, final HashedNames hashedNames, final Map<String, String> manifest)
+			throws IOException, MojoExecutionException {
+		final String content = Files.toString(new File(htmlDirectory, html), Charsets.UTF_8);
+		final Matcher matcher = SCRIPT_SRC.matcher(content);
+		final StringBuffer sb = new StringBuffer();
+		while (matcher.find()) {
+			final String src = matcher.group(2);
+			final String replacement = hashedSource(html, hashedNames.logicalName(src), manifest);
+			matcher.appendReplacement(sb,
+					Matcher.quoteReplacement(matcher.group(1) + (replacement == null ? src : replacement)
+							+ matcher.group(3)));
+		}
+		matcher.appendTail(sb);
+		return HashedNames.writeIfChanged(new File(htmlOutputDirectory, html), sb.toString());
+	}
+
+	/**
+	 * @return the source with the hashed name of the fingerprinted file it refers to, or null if it refers to none
+	 */
+	private static String hashedSource(final String html, final String src, final Map<String, String> manifest)
+			throws MojoExecutionException {
+		final Set<String> candidates = new TreeSet<>();
+		for (final Map.Entry<String, String> entry : manifest.entrySet()) {
+			final String logical = entry.getKey();
+			if (src.endsWith("/" + logical) || src.equals(logical)) {
+				return src.substring(0, src.length() - logical.length()) + entry.getValue();
+			}
+			final String logicalFileName = new File(logical).getName();
+			if (src.endsWith("/" + logicalFileName) || src.equals(logicalFileName)) {
+				candidates.add(logical);
+			}
+		}
+		if (candidates.isEmpty()) {
+			return null;
+		}
+		if (candidates.size() > 1) {
+			throw new MojoExecutionException("Script source '" + src + "' in " + html
+					+ " matches several fingerprinted files by name: " + candidates);
+		}
+		final String logical = candidates.iterator().next();
+		return src.substring(0, src.length() - new File(logical).getName().length())
+				+ new File(manifest.get(logical)).getName();
+	}
+
+	private static Set<String> scan(final File directory, final Set<String> includes) {
+		final DirectoryScanner ds = new DirectoryScanner();
+		ds.setBasedir(directory);
+		ds.setIncludes(includes.toArray(new String[includes.size()]));
+		ds.addDefaultExcludes();
+		ds.scan();
+		final Set<String> files = new TreeSet<>();
+		for (final String file : ds.getIncludedFiles()) {
+			files.add(file.replace(File.separatorChar, '/'));
+		}
+		return files;
+	}
+
+	protected Set<String> getIncludes() {
+		if (includes.isEmpty()) {
+			return ImmutableSet.of("**/*.dart.js");
+		}
+		return includes;
+	}
+}
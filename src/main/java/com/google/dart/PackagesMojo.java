@@ -0,0 +1,199 @@
+package com.google.dart;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import com.google.dart.util.ArchiveCache;
+import com.google.dart.util.Fingerprint;
+import com.google.dart.util.LinkUtil;
+
+/**
+ * Goal to resolve dart packages from the maven repository instead of pub.
+ * <p/>
+ * Every dependency of the configured type (zip by default) is treated as a dart package named after its
+ * artifactId. It is extracted once into a shared cache and linked into the packages directory. Packages whose
+ * artifacts are no longer dependencies are removed from it again.
+ */
+@Mojo(name = "packages", defaultPhase = LifecyclePhase.VALIDATE,
+		requiresDependencyResolution = ResolutionScope.COMPILE)
+public class PackagesMojo extends AbstractDartMojo {
+
+	private final static String LIB_DIRECTORY = "lib";
+
+	private final static String MARKER_SUFFIX = ".target";
+
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	/**
+	 * The dependency type of dart packages.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "zip", property = "dart.packages.type")
+	private String packageType;
+
+	/**
+	 * Directory to extract dart packages to. Shared by all builds on this machine.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${user.home}/.m2/dart-packages", property = "dart.packages.cacheDirectory")
+	private File packageCacheDirectory;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+
+		final ArchiveCache cache = new ArchiveCache(packageCacheDirectory);
+		final File packagesDirectory = new File(buildPackagePath());
+
+		final Set<String> packages = new HashSet<>();
+		int linked = 0;
+		for (final Artifact artifact : project.getArtifacts()) {
+			if (!packageType.equals(artifact.getType())) {
+				continue;
+			}
+			packages.add(artifact.getArtifactId());
+			if (artifact.getFile() == null || !artifact.getFile().isFile()) {
+				throw new MojoExecutionException("Dart package " + artifact + " is not resolved.");
+			}
+			try {
+				final File extracted = cache.extract(artifact.getFile(), getCacheKey(artifact));
+				if (linkPackage(new File(packagesDirectory, artifact.getArtifactId()), findPackageRoot(extracted))) {
+					linked++;
+				}
+			} catch (IOException e) {
+				throw new MojoExecutionException("Unable to provide dart package " + artifact, e);
+			}
+		}
+
+		final int removed;
+		try {
+			removed = removeStalePackages(packagesDirectory, packages);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to remove stale dart packages from "
+					+ relativePath(packagesDirectory), e);
+		}
+
+		getLog().info("Linked " + linked + " dart package" + (linked == 1 ? "" : "s") + " into "
+				+ relativePath(packagesDirectory) + (removed > 0 ? ", removed " + removed + " stale" : ""));
+	}
+
+	/**
+	 * Releases are keyed by their version only. Snapshots may change under the same version, so the archive is
+	 * part of their key.
+	 */
+	private String getCacheKey(final Artifact artifact) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(artifact.getGroupId()).append('/').append(artifact.getArtifactId()).append('/')
+				.append(artifact.getVersion());
+		if (artifact.isSnapshot()) {
+			final File file = artifact.getFile();
+			sb.append('-').append(new Fingerprint().add(String.valueOf(file.length()))
+					.add(String.valueOf(file.lastModified())).toString().substring(0, 12));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the lib directory of the package in the extracted archive, which may be nested in a single top
+	 *         level directory
+	 */
+	private File findPackageRoot(final File extracted) {
+		File root = extracted;
+		final File[] children = extracted.listFiles();
+		if (!new File(root, LIB_DIRECTORY).isDirectory() && children != null) {
+			for (final File child : children) {
+				if (new File(child, LIB_DIRECTORY).isDirectory()) {
+					root = child;
+					break;
+				}
+			}
+		}
+		final File lib = new File(root, LIB_DIRECTORY);
+		return lib.isDirectory() ? lib : root;
+	}
+
+	/**
+	 * @return false if the package was already linked to the given target
+	 */
+	private boolean linkPackage(final File packageLink, final File target) throws IOException {
+		final Path link = packageLink.toPath();
+		final File marker = getMarkerFile(packageLink.getName());
+		if (LinkUtil.isLinkTo(link, target.toPath()) || isLinkedTree(link, marker, target)) {
+			if (getLog().isDebugEnabled()) {
+				getLog().debug("Package " + packageLink.getName() + " is up to date.");
+			}
+			return false;
+		}
+		LinkUtil.delete(link);
+		final LinkUtil.Mode mode = LinkUtil.linkDirectory(link, target.toPath());
+		Files.createDirectories(marker.getParentFile().toPath());
+		Files.write(marker.toPath(), target.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+		getLog().info("Package " + packageLink.getName() + " -> " + target + " (" + mode.name().toLowerCase()
+				+ ")");
+		return true;
+	}
+
+	/**
+	 * Hard linked or copied packages cannot tell their target, so the target is recorded in a marker when they
+	 * are created.
+	 *
+	 * @return true if the package is a directory tree created for the given target
+	 */
+	private static boolean isLinkedTree(final Path link, final File marker, final File target) throws IOException {
+		return !Files.isSymbolicLink(link) && Files.isDirectory(link) && marker.isFile()
+				&& new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8)
+						.equals(target.getAbsolutePath());
+	}
+
+	/**
+	 * Removes the packages this goal linked in an earlier build whose artifacts are no longer dependencies.
+	 * Other entries of the packages directory are left alone.
+	 *
+	 * @return the number of removed packages
+	 */
+	private int removeStalePackages(final File packagesDirectory, final Set<String> packages) throws IOException {
+		final File[] markers = getMarkerDirectory().listFiles();
+		if (markers == null) {
+			return 0;
+		}
+		int removed = 0;
+		for (final File marker : markers) {
+			if (!marker.getName().endsWith(MARKER_SUFFIX)) {
+				continue;
+			}
+			final String name = marker.getName().substring(0, marker.getName().length() - MARKER_SUFFIX.length());
+			if (packages.contains(name)) {
+				continue;
+			}
+			LinkUtil.delete(new File(packagesDirectory, name).toPath());
+			Files.delete(marker.toPath());
+			getLog().info("Package " + name + " removed, it is no longer a dependency");
+			removed++;
+		}
+		return removed;
+	}
+
+	private File getMarkerDirectory() {
+		return new File(stateDirectory, "packages");
+	}
+
+	private File getMarkerFile(final String packageName) {
+		return new File(getMarkerDirectory(), packageName + MARKER_SUFFIX);
+	}
+}
@@ -0,0 +1,435 @@
+package com.google.dart;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.Commandline;
+
+import com.google.dart.util.DartSource;
+import com.google.dart.util.Fingerprint;
+import com.google.dart.util.HashedNames;
+import com.google.dart.util.LinkUtil;
+import com.google.dart.util.MemoryScheduler;
+import com.google.dart.util.OsUtil;
+import com.google.dart.util.OutputCommitter;
+
+/**
+ * Goal to run dwc, dart2js and the compression and fingerprinting of the compiled javascript as one pipeline.
+ * <p/>
+ * The stages are connected by bounded queues and hand over every entrypoint on its own: the dart2js compilation
+ * of a bootstrap starts as soon as dwc produced it and the compiled javascript is compressed and fingerprinted
+ * as soon as dart2js is done with it, while the other HTML files are still in earlier stages. The build takes
+ * about as long as the slowest single chain instead of the sum of the slowest entrypoint of every stage. A full
+ * queue makes the stage before it wait, so a slow dart2js stage does not pile up dwc output.
+ * <p/>
+ * Every stage skips entrypoints whose inputs are unchanged since the last run. Failures do not stop the other
+ * entrypoints and are reported together at the end.
+ */
+@Mojo(name = "pipeline", defaultPhase = LifecyclePhase.COMPILE)
+public class PipelineMojo extends Dart2JsMojo {
+
+	private final static String ARGUMENT_OUT = "--out";
+
+	private final static String BOOTSTRAP_SUFFIX = "_bootstrap.dart";
+
+	private final static String GZIP_SUFFIX = ".gz";
+
+	/**
+	 * Marks the end of the input of a stage.
+	 */
+	private final static File END = new File("");
+
+	/**
+	 * Inclusion patterns, relative to the sourceDirectory, of the HTML entrypoints. dwc compiles each into a
+	 * subdirectory of the dwcSourceDirectory named after its path without the extension, e.g. 'web&#47;index'.
+	 * <p/>
+	 * If not specified the default is 'web&#47;index.html'
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter
+	private Set<String> htmlFiles = new HashSet<>();
+
+	/**
+	 * The dwc script, relative to the sourceDirectory.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(property = "script", defaultValue = "packages/web_ui/dwc.dart", required = true)
+	private String script;
+
+	/**
+	 * Write a gzip compressed copy next to every compiled javascript file, e.g. for servers sending precompressed
+	 * files.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "true", property = "dart.pipeline.compress")
+	private boolean compress;
+
+	/**
+	 * Link every compiled javascript file to a content-hashed name, like the fingerprint goal, and write the
+	 * manifest of these names into the output directory.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "true", property = "dart.pipeline.fingerprint")
+	private boolean fingerprint;
+
+	/**
+	 * Number of hex digits of the content hash used in the file names.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "10", property = "dart.fingerprint.hashLength")
+	private int hashLength;
+
+	private final Map<String, String> failures = new ConcurrentSkipListMap<>();
+
+	private final Map<String, String> manifest = new ConcurrentSkipListMap<>();
+
+	private final Map<File, Long> started = new ConcurrentHashMap<>();
+
+	private final AtomicInteger stagingIndex = new AtomicInteger();
+
+	@Override
+	public void execute() throws MojoExecutionException {
+		if (isSkipDart2Js()) {
+			getLog().info("skipping pipeline execution");
+			return;
+		}
+		checkDartSdk();
+		if (!getDartExecutable().canExecute()) {
+			throw new MojoExecutionException("Dart not executable! Configuration error for dartSdk? dartSdk="
+					+ dartSdk.getAbsolutePath());
+		}
+		final File dwc = new File(sourceDirectory, script);
+		if (!dwc.exists()) {
+			throw new MojoExecutionException("The dwc script does not exist here: " + dwc.getAbsolutePath());
+		}
+		final List<File> htmls = findHtmlFiles();
+		if (htmls.isEmpty()) {
+			getLog().info("No HTML files found for " + getHtmlFiles());
+			return;
+		}
+
+		final String dwcFingerprint = computeDwcFingerprint(dwc);
+		final Commandline dart2js = createBaseCommandline();
+		final String dart2jsFingerprint = new Fingerprint()
+				.add(readDartVersion())
+				.add(dart2js.toString())
+				.toString();
+
+		final int workers = getThreadCount();
+		getLog().info("Run the pipeline for " + htmls.size() + " HTML file" + (htmls.size() == 1 ? "" : "s")
+				+ " using " + workers + " threads per stage.");
+
+		final long start = System.currentTimeMillis();
+		final BlockingQueue<File> bootstraps = new ArrayBlockingQueue<>(workers);
+		final BlockingQueue<File> scripts = new ArrayBlockingQueue<>(workers);
+		final MemoryScheduler scheduler = createMemoryScheduler();
+		beginDiagnostics();
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, htmls.size()) + 2 * workers);
+		try {
+			// the workers of the later stages are submitted first, so that they get threads of their own
+			final List<Future<?>> dart2jsResults = new ArrayList<>();
+			for (int i = 0; i < workers; i++) {
+				dart2jsResults.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws InterruptedException {
+						for (File bootstrap = bootstraps.take(); bootstrap != END; bootstrap = bootstraps.take()) {
+							runDart2Js(dart2js, bootstrap, dart2jsFingerprint, scheduler, scripts);
+						}
+						return null;
+					}
+				}));
+			}
+			final List<Future<?>> postResults = new ArrayList<>();
+			for (int i = 0; i < workers; i++) {
+				postResults.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws InterruptedException {
+						for (File js = scripts.take(); js != END; js = scripts.take()) {
+							postProcess(js);
+						}
+						return null;
+					}
+				}));
+			}
+
+			final List<Future<?>> dwcResults = new ArrayList<>();
+			for (final File html : htmls) {
+				dwcResults.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws InterruptedException {
+						runDwc(dwc, html, dwcFingerprint, bootstraps);
+						return null;
+					}
+				}));
+			}
+
+			awaitStage(dwcResults, bootstraps, workers);
+			awaitStage(dart2jsResults, scripts, workers);
+			awaitStage(postResults, null, 0);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while running the pipeline", e);
+		} finally {
+			executor.shutdownNow();
+			closeMemoryScheduler(scheduler);
+			reportDiagnostics();
+		}
+
+		if (fingerprint && failures.isEmpty()) {
+			final File manifestFile = new File(getOutputDirectory(), "manifest.json");
+			try {
+				HashedNames.writeManifest(manifestFile, manifest);
+			} catch (IOException e) {
+				throw new MojoExecutionException("Unable to write " + relativePath(manifestFile), e);
+			}
+		}
+		if (!failures.isEmpty()) {
+			throw new MojoExecutionException("Pipeline failed for " + failures.size() + " file"
+					+ (failures.size() == 1 ? "" : "s") + ": " + failures.keySet());
+		}
+		getLog().info("Pipeline done for " + htmls.size() + " HTML file" + (htmls.size() == 1 ? "" : "s") + " in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Waits for the workers of a stage and then ends the input of the next stage.
+	 */
+	private void awaitStage(final List<Future<?>> results, final BlockingQueue<File> next, final int nextWorkers)
+			throws InterruptedException, MojoExecutionException {
+		for (final Future<?> result : results) {
+			try {
+				result.get();
+			} catch (ExecutionException e) {
+				throw new MojoExecutionException("Pipeline stage failed", e.getCause());
+			}
+		}
+		for (int i = 0; i < nextWorkers; i++) {
+			next.put(END);
+		}
+	}
+
+	/**
+	 * Runs dwc for one HTML file unless its inputs are unchanged and hands all bootstraps of its output to the
+	 * dart2js stage.
+	 */
+	private void runDwc(final File dwc, final File html, final String dwcFingerprint,
+			final BlockingQueue<File> bootstraps) throws InterruptedException {
+		started.put(html, System.currentTimeMillis());
+		final File outputDir = getDwcOutputDirectory(html);
+		final File fingerprintFile = new File(stateDirectory, "pipeline/dwc/" + relativize(getDwcSourceDirectory(),
+				outputDir) + ".fingerprint");
+		// one consumer per stream, the streams are pumped by different threads
+		final CommandLineUtils.StringStreamConsumer output = new CommandLineUtils.StringStreamConsumer();
+		final CommandLineUtils.StringStreamConsumer error = new CommandLineUtils.StringStreamConsumer();
+		try {
+			final Fingerprint fingerprint = new Fingerprint().add(dwcFingerprint).add(outputDir.getAbsolutePath());
+			for (final File input : DartWebMojo.collectInputs(html, getPackagesDirectory())) {
+				fingerprint.add(input.getAbsolutePath()).addFile(input);
+			}
+			if (isForce() || !outputDir.isDirectory()
+					|| !fingerprint.toString().equals(Fingerprint.read(fingerprintFile))) {
+				final File stagingDir = new File(outputDir.getParentFile(), outputDir.getName() + ".staging");
+				LinkUtil.delete(stagingDir.toPath());
+				stagingDir.mkdirs();
+
+				final Commandline cl = new Commandline();
+				cl.setExecutable(getDartExecutable().getAbsolutePath());
+				cl.createArg().setValue(DartMojo.ARGUMENT_PACKAGE_PATH + buildPackagePath());
+				cl.createArg().setValue(dwc.getAbsolutePath());
+				cl.createArg().setValue(ARGUMENT_OUT);
+				cl.createArg().setValue(stagingDir.getAbsolutePath());
+				cl.createArg().setValue(html.getAbsolutePath());
+
+				final int returnValue = executeCommandLine(cl, output, error);
+				if (returnValue != 0) {
+					throw new MojoExecutionException("Dart returned error code " + returnValue);
+				}
+				final OutputCommitter.Result result = OutputCommitter.commitDirectory(stagingDir.toPath(),
+						outputDir.toPath());
+				getLog().info("dwc output in " + relativePath(outputDir) + ": " + result);
+				synchronized (this) {
+					getBuildContext().refresh(outputDir);
+				}
+				Fingerprint.write(fingerprintFile, fingerprint.toString());
+			} else {
+				getLog().info("dwc output for " + relativePath(html) + " is up to date.");
+			}
+		} catch (IOException | MojoExecutionException | RuntimeException e) {
+			fail(html, "dwc", e, output.getOutput() + error.getOutput());
+			return;
+		}
+		if (!output.getOutput().isEmpty() || !error.getOutput().isEmpty()) {
+			getLog().info("dwc output for " + relativePath(html) + ":" + System.lineSeparator() + output.getOutput()
+					+ error.getOutput());
+		}
+
+		final File[] files = outputDir.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				if (file.getName().endsWith(BOOTSTRAP_SUFFIX)) {
+					started.put(file, started.get(html));
+					bootstraps.put(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compiles one bootstrap unless it and the sources it references are unchanged and hands the javascript
+	 * file to the last stage.
+	 */
+	private void runDart2Js(final Commandline dart2js, final File bootstrap, final String dart2jsFingerprint,
+			final MemoryScheduler scheduler, final BlockingQueue<File> scripts) throws InterruptedException {
+		final String relative = relativize(getDwcSourceDirectory(), bootstrap);
+		final File fingerprintFile = new File(stateDirectory, "pipeline/dart2js/" + relative + ".fingerprint");
+		final File js = new File(getOutputDirectory(), relative + ".js");
+		try {
+			final Fingerprint fingerprint = new Fingerprint().add(dart2jsFingerprint).add(js.getAbsolutePath());
+			for (final File file : DartSource.closure(Collections.singleton(bootstrap), getPackagesDirectory())) {
+				fingerprint.add(file.getAbsolutePath()).addFile(file);
+			}
+			if (isForce() || !js.isFile() || !fingerprint.toString().equals(Fingerprint.read(fingerprintFile))) {
+				// compile next to the output directory, so that relative paths in source maps stay valid
+				compile(dart2js, bootstrap, new File(getOutputDirectory().getPath() + ".staging-"
+						+ stagingIndex.getAndIncrement()), scheduler);
+				Fingerprint.write(fingerprintFile, fingerprint.toString());
+			} else {
+				getLog().info("dart2js output for '" + relativePath(bootstrap) + "' is up to date.");
+			}
+		} catch (IOException | MojoExecutionException | RuntimeException e) {
+			fail(bootstrap, "dart2js", e, "");
+			return;
+		}
+		started.put(js, started.get(bootstrap));
+		scripts.put(js);
+	}
+
+	/**
+	 * Compresses and fingerprints one javascript file.
+	 */
+	private void postProcess(final File js) {
+		try {
+			if (compress) {
+				final File gzip = new File(js.getPath() + GZIP_SUFFIX);
+				final File scratch = new File(js.getPath() + GZIP_SUFFIX + ".tmp");
+				// GZIPOutputStream writes no timestamp, so unchanged files compress to identical content
+				try (InputStream in = new FileInputStream(js);
+						OutputStream out = new GZIPOutputStream(new FileOutputStream(scratch))) {
+					IOUtil.copy(in, out);
+				}
+				OutputCommitter.commitFile(scratch.toPath(), gzip.toPath());
+			}
+			if (fingerprint) {
+				final String logicalName = relativize(getOutputDirectory(), js);
+				manifest.put(logicalName, new HashedNames(getOutputDirectory(), hashLength).link(logicalName));
+			}
+			synchronized (this) {
+				getBuildContext().refresh(js.getParentFile());
+			}
+		} catch (IOException | RuntimeException e) {
+			fail(js, "compression and fingerprinting", e, "");
+			return;
+		}
+		final Long start = started.get(js);
+		getLog().info("Pipeline done for '" + relativePath(js) + "'"
+				+ (start != null ? " after " + (System.currentTimeMillis() - start) + " ms" : ""));
+	}
+
+	private void fail(final File file, final String stage, final Exception e, final String output) {
+		getLog().error(stage + " failed for " + relativePath(file) + ": " + e
+				+ (output.isEmpty() ? "" : System.lineSeparator() + output));
+		failures.put(relativePath(file), stage);
+	}
+
+	/**
+	 * Fingerprint of everything shared by all dwc runs: the dart executable and version, the package links and the
+	 * dwc script.
+	 */
+	private String computeDwcFingerprint(final File dwc) throws MojoExecutionException {
+		try {
+			return new Fingerprint()
+					.add(getDartExecutable().getAbsolutePath())
+					.add(readDartVersion())
+					.add(getPackagesDirectory().getAbsolutePath())
+					.addLinkTargets(getPackagesDirectory())
+					.addFile(dwc)
+					.toString();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to compute the dwc fingerprint of " + dwc.getAbsolutePath(), e);
+		}
+	}
+
+	private List<File> findHtmlFiles() {
+		final Set<String> includes = getHtmlFiles();
+		final DirectoryScanner ds = new DirectoryScanner();
+		ds.setBasedir(sourceDirectory);
+		ds.setIncludes(includes.toArray(new String[includes.size()]));
+		ds.setExcludes(new String[] {"**/packages/**"});
+		ds.addDefaultExcludes();
+		ds.scan();
+		final List<File> htmls = new ArrayList<>();
+		for (final String included : ds.getIncludedFiles()) {
+			htmls.add(new File(sourceDirectory, included));
+		}
+		Collections.sort(htmls);
+		return htmls;
+	}
+
+	/**
+	 * @return the dwc output subdirectory for an HTML file, its path relative to the sourceDirectory without the
+	 *         extension
+	 */
+	private File getDwcOutputDirectory(final File html) {
+		final String relative = relativize(sourceDirectory, html);
+		return new File(getDwcSourceDirectory(), relative.substring(0, relative.length() - ".html".length()));
+	}
+
+	private File getPackagesDirectory() {
+		return new File(buildPackagePath());
+	}
+
+	private File getDartExecutable() {
+		return new File(dartSdk, "bin/dart" + (OsUtil.isWindows() ? ".exe" : ""));
+	}
+
+	private Set<String> getHtmlFiles() {
+		return htmlFiles.isEmpty() ? Collections.singleton("web/index.html") : htmlFiles;
+	}
+
+	private static String relativize(final File directory, final File file) {
+		return directory.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+	}
+}
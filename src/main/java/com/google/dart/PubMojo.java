@@ -1,20 +1,38 @@
 package com.google.dart;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.codehaus.plexus.util.cli.CommandLineException;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.StreamConsumer;
 import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
+import com.google.common.io.Files;
+import com.google.dart.util.ArchiveCache;
+import com.google.dart.util.ExecutionSnapshot;
+import com.google.dart.util.Fingerprint;
+import com.google.dart.util.LinkUtil;
 import com.google.dart.util.OsUtil;
+import com.google.dart.util.PackageGraph;
+import com.google.dart.util.Pub;
+import com.google.dart.util.PubLock;
 
 /**
  * Goal to invoke the dart pub package manager.
@@ -28,6 +46,13 @@ public class PubMojo extends AbstractDartMojo {
 
 	private final static String COMMAND_UPDATE = "update";
 
+	private final static String SNAPSHOT = "pub";
+
+	/**
+	 * The directories pub links the packages directory into.
+	 */
+	private final static String[] PUB_DIRECTORIES = {"benchmark", "bin", "example", "test", "tool", "web"};
+
     // TODO pub publish
 
     // TODO pub deploy
@@ -40,9 +65,74 @@ public class PubMojo extends AbstractDartMojo {
 	@Parameter(defaultValue = "false", property = "dart.pub.update")
 	private boolean update;
 
+	/**
+	 * Skip pub if pubspec.yaml, pubspec.lock and the targets of the packages directory are unchanged since the
+	 * last successful run. Ignored if update is set.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "true", property = "dart.pub.skipUnchanged")
+	private boolean skipUnchanged;
+
+	/**
+	 * Resolve packages with the same pubspec.lock (and no path dependencies) only once per build and link the
+	 * packages directories to the shared result, e.g. for the modules of a reactor. Ignored if update is set.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "true", property = "dart.pub.sharePackages")
+	private boolean sharePackages;
+
+	/**
+	 * The directory shared pub resolutions are kept in.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "${session.executionRootDirectory}/target/dart-maven-plugin/pub-shared", property = "dart.pub.sharedPackagesDirectory")
+	private File sharedPackagesDirectory;
+
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
-        executePub(sourceDirectory);
+		final boolean useSnapshot = skipUpToDate && !update && skipUnchanged && !isPubSkipped();
+		if (useSnapshot && isSnapshotUpToDate(SNAPSHOT)) {
+			getLog().info("Dependencies are up to date - pubspecs, options and dart-sdk unchanged since the last build");
+			return;
+		}
+		final ExecutionSnapshot snapshot = beginSnapshot(SNAPSHOT);
+		final List<File> packageDirectories = new ArrayList<>();
+		if (discoverPackages) {
+			final List<Pub> pubs = findPackages();
+			for (final Pub pub : pubs) {
+				packageDirectories.add(pub.getPath());
+				snapshot.addFile(new File(pub.getPath(), Pub.PUBSPEC));
+			}
+			executePub(pubs);
+		} else {
+			packageDirectories.add(sourceDirectory);
+			snapshot.addFile(new File(sourceDirectory, Pub.PUBSPEC));
+			executePub(sourceDirectory);
+		}
+		if (useSnapshot) {
+			if (discoverPackages) {
+				// new packages show up as new directories, pub itself adds links to them
+				for (final File root : packageRoots.isEmpty() ? Collections.singletonList(sourceDirectory)
+						: packageRoots) {
+					snapshot.addDirectories(root);
+				}
+			}
+			for (final File packageDirectory : packageDirectories) {
+				snapshot.addFile(new File(packageDirectory, PubLock.PUBSPEC_LOCK))
+						.addFile(new File(packageDirectory, packagePath));
+			}
+			writeSnapshot(SNAPSHOT, snapshot);
+		}
+	}
+
+	@Override
+	protected Fingerprint fingerprintParameters() {
+		return super.fingerprintParameters()
+				.add(String.valueOf(sharePackages))
+				.add(sharedPackagesDirectory != null ? sharedPackagesDirectory.getAbsolutePath() : null);
 	}
 
 	protected void executePub(final File sourceDirectory) throws MojoExecutionException {
@@ -51,48 +141,243 @@ public class PubMojo extends AbstractDartMojo {
 			getLog().info("Updating dependencies (pub packagemanager) is skipped.");
 			return;
 		}
-		String pubPath = null;
+
+		final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
+		final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
+
+		checkPub();
+
+		System.out.println();
+		System.out.println();
+
+		runPub(sourceDirectory, output, error);
+
+		System.out.println();
+		System.out.println();
+	}
+
+	/**
+	 * Runs pub for all given packages, independent packages concurrently. The output of every package is
+	 * collected and logged as a whole once pub has finished for it.
+	 */
+	protected void executePub(final List<Pub> pubs) throws MojoExecutionException {
+
+		if (isPubSkipped()) {
+			getLog().info("Updating dependencies (pub packagemanager) is skipped.");
+			return;
+		}
+
 		checkPub();
-		pubPath = getPubExecutable().getAbsolutePath();
+
+		executeForPackages("pub", pubs, new PackageGraph.Task() {
+			@Override
+			public void run(final Pub pub) throws MojoExecutionException {
+				final CommandLineUtils.StringStreamConsumer output = new CommandLineUtils.StringStreamConsumer();
+				final CommandLineUtils.StringStreamConsumer error = new CommandLineUtils.StringStreamConsumer();
+				try {
+					runPub(pub.getPath(), output, error);
+				} finally {
+					logPackageOutput("pub", pub, output.getOutput(), error.getOutput());
+				}
+			}
+		});
+	}
+
+	private void runPub(final File sourceDirectory, final StreamConsumer output, final StreamConsumer error)
+			throws MojoExecutionException {
+
+		if (new File(sourceDirectory, packagePath).isDirectory() && isUnchangedInIncrementalBuild(
+				new File(sourceDirectory, Pub.PUBSPEC), new File(sourceDirectory, PubLock.PUBSPEC_LOCK))) {
+			if (getLog().isDebugEnabled()) {
+				getLog().debug("pubspec of " + relativePath(sourceDirectory) + " unchanged.");
+			}
+			return;
+		}
+
+		final File fingerprintFile = getFingerprintFile(sourceDirectory);
+		if (isPubUpToDate(sourceDirectory, fingerprintFile)) {
+			getLog().info("Dependencies of " + relativePath(sourceDirectory) + " are up to date, skipping pub.");
+			return;
+		}
+
+		if (!linkSharedPackages(sourceDirectory, output, error)) {
+			getLog().info("Run pub for package root: " + relativePath(sourceDirectory));
+			runPubCommand(sourceDirectory, output, error);
+		}
+
+		getBuildContext().refresh(new File(sourceDirectory, packagePath));
+
+		try {
+			Fingerprint.write(fingerprintFile, computeFingerprint(sourceDirectory));
+		} catch (IOException e) {
+			getLog().warn("Unable to write pub fingerprint '" + fingerprintFile.getAbsolutePath() + "'.", e);
+		}
+	}
+
+	private void runPubCommand(final File directory, final StreamConsumer output, final StreamConsumer error)
+			throws MojoExecutionException {
+		final String pubPath = getPubExecutable().getAbsolutePath();
 
 		if (getLog().isDebugEnabled()) {
 			getLog().debug("Using pub '" + pubPath + "'.");
 		}
 
-		final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
-		final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
-
 		final Commandline cl = new Commandline();
 		cl.setExecutable(pubPath);
 
 		cl.createArg().setValue(update ? COMMAND_UPDATE : COMMAND_INSTALL);
 
+		cl.setWorkingDirectory(directory);
 		if (getLog().isDebugEnabled()) {
-			getLog().debug("Base pub command: " + cl.toString());
+			getLog().debug("Execute pub command: " + cl.toString());
 		}
+		final int returnCode = executeCommandLine(cl, output, error);
+		if (getLog().isDebugEnabled()) {
+			getLog().debug("pub return code: " + returnCode);
+		}
+		if (returnCode != 0) {
+			throw new MojoExecutionException("Pub returned error code " + returnCode);
+		}
+	}
 
-		System.out.println();
-		System.out.println();
-
+	/**
+	 * Resolves the dependencies of a package with a lock file only once per lock file content and sdk, in the
+	 * shared directory, and links the packages directory of the package to the result. Concurrent builds
+	 * needing the same resolution wait for the first one.
+	 *
+	 * @return false if the package cannot share a resolution and pub has to run for it
+	 */
+	private boolean linkSharedPackages(final File sourceDirectory, final StreamConsumer output,
+			final StreamConsumer error) throws MojoExecutionException {
+		final File lockFile = new File(sourceDirectory, PubLock.PUBSPEC_LOCK);
+		if (!sharePackages || update || !lockFile.isFile()) {
+			return false;
+		}
+		final Pub pub;
+		final String key;
 		try {
-				getLog().info("Run pub for package root: " + relativePath(sourceDirectory));
-				cl.setWorkingDirectory(sourceDirectory);
+			if (PubLock.load(lockFile).hasPathPackages()) {
 				if (getLog().isDebugEnabled()) {
-					getLog().debug("Execute pub command: " + cl.toString());
+					getLog().debug("Lock file of " + relativePath(sourceDirectory) + " has path packages, not shared.");
 				}
-				final int returnCode = CommandLineUtils.executeCommandLine(cl, output, error);
-				if (getLog().isDebugEnabled()) {
-					getLog().debug("pub return code: " + returnCode);
+				return false;
+			}
+			pub = Pub.load(new File(sourceDirectory, Pub.PUBSPEC));
+			key = new Fingerprint().add(dartSdk.getAbsolutePath()).add(readDartVersion()).addFile(lockFile)
+					.toString();
+		} catch (IOException e) {
+			getLog().debug("Unable to read pubspec of " + relativePath(sourceDirectory) + ".", e);
+			return false;
+		}
+
+		final File shared;
+		try {
+			shared = new ArchiveCache(sharedPackagesDirectory).populate(key, new ArchiveCache.Populator() {
+				@Override
+				public void populate(final File directory) throws Exception {
+					Files.copy(new File(sourceDirectory, Pub.PUBSPEC), new File(directory, Pub.PUBSPEC));
+					Files.copy(lockFile, new File(directory, PubLock.PUBSPEC_LOCK));
+					getLog().info("Run pub for the lock file of " + relativePath(sourceDirectory)
+							+ ", shared as " + key);
+					runPubCommand(directory, output, error);
 				}
-				if (returnCode != 0) {
-					throw new MojoExecutionException("Pub returned error code " + returnCode);
+			});
+		} catch (IOException e) {
+			if (e.getCause() instanceof MojoExecutionException) {
+				throw (MojoExecutionException) e.getCause();
+			}
+			throw new MojoExecutionException("Unable to resolve shared packages for "
+					+ relativePath(sourceDirectory), e);
+		}
+
+		try {
+			final String sharedName = Pub.load(new File(shared, Pub.PUBSPEC)).getName();
+			linkPackages(new File(shared, packagePath).toPath(), sourceDirectory, pub.getName(), sharedName);
+		} catch (IOException | UnsupportedOperationException e) {
+			getLog().debug("Unable to link shared packages, running pub instead.", e);
+			return false;
+		}
+		getLog().info("Packages of " + relativePath(sourceDirectory) + " linked to shared resolution " + key);
+		return true;
+	}
+
+	/**
+	 * Creates the links pub would create: the packages directory with a link for every package of the shared
+	 * resolution and one for the package itself, and a link to it in every directory of the pub layout. The
+	 * package that ran the shared resolution is left out, it is a different package than this one.
+	 */
+	private void linkPackages(final Path sharedPackages, final File sourceDirectory, final String name,
+			final String sharedName) throws IOException {
+		final Path packages = new File(sourceDirectory, packagePath).toPath();
+		LinkUtil.delete(packages);
+		java.nio.file.Files.createDirectories(packages);
+
+		try (DirectoryStream<Path> entries = java.nio.file.Files.newDirectoryStream(sharedPackages)) {
+			for (final Path entry : entries) {
+				final String packageName = entry.getFileName().toString();
+				if (packageName.equals(name) || packageName.equals(sharedName)) {
+					continue;
 				}
-		} catch (CommandLineException e) {
-			throw new MojoExecutionException("Unable to execute pub", e);
+				final Path target = java.nio.file.Files.isSymbolicLink(entry)
+						? entry.getParent().resolve(java.nio.file.Files.readSymbolicLink(entry)).normalize()
+						: entry.toAbsolutePath();
+				java.nio.file.Files.createSymbolicLink(packages.resolve(packageName), target);
+			}
+		}
+		if (new File(sourceDirectory, "lib").isDirectory()) {
+			java.nio.file.Files.createSymbolicLink(packages.resolve(name), Paths.get("..", "lib"));
 		}
 
-		System.out.println();
-		System.out.println();
+		for (final String directory : PUB_DIRECTORIES) {
+			final Path root = new File(sourceDirectory, directory).toPath();
+			if (!java.nio.file.Files.isDirectory(root)) {
+				continue;
+			}
+			java.nio.file.Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+						throws IOException {
+					if (dir.getFileName().toString().equals(packagePath)) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					final Path link = dir.resolve(packagePath);
+					if (!java.nio.file.Files.exists(link, LinkOption.NOFOLLOW_LINKS)) {
+						java.nio.file.Files.createSymbolicLink(link, dir.relativize(packages));
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+	}
+
+	private boolean isPubUpToDate(final File sourceDirectory, final File fingerprintFile) {
+		if (update || !skipUnchanged) {
+			return false;
+		}
+		final String previous = Fingerprint.read(fingerprintFile);
+		if (previous == null) {
+			return false;
+		}
+		try {
+			return previous.equals(computeFingerprint(sourceDirectory));
+		} catch (IOException e) {
+			getLog().debug("Unable to compute pub fingerprint.", e);
+			return false;
+		}
+	}
+
+	private String computeFingerprint(final File sourceDirectory) throws IOException {
+		return new Fingerprint()
+				.add(dartSdk.getAbsolutePath())
+				.addFile(new File(sourceDirectory, Pub.PUBSPEC))
+				.addFile(new File(sourceDirectory, PubLock.PUBSPEC_LOCK))
+				.addLinkTargets(new File(sourceDirectory, packagePath))
+				.toString();
+	}
+
+	private File getFingerprintFile(final File sourceDirectory) {
+		final String key = new Fingerprint().add(sourceDirectory.getAbsolutePath()).toString();
+		return new File(stateDirectory, "pub/" + key + ".fingerprint");
 	}
 
 	protected void checkPub() throws MojoExecutionException {
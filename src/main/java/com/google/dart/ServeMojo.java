@@ -0,0 +1,316 @@
+package com.google.dart;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.Commandline;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.dart.util.DartSource;
+import com.google.dart.util.Fingerprint;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Goal to serve the dart sources and the dwc output over HTTP for development, without running a build.
+ * <p/>
+ * A request for a <code>.dart.js</code> file that does not exist compiles the matching dart entrypoint with
+ * dart2js. Compiled files are cached by a hash of all sources the entrypoint references, concurrent requests for
+ * the same entrypoint wait for a single compilation. Responses carry an ETag and are sent gzip compressed if the
+ * client accepts it and a compressed variant exists.
+ */
+@Mojo(name = "serve", requiresDirectInvocation = true)
+public class ServeMojo extends Dart2JsMojo {
+
+	private static final String DART_JS_SUFFIX = ".dart.js";
+
+	private static final String GZIP_SUFFIX = ".gz";
+
+	private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+
+	static {
+		CONTENT_TYPES.put("html", "text/html; charset=utf-8");
+		CONTENT_TYPES.put("css", "text/css; charset=utf-8");
+		CONTENT_TYPES.put("js", "application/javascript; charset=utf-8");
+		CONTENT_TYPES.put("dart", "application/dart; charset=utf-8");
+		CONTENT_TYPES.put("json", "application/json; charset=utf-8");
+		CONTENT_TYPES.put("map", "application/json; charset=utf-8");
+		CONTENT_TYPES.put("txt", "text/plain; charset=utf-8");
+		CONTENT_TYPES.put("svg", "image/svg+xml");
+		CONTENT_TYPES.put("png", "image/png");
+		CONTENT_TYPES.put("jpg", "image/jpeg");
+		CONTENT_TYPES.put("gif", "image/gif");
+		CONTENT_TYPES.put("ico", "image/x-icon");
+	}
+
+	/**
+	 * The port to listen on.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "8080", property = "dart.serve.port")
+	private int port;
+
+	private final ConcurrentMap<String, FutureTask<File>> compilations = new ConcurrentHashMap<>();
+
+	private Commandline baseCommandline;
+
+	private String baseFingerprint;
+
+	@Override
+	public void execute() throws MojoExecutionException {
+		baseCommandline = createBaseCommandline();
+		baseFingerprint = new Fingerprint()
+				.add(dartSdk.getAbsolutePath())
+				.add(readDartVersion())
+				.add(baseCommandline.toString())
+				.toString();
+
+		final HttpServer server;
+		try {
+			server = HttpServer.create(new InetSocketAddress(port), 0);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to listen on port " + port, e);
+		}
+		final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+				.setNameFormat("dart-serve-%d").setDaemon(true).build());
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				try {
+					ServeMojo.this.handle(exchange);
+				} catch (IOException | RuntimeException e) {
+					getLog().warn("Unable to serve " + exchange.getRequestURI() + ": " + e.getMessage());
+					throw e;
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+		getLog().info("Serving " + relativePath(getDwcSourceDirectory()) + " and " + relativePath(sourceDirectory)
+				+ " on http://localhost:" + port + "/ - press Ctrl-C to stop");
+		try {
+			synchronized (this) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+	}
+
+	private void handle(final HttpExchange exchange) throws IOException {
+		final String method = exchange.getRequestMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			sendError(exchange, 405, "Method not allowed");
+			return;
+		}
+		String path = URI.create(exchange.getRequestURI().getRawPath()).getPath();
+		if (path.endsWith("/")) {
+			path += "index.html";
+		}
+
+		File file = resolve(path);
+		String etag = file != null ? "\"" + Long.toHexString(file.length()) + "-"
+				+ Long.toHexString(file.lastModified()) + "\"" : null;
+		if (file == null && path.endsWith(DART_JS_SUFFIX)) {
+			final File entrypoint = resolve(path.substring(0, path.length() - ".js".length()));
+			if (entrypoint != null) {
+				try {
+					file = compile(entrypoint);
+				} catch (MojoExecutionException e) {
+					sendError(exchange, 500, e.getMessage());
+					return;
+				}
+				etag = "\"" + file.getName().substring(0, file.getName().length() - ".js".length()) + "\"";
+			}
+		}
+		if (file == null) {
+			sendError(exchange, 404, "Not found: " + path);
+			return;
+		}
+
+		exchange.getResponseHeaders().set("ETag", etag);
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+		if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+
+		final String contentType = CONTENT_TYPES.get(extension(path));
+		exchange.getResponseHeaders().set("Content-Type",
+				contentType != null ? contentType : "application/octet-stream");
+
+		final File gzip = new File(file.getPath() + GZIP_SUFFIX);
+		final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		final boolean compressed = acceptEncoding != null && acceptEncoding.contains("gzip") && gzip.isFile()
+				&& gzip.lastModified() >= file.lastModified();
+		final File body = compressed ? gzip : file;
+		if (compressed) {
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		if ("HEAD".equals(method)) {
+			exchange.sendResponseHeaders(200, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(200, body.length());
+		try (InputStream in = new FileInputStream(body); OutputStream out = exchange.getResponseBody()) {
+			IOUtil.copy(in, out);
+		}
+	}
+
+	/**
+	 * Resolves the path against the normalized directories, so that no path, e.g. one with encoded "..", leads
+	 * out of them. Links inside the directories, like those pub creates in the packages directory, are followed.
+	 *
+	 * @return the file for the path in the dwc output or, if not there, the sourceDirectory
+	 */
+	private File resolve(final String path) {
+		for (final File root : new File[] {getDwcSourceDirectory(), sourceDirectory}) {
+			final Path directory = root.toPath().toAbsolutePath().normalize();
+			final Path file = new File(root, path).toPath().toAbsolutePath().normalize();
+			if (file.startsWith(directory) && Files.isRegularFile(file)) {
+				return file.toFile();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Compiles the entrypoint unless a compilation of the same sources is cached. Concurrent calls for the same
+	 * sources share one compilation, which is forgotten once it is done: a successful one is then found in the
+	 * cache, a failed one is retried by the next call.
+	 *
+	 * @return the compiled javascript file
+	 */
+	private File compile(final File entrypoint) throws MojoExecutionException {
+		final String key;
+		try {
+			final Fingerprint fingerprint = new Fingerprint().add(baseFingerprint).add(entrypoint.getAbsolutePath());
+			for (final File file : DartSource.closure(Collections.singleton(entrypoint),
+					new File(sourceDirectory, packagePath))) {
+				fingerprint.add(file.getAbsolutePath()).addFile(file);
+			}
+			key = fingerprint.toString();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to read sources of " + relativePath(entrypoint), e);
+		}
+
+		final File output = new File(stateDirectory, "serve/" + key + ".js");
+		if (output.isFile()) {
+			return output;
+		}
+
+		final FutureTask<File> task = new FutureTask<>(new Callable<File>() {
+			@Override
+			public File call() throws MojoExecutionException {
+				return runDart2Js(entrypoint, output);
+			}
+		});
+		FutureTask<File> existing = compilations.putIfAbsent(key, task);
+		if (existing == null) {
+			existing = task;
+			try {
+				task.run();
+			} finally {
+				compilations.remove(key, task);
+			}
+		}
+		try {
+			return existing.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MojoExecutionException) {
+				throw (MojoExecutionException) e.getCause();
+			}
+			throw new MojoExecutionException("Unable to compile " + relativePath(entrypoint), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while compiling " + relativePath(entrypoint), e);
+		}
+	}
+
+	private File runDart2Js(final File entrypoint, final File output) throws MojoExecutionException {
+		getLog().info("dart2js for '" + relativePath(entrypoint) + "'");
+		final long start = System.currentTimeMillis();
+
+		final File scratch = new File(output.getParentFile(), output.getName() + ".tmp");
+		final Commandline cl = (Commandline) baseCommandline.clone();
+		cl.createArg().setValue("-o" + scratch.getAbsolutePath());
+		cl.createArg().setValue(entrypoint.getAbsolutePath());
+
+		// one consumer per stream, the streams are pumped by different threads
+		final CommandLineUtils.StringStreamConsumer outputMessages = new CommandLineUtils.StringStreamConsumer();
+		final CommandLineUtils.StringStreamConsumer errorMessages = new CommandLineUtils.StringStreamConsumer();
+		scratch.getParentFile().mkdirs();
+		final int returnValue = executeCommandLine(cl, outputMessages, errorMessages);
+		if (returnValue != 0 || !scratch.isFile()) {
+			getLog().error(outputMessages.getOutput() + errorMessages.getOutput());
+			throw new MojoExecutionException("Dart2Js returned error code " + returnValue + " for "
+					+ relativePath(entrypoint) + System.lineSeparator() + outputMessages.getOutput()
+					+ errorMessages.getOutput());
+		}
+
+		try {
+			final File gzip = new File(output.getPath() + GZIP_SUFFIX);
+			try (InputStream in = new FileInputStream(scratch);
+					OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))) {
+				IOUtil.copy(in, out);
+			}
+			Files.move(scratch.toPath(), output.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			gzip.setLastModified(output.lastModified());
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to store compiled " + relativePath(entrypoint), e);
+		}
+		getLog().info("Compiled '" + relativePath(entrypoint) + "' in " + (System.currentTimeMillis() - start)
+				+ " ms");
+		return output;
+	}
+
+	private static void sendError(final HttpExchange exchange, final int status, final String message)
+			throws IOException {
+		final byte[] body = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static String extension(final String path) {
+		final int dot = path.lastIndexOf('.');
+		return dot < 0 ? "" : path.substring(dot + 1).toLowerCase();
+	}
+}
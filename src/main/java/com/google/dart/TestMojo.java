@@ -1,24 +1,32 @@
 package com.google.dart;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.SelectorUtils;
 import org.codehaus.plexus.util.cli.Arg;
-import org.codehaus.plexus.util.cli.CommandLineException;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.StreamConsumer;
 import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.dart.util.PackageGraph;
+import com.google.dart.util.Pub;
+import com.google.dart.util.SourceIndex;
 
 /**
  * Goal to invoke the dart tests.
@@ -74,24 +82,55 @@ public class TestMojo extends DartMojo {
 	@Parameter(property = "maven.test.failure.ignore", defaultValue = "false")
 	private boolean testFailureIgnore;
 
+	/**
+	 * Run only the included files that are test programs, i.e. libraries with a top level main function that
+	 * import the unittest or test package or match one of the testNamePatterns. Helpers and fixtures in the test
+	 * directory are not run then.
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter(defaultValue = "true", property = "dart.test.entrypointsOnly")
+	private boolean testEntrypointsOnly;
+
+	/**
+	 * Patterns of test programs that do not import a test framework.
+	 * <p/>
+	 * If not specified the default is '**&#47;*_test.dart'
+	 *
+	 * @since 2.1.2
+	 */
+	@Parameter
+	private Set<String> testNamePatterns = new HashSet<>();
+
+	private SourceIndex sourceIndex;
+
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		if (isSkipTests()) {
 			getLog().info("Tests are skipped.");
-		} else {
-            // TODO src/main/dart/test vs. src/test/dart
-            final File testDirectory = new File(sourceDirectory, "test");
-            getLog().info("running tests in " + testDirectory.getAbsolutePath());
-			executeTests(testDirectory);
+			return;
+		}
+		sourceIndex = new SourceIndex(getSourceIndexFile());
+		try {
+			if (discoverPackages) {
+				executeTests(findPackages());
+			} else {
+				// TODO src/main/dart/test vs. src/test/dart
+				final File testDirectory = new File(sourceDirectory, "test");
+				getLog().info("running tests in " + testDirectory.getAbsolutePath());
+				executeTests(testDirectory);
+			}
+		} finally {
+			try {
+				sourceIndex.save();
+			} catch (IOException e) {
+				getLog().warn("Unable to write source index '" + getSourceIndexFile().getAbsolutePath() + "'.", e);
+			}
 		}
 	}
 
 	private void executeTests(final File testDirectory) throws MojoExecutionException, MojoFailureException {
 
-		final Commandline cl = createBaseCommandline();
-
-		final Arg scriptArg = cl.createArg(true);
-
 		final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
 		final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
 
@@ -100,6 +139,59 @@ public class TestMojo extends DartMojo {
 		System.out.println();
 		System.out.println();
 
+		final boolean fail = runTests(sourceDirectory, testSources, output, error);
+
+		reportExecution(testSources, fail);
+
+		System.out.println();
+		System.out.println();
+
+	}
+
+	/**
+	 * Runs the tests of all given packages, in the order of their path dependencies and independent packages
+	 * concurrently. The output of every package is logged as a whole once its tests are done.
+	 */
+	private void executeTests(final List<Pub> pubs) throws MojoExecutionException, MojoFailureException {
+
+		final Set<File> testSources = Collections.synchronizedSet(new HashSet<File>());
+		final AtomicBoolean fail = new AtomicBoolean();
+
+		executeForPackages("test", pubs, new PackageGraph.Task() {
+			@Override
+			public void run(final Pub pub) throws MojoExecutionException {
+				final File testDirectory = new File(pub.getPath(), "test");
+				if (!testDirectory.isDirectory()) {
+					return;
+				}
+				final Set<File> packageTestSources = computeTestToRun(testDirectory);
+				final CommandLineUtils.StringStreamConsumer output = new CommandLineUtils.StringStreamConsumer();
+				final CommandLineUtils.StringStreamConsumer error = new CommandLineUtils.StringStreamConsumer();
+				try {
+					if (runTests(pub.getPath(), packageTestSources, output, error)) {
+						fail.set(true);
+					}
+				} finally {
+					logPackageOutput("test", pub, output.getOutput(), error.getOutput());
+				}
+				testSources.addAll(packageTestSources);
+			}
+		});
+
+		reportExecution(testSources, fail.get());
+	}
+
+	/**
+	 * @return true if any test failed
+	 */
+	private boolean runTests(final File packageDirectory, final Set<File> testSources, final StreamConsumer output,
+			final StreamConsumer error) throws MojoExecutionException {
+
+		final Commandline cl = createBaseCommandline(packageDirectory);
+
+		// the script follows the options of the vm
+		final Arg scriptArg = cl.createArg();
+
 		boolean fail = false;
 
 		for (final File dartTestFile : testSources) {
@@ -113,9 +205,9 @@ public class TestMojo extends DartMojo {
 					getLog().debug("Execute test command: " + cl.toString());
 				}
 
-				final int returnValue = CommandLineUtils.executeCommandLine(cl, output, error);
-				System.out.println();
-				System.out.println();
+				final int returnValue = executeCommandLine(cl, output, error);
+				output.consumeLine("");
+				output.consumeLine("");
 
 				if (getLog().isDebugEnabled()) {
 					getLog().debug("test return code: " + returnValue);
@@ -124,17 +216,13 @@ public class TestMojo extends DartMojo {
 					fail = true;
 				}
 
-			} catch (final CommandLineException e) {
+			} catch (final MojoExecutionException e) {
 				getLog().error("error running tests: ", e);
 				fail = true;
 			}
 		}
 
-		reportExecution(testSources, fail);
-
-		System.out.println();
-		System.out.println();
-
+		return fail;
 	}
 
 	private void reportExecution(final Set<File> testSources, final boolean fail) throws MojoFailureException {
@@ -164,11 +252,18 @@ public class TestMojo extends DartMojo {
 
 	public Set<String> getIncludes() {
 		if (includes.isEmpty()) {
-			return ImmutableSet.copyOf(Arrays.asList(new String[] {"**/*.dart"})); // TODO: *_test.dart?
+			return ImmutableSet.copyOf(Arrays.asList(new String[] {"**/*.dart"}));
 		}
 		return includes;
 	}
 
+	protected Set<String> getTestNamePatterns() {
+		if (testNamePatterns.isEmpty()) {
+			return ImmutableSet.of("**/*_test.dart");
+		}
+		return testNamePatterns;
+	}
+
 	protected Set<String> getExcludes() {
 		if (excludes.isEmpty()) {
 			return ImmutableSet.copyOf(Arrays.asList(new String[] {"**/packages/**"}));
@@ -180,9 +275,47 @@ public class TestMojo extends DartMojo {
         throws MojoExecutionException {
 		final Set<File> testToRun = new HashSet<>();
         testToRun.addAll(scanForTests(testDirectory, getIncludes(), getExcludes()));
+		if (testEntrypointsOnly) {
+			retainTestEntrypoints(testDirectory, testToRun);
+		}
 		return testToRun;
 	}
 
+	/**
+	 * Removes all files that are not test programs, using the source index to avoid scanning unchanged files.
+	 */
+	private void retainTestEntrypoints(final File testDirectory, final Set<File> testSources)
+			throws MojoExecutionException {
+		int skipped = 0;
+		for (final Iterator<File> iterator = testSources.iterator(); iterator.hasNext();) {
+			final File testSource = iterator.next();
+			final SourceIndex.Classification classification;
+			try {
+				classification = sourceIndex.classify(testSource);
+			} catch (IOException e) {
+				throw new MojoExecutionException("Unable to read test " + relativePath(testSource), e);
+			}
+			if (!classification.isEntrypoint()
+					|| !classification.importsTestFramework() && !matchesTestName(testDirectory, testSource)) {
+				iterator.remove();
+				skipped++;
+			}
+		}
+		if (skipped > 0 && getLog().isDebugEnabled()) {
+			getLog().debug("Skipped " + skipped + " files in " + relativePath(testDirectory) + " that are no tests");
+		}
+	}
+
+	private boolean matchesTestName(final File testDirectory, final File testSource) {
+		final String relativePath = testDirectory.toPath().relativize(testSource.toPath()).toString();
+		for (final String pattern : getTestNamePatterns()) {
+			if (SelectorUtils.matchPath(pattern, relativePath)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private Set<File> scanForTests(File testDirectory, Set<String> sourceIncludes, Set<String> sourceExcludes) {
 		DirectoryScanner ds = new DirectoryScanner();
 		ds.setFollowSymlinks(true);
@@ -0,0 +1,63 @@
+package com.google.dart;
+
+/**
+ * A named combination of dart2js options, e.g. a checked debug build and a minified production build, compiled
+ * into a subdirectory of the output directory named after it. Options not set are taken from the goal.
+ *
+ * @since 2.1.2
+ */
+public class Variant {
+
+	/**
+	 * The name, also the name of the output subdirectory.
+	 */
+	private String name;
+
+	private Boolean checkedMode;
+
+	private Boolean minify;
+
+	private Boolean analyseAll;
+
+	private Boolean suppressWarnings;
+
+	public Variant() {
+	}
+
+	public Variant(final String name, final Boolean checkedMode, final Boolean minify, final Boolean analyseAll,
+			final Boolean suppressWarnings) {
+		this.name = name;
+		this.checkedMode = checkedMode;
+		this.minify = minify;
+		this.analyseAll = analyseAll;
+		this.suppressWarnings = suppressWarnings;
+	}
+
+	/**
+	 * @return the name or <code>null</code> for the variant compiled directly into the output directory
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public boolean isCheckedMode(final boolean defaultValue) {
+		return checkedMode != null ? checkedMode : defaultValue;
+	}
+
+	public boolean isMinify(final boolean defaultValue) {
+		return minify != null ? minify : defaultValue;
+	}
+
+	public boolean isAnalyseAll(final boolean defaultValue) {
+		return analyseAll != null ? analyseAll : defaultValue;
+	}
+
+	public boolean isSuppressWarnings(final boolean defaultValue) {
+		return suppressWarnings != null ? suppressWarnings : defaultValue;
+	}
+
+	@Override
+	public String toString() {
+		return name != null ? name : "default";
+	}
+}
@@ -0,0 +1,331 @@
+package com.google.dart.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Extracts archives once into a shared directory keyed by a caller supplied version key, so that repeated builds
+ * and other modules reuse the extracted content. Extraction is guarded by a lock file, so concurrent builds
+ * (threads as well as processes) extract every key only once.
+ * <p/>
+ * Zip files and gzip compressed tar files (<code>.tar.gz</code>, <code>.tgz</code>) are supported. Tar entries
+ * keep their executable bit and symbolic links.
+ * <p/>
+ * Other content can be cached the same way with {@link #populate(String, Populator)}.
+ */
+public class ArchiveCache {
+
+	/**
+	 * Fills a fresh directory with the content to cache.
+	 */
+	public interface Populator {
+
+		void populate(File directory) throws Exception;
+	}
+
+	private static final String COMPLETE_MARKER = ".complete";
+
+	private static final int TAR_BLOCK = 512;
+
+	private static final ConcurrentMap<String, Object> MONITORS = new ConcurrentHashMap<>();
+
+	private final File cacheDirectory;
+
+	public ArchiveCache(final File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * @return the directory the archive is extracted to, extracting it first if it is not in the cache yet
+	 */
+	public File extract(final File archive, final String key) throws IOException {
+		return extract(archive, key, null);
+	}
+
+	/**
+	 * Like {@link #extract(File, String)}, but verifies the archive before extracting it.
+	 *
+	 * @param sha256 the expected SHA-256 of the archive in hex or <code>null</code> not to check it
+	 * @throws IOException if the archive does not match the checksum
+	 */
+	public File extract(final File archive, final String key, final String sha256) throws IOException {
+		return populate(key, new Populator() {
+			@Override
+			public void populate(final File directory) throws IOException {
+				if (sha256 != null) {
+					verify(archive, sha256);
+				}
+				final String name = archive.getName().toLowerCase(Locale.US);
+				if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+					untar(archive, directory);
+				} else {
+					unzip(archive, directory);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the directory of the key, populating it first if it is not in the cache yet. Concurrent callers for
+	 *         the same key wait for the first one.
+	 * @throws IOException if the populator failed, the cache is left without the key then
+	 */
+	public File populate(final String key, final Populator populator) throws IOException {
+		final File target = new File(cacheDirectory, key);
+		if (isComplete(target)) {
+			return target;
+		}
+
+		final Object monitor = monitor(target);
+		synchronized (monitor) {
+			final File lockFile = new File(cacheDirectory, key + ".lock");
+			Files.createDirectories(lockFile.getParentFile().toPath());
+			try (RandomAccessFile lockAccess = new RandomAccessFile(lockFile, "rw");
+				 FileChannel channel = lockAccess.getChannel();
+				 FileLock lock = channel.lock()) {
+				if (isComplete(target)) {
+					return target;
+				}
+				final Path staging = new File(cacheDirectory, key + ".tmp-" + UUID.randomUUID()).toPath();
+				try {
+					Files.createDirectories(staging);
+					populator.populate(staging.toFile());
+					Files.createFile(staging.resolve(COMPLETE_MARKER));
+					LinkUtil.delete(target.toPath());
+					Files.move(staging, target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				} catch (IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException(e.getMessage(), e);
+				} finally {
+					LinkUtil.delete(staging);
+				}
+			}
+		}
+		return target;
+	}
+
+	private static Object monitor(final File target) {
+		final String key = target.getAbsolutePath();
+		final Object monitor = new Object();
+		final Object existing = MONITORS.putIfAbsent(key, monitor);
+		return existing != null ? existing : monitor;
+	}
+
+	private static boolean isComplete(final File target) {
+		return new File(target, COMPLETE_MARKER).isFile();
+	}
+
+	private static void verify(final File archive, final String sha256) throws IOException {
+		final String actual = com.google.common.io.Files.hash(archive, Hashing.sha256()).toString();
+		if (!actual.equalsIgnoreCase(sha256.trim())) {
+			throw new IOException("Checksum mismatch of " + archive + ": expected SHA-256 " + sha256.trim()
+					+ ", got " + actual);
+		}
+	}
+
+	private static void unzip(final File archive, final File destination) throws IOException {
+		final Path root = destination.toPath().toAbsolutePath().normalize();
+		try (ZipFile zip = new ZipFile(archive)) {
+			final Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				final ZipEntry entry = entries.nextElement();
+				final Path path = root.resolve(entry.getName()).normalize();
+				if (!path.startsWith(root)) {
+					throw new IOException("Archive entry outside of target directory: " + entry.getName());
+				}
+				if (entry.isDirectory()) {
+					Files.createDirectories(path);
+				} else {
+					Files.createDirectories(path.getParent());
+					try (InputStream in = zip.getInputStream(entry)) {
+						Files.copy(in, path);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Extracts a gzip compressed tar file in the ustar, GNU or pax format. Only regular files, directories and
+	 * links are extracted, every entry has to stay within the destination.
+	 */
+	private static void untar(final File archive, final File destination) throws IOException {
+		final Path root = destination.toPath().toAbsolutePath().normalize();
+		try (InputStream in = new BufferedInputStream(new GZIPInputStream(new FileInputStream(archive)))) {
+			final byte[] header = new byte[TAR_BLOCK];
+			String longName = null;
+			String longLink = null;
+			while (readBlock(in, header) && !isZero(header)) {
+				String name = tarString(header, 0, 100);
+				final String prefix = tarString(header, 345, 155);
+				if (tarString(header, 257, 6).startsWith("ustar") && !prefix.isEmpty()
+						&& header[475] == 0) {
+					name = prefix + "/" + name;
+				}
+				String linkName = tarString(header, 157, 100);
+				if (longName != null) {
+					name = longName;
+				}
+				if (longLink != null) {
+					linkName = longLink;
+				}
+				final long size = tarNumber(header, 124, 12);
+				final int mode = (int) tarNumber(header, 100, 8);
+				final char type = (char) header[156];
+
+				if (type == 'L' || type == 'K' || type == 'x') {
+					final String value = new String(readData(in, size), StandardCharsets.UTF_8);
+					if (type == 'L') {
+						longName = trimNul(value);
+					} else if (type == 'K') {
+						longLink = trimNul(value);
+					} else {
+						longName = paxValue(value, "path", longName);
+						longLink = paxValue(value, "linkpath", longLink);
+					}
+					continue;
+				}
+				longName = null;
+				longLink = null;
+
+				final Path path = resolve(root, name);
+				if (type == '5') {
+					Files.createDirectories(path);
+				} else if (type == '2') {
+					Files.createDirectories(path.getParent());
+					final Path target = Paths.get(linkName);
+					if (target.isAbsolute() || !path.getParent().resolve(target).normalize().startsWith(root)) {
+						throw new IOException("Archive link outside of target directory: " + name + " -> "
+								+ linkName);
+					}
+					Files.createSymbolicLink(path, target);
+				} else if (type == '1') {
+					Files.createDirectories(path.getParent());
+					Files.copy(resolve(root, linkName), path);
+				} else if (type == '0' || type == '7' || type == 0) {
+					Files.createDirectories(path.getParent());
+					Files.copy(ByteStreams.limit(in, size), path);
+					if ((mode & 0111) != 0) {
+						path.toFile().setExecutable(true, (mode & 011) == 0);
+					}
+				} else {
+					// devices, fifos and other entries are skipped
+					ByteStreams.skipFully(in, size);
+				}
+				if (type != '5' && type != '2' && type != '1') {
+					ByteStreams.skipFully(in, padding(size));
+				}
+			}
+		}
+	}
+
+	private static Path resolve(final Path root, final String name) throws IOException {
+		final Path path = root.resolve(name).normalize();
+		if (!path.startsWith(root)) {
+			throw new IOException("Archive entry outside of target directory: " + name);
+		}
+		return path;
+	}
+
+	/**
+	 * @return false at the end of the archive
+	 */
+	private static boolean readBlock(final InputStream in, final byte[] block) throws IOException {
+		try {
+			ByteStreams.readFully(in, block);
+			return true;
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	private static byte[] readData(final InputStream in, final long size) throws IOException {
+		final byte[] data = new byte[(int) size];
+		ByteStreams.readFully(in, data);
+		ByteStreams.skipFully(in, padding(size));
+		return data;
+	}
+
+	private static long padding(final long size) {
+		return (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+	}
+
+	private static boolean isZero(final byte[] block) {
+		for (final byte b : block) {
+			if (b != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String tarString(final byte[] header, final int offset, final int length) {
+		int end = offset;
+		while (end < offset + length && header[end] != 0) {
+			end++;
+		}
+		return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return an octal number or, for large values, a base-256 number as written by GNU tar
+	 */
+	private static long tarNumber(final byte[] header, final int offset, final int length) throws IOException {
+		if ((header[offset] & 0x80) != 0) {
+			long value = header[offset] & 0x7f;
+			for (int i = offset + 1; i < offset + length; i++) {
+				value = (value << 8) | (header[i] & 0xff);
+			}
+			return value;
+		}
+		final String octal = tarString(header, offset, length).trim();
+		try {
+			return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+		} catch (NumberFormatException e) {
+			throw new IOException("Corrupt tar header: " + octal, e);
+		}
+	}
+
+	/**
+	 * @return the value of a key of pax extended header records, <code>length key=value\n</code>, or the
+	 *         default
+	 */
+	private static String paxValue(final String records, final String key, final String defaultValue) {
+		for (final String record : records.split("\n")) {
+			final int space = record.indexOf(' ');
+			if (space > 0 && record.startsWith(key + "=", space + 1)) {
+				return record.substring(space + key.length() + 2);
+			}
+		}
+		return defaultValue;
+	}
+
+	private static String trimNul(final String value) {
+		final int nul = value.indexOf(0);
+		return nul < 0 ? value : value.substring(0, nul);
+	}
+}
@@ -0,0 +1,358 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.yaml.snakeyaml.Yaml;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Captures the CPU profile and the timeline of a dart VM started with <code>--observe</code> and
+ * <code>--pause-isolates-on-exit</code> through the HTTP interface of its VM service.
+ * <p/>
+ * {@link #capture()} polls the VM until the process ends. Every isolate paused at its exit is profiled and
+ * resumed, the timeline is fetched each time, so the last one covers the whole run. The responses are saved as
+ * they are, JSON as used by the observatory and chrome://tracing, and parsed (JSON being YAML) for a summary of
+ * the functions with the most samples.
+ */
+public class DartProfiler {
+
+	private static final Pattern SERVICE_URL = Pattern.compile(
+			"(?:Observatory|Dart VM service) (?:is )?listening on (http://\\S+)");
+
+	private static final String PAUSE_EXIT = "PauseExit";
+
+	private static final long POLL_MILLIS = 100;
+
+	/**
+	 * Time after which an unreachable VM service is given up. The VM never exits then, as nobody resumes its
+	 * isolates.
+	 */
+	private static final long SERVICE_TIMEOUT_MILLIS = 30000;
+
+	/**
+	 * Time to wait for the response of a single request, e.g. of a VM that hangs.
+	 */
+	private static final int READ_TIMEOUT_MILLIS = 60000;
+
+	/**
+	 * Number of samples of a function.
+	 */
+	public static class HotFunction {
+
+		private final String name;
+
+		private final String url;
+
+		private final long exclusiveTicks;
+
+		private final long inclusiveTicks;
+
+		HotFunction(final String name, final String url, final long exclusiveTicks, final long inclusiveTicks) {
+			this.name = name;
+			this.url = url;
+			this.exclusiveTicks = exclusiveTicks;
+			this.inclusiveTicks = inclusiveTicks;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public long getExclusiveTicks() {
+			return exclusiveTicks;
+		}
+
+		public long getInclusiveTicks() {
+			return inclusiveTicks;
+		}
+	}
+
+	private final File outputDirectory;
+
+	private volatile String serviceUrl;
+
+	private volatile boolean finished;
+
+	private final Set<String> captured = new HashSet<>();
+
+	private final List<HotFunction> hotFunctions = new ArrayList<>();
+
+	private long sampleCount;
+
+	private int readTimeoutMillis = READ_TIMEOUT_MILLIS;
+
+	/**
+	 * @param port the port given to <code>--observe</code>, used if the VM does not print its service url
+	 * @param outputDirectory the directory to save the profiles in
+	 */
+	public DartProfiler(final int port, final File outputDirectory) {
+		this.serviceUrl = "http://127.0.0.1:" + port + "/";
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * @param readTimeoutMillis time to wait for the response of a single request to the VM service
+	 */
+	public DartProfiler setReadTimeout(final int readTimeoutMillis) {
+		this.readTimeoutMillis = readTimeoutMillis;
+		return this;
+	}
+
+	/**
+	 * @return a consumer picking up the service url, including its authentication code, from the output of the VM
+	 */
+	public StreamConsumer watch(final StreamConsumer delegate) {
+		return new StreamConsumer() {
+			@Override
+			public void consumeLine(final String line) {
+				final Matcher matcher = SERVICE_URL.matcher(line);
+				if (matcher.find()) {
+					final String url = matcher.group(1);
+					serviceUrl = url.endsWith("/") ? url : url + "/";
+				}
+				delegate.consumeLine(line);
+			}
+		};
+	}
+
+	/**
+	 * Tells {@link #capture()} that the process has ended.
+	 */
+	public void finished() {
+		finished = true;
+	}
+
+	/**
+	 * Captures the profiles of all isolates exiting until {@link #finished()} is called.
+	 *
+	 * @return the number of isolates profiled
+	 * @throws IOException if the VM service was not reachable for a while, the process has to be killed then
+	 */
+	public int capture() throws IOException, InterruptedException {
+		long lastContact = System.currentTimeMillis();
+		while (!finished) {
+			try {
+				for (final Object isolate : list(call("getVM", null).get("isolates"))) {
+					final String id = string(isolate, "id");
+					if (id != null && !captured.contains(id) && isPausedAtExit(id)) {
+						captured.add(id);
+						try {
+							captureIsolate(id, string(isolate, "name"));
+						} finally {
+							call("resume", Collections.singletonMap("isolateId", id));
+						}
+					}
+				}
+				lastContact = System.currentTimeMillis();
+			} catch (IOException e) {
+				// the service is not up yet or already gone
+				if (System.currentTimeMillis() - lastContact > SERVICE_TIMEOUT_MILLIS) {
+					throw new IOException("VM service at " + serviceUrl + " not reachable", e);
+				}
+			}
+			Thread.sleep(POLL_MILLIS);
+		}
+		return captured.size();
+	}
+
+	private boolean isPausedAtExit(final String isolateId) throws IOException {
+		final Object pauseEvent = call("getIsolate", Collections.singletonMap("isolateId", isolateId))
+				.get("pauseEvent");
+		return PAUSE_EXIT.equals(string(pauseEvent, "kind"));
+	}
+
+	private void captureIsolate(final String isolateId, final String isolateName) throws IOException {
+		final String name = (isolateName != null ? isolateName : isolateId).replaceAll("[^\\w.-]+", "_");
+		final Map<String, String> params = new LinkedHashMap<>();
+		params.put("isolateId", isolateId);
+
+		Response profile;
+		try {
+			params.put("timeOriginMicros", "0");
+			params.put("timeExtentMicros", String.valueOf(Long.MAX_VALUE / 2));
+			profile = get("getCpuSamples", params);
+		} catch (IOException e) {
+			// VMs before service protocol 3.0 only have the private profile
+			params.clear();
+			params.put("isolateId", isolateId);
+			params.put("tags", "None");
+			profile = get("_getCpuProfile", params);
+		}
+		save("cpu-" + name + ".json", profile.body);
+		summarize(profile.result);
+
+		try {
+			save("timeline.json", get("getVMTimeline", null).body);
+		} catch (IOException e) {
+			try {
+				save("timeline.json", get("_getVMTimeline", null).body);
+			} catch (IOException timelineUnsupported) {
+				// no timeline in this VM
+			}
+		}
+	}
+
+	private synchronized void summarize(final Map<?, ?> profile) {
+		final Object samples = profile.get("sampleCount");
+		if (samples instanceof Number) {
+			sampleCount += ((Number) samples).longValue();
+		}
+		hotFunctions.addAll(parseFunctions(profile));
+	}
+
+	/**
+	 * @return the functions of a profile response with their ticks
+	 */
+	static List<HotFunction> parseFunctions(final Map<?, ?> profile) {
+		final List<HotFunction> functions = new ArrayList<>();
+		for (final Object entry : list(profile.get("functions"))) {
+			if (!(entry instanceof Map)) {
+				continue;
+			}
+			final Object function = ((Map<?, ?>) entry).get("function");
+			String name = string(function, "name");
+			final Object owner = function instanceof Map ? ((Map<?, ?>) function).get("owner") : null;
+			final String ownerName = string(owner, "name");
+			if (name != null && ownerName != null && "@Class".equals(string(owner, "type"))) {
+				name = ownerName + "." + name;
+			}
+			functions.add(new HotFunction(name != null ? name : "<unknown>",
+					string(entry, "resolvedUrl"),
+					number(entry, "exclusiveTicks"),
+					number(entry, "inclusiveTicks")));
+		}
+		return functions;
+	}
+
+	/**
+	 * @return the functions of all captured profiles with the most exclusive ticks first
+	 */
+	public synchronized List<HotFunction> getHotFunctions(final int limit) {
+		final List<HotFunction> sorted = new ArrayList<>(hotFunctions);
+		Collections.sort(sorted, new Comparator<HotFunction>() {
+			@Override
+			public int compare(final HotFunction a, final HotFunction b) {
+				return Long.compare(b.exclusiveTicks, a.exclusiveTicks);
+			}
+		});
+		return sorted.subList(0, Math.min(limit, sorted.size()));
+	}
+
+	public synchronized long getSampleCount() {
+		return sampleCount;
+	}
+
+	private static class Response {
+
+		final String body;
+
+		final Map<?, ?> result;
+
+		Response(final String body, final Map<?, ?> result) {
+			this.body = body;
+			this.result = result;
+		}
+	}
+
+	private Map<?, ?> call(final String method, final Map<String, String> params) throws IOException {
+		return get(method, params).result;
+	}
+
+	/**
+	 * @throws IOException if the VM is not reachable or answers with an error, e.g. for an unknown method
+	 */
+	private Response get(final String method, final Map<String, String> params) throws IOException {
+		final StringBuilder url = new StringBuilder(serviceUrl).append(method);
+		if (params != null) {
+			char separator = '?';
+			for (final Map.Entry<String, String> param : params.entrySet()) {
+				url.append(separator).append(param.getKey()).append('=')
+						.append(URLEncoder.encode(param.getValue(), "UTF-8"));
+				separator = '&';
+			}
+		}
+		final HttpURLConnection connection = (HttpURLConnection) new URL(url.toString()).openConnection();
+		connection.setConnectTimeout(1000);
+		connection.setReadTimeout(readTimeoutMillis);
+		try (InputStream in = connection.getInputStream()) {
+			final String body = IOUtil.toString(in, "UTF-8");
+			final Map<?, ?> result = unwrap(parse(body));
+			if (result == null) {
+				throw new IOException(method + " failed: " + body);
+			}
+			return new Response(body, result);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static Object parse(final String json) throws IOException {
+		try {
+			return new Yaml().load(json);
+		} catch (RuntimeException e) {
+			throw new IOException("Unexpected response of the VM service", e);
+		}
+	}
+
+	/**
+	 * @return the result of a JSON-RPC response, the response itself for VMs answering plain JSON or
+	 *         <code>null</code> for an error
+	 */
+	static Map<?, ?> unwrap(final Object response) {
+		if (!(response instanceof Map)) {
+			return null;
+		}
+		final Map<?, ?> map = (Map<?, ?>) response;
+		if (map.containsKey("error") || "Error".equals(map.get("type"))) {
+			return null;
+		}
+		final Object result = map.get("result");
+		return result instanceof Map ? (Map<?, ?>) result : map;
+	}
+
+	private void save(final String name, final String content) throws IOException {
+		final File file = new File(outputDirectory, name);
+		Files.createParentDirs(file);
+		Files.write(content, file, Charsets.UTF_8);
+	}
+
+	private static List<?> list(final Object value) {
+		return value instanceof List ? (List<?>) value : Collections.emptyList();
+	}
+
+	private static String string(final Object map, final String key) {
+		if (!(map instanceof Map)) {
+			return null;
+		}
+		final Object value = ((Map<?, ?>) map).get(key);
+		return value != null ? value.toString() : null;
+	}
+
+	private static long number(final Object map, final String key) {
+		final Object value = map instanceof Map ? ((Map<?, ?>) map).get(key) : null;
+		return value instanceof Number ? ((Number) value).longValue() : 0;
+	}
+}
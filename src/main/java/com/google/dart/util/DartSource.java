@@ -0,0 +1,155 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * The directives of a dart source file, found by a cheap textual scan instead of parsing the file.
+ */
+public class DartSource {
+
+	private static final String DART_SCHEME = "dart:";
+
+	private static final String PACKAGE_SCHEME = "package:";
+
+	/**
+	 * The packages of the unittest and test frameworks.
+	 */
+	private static final String[] TEST_PACKAGES = {PACKAGE_SCHEME + "unittest/", PACKAGE_SCHEME + "test/"};
+
+	private static final Pattern COMMENTS = Pattern.compile("/\\*.*?\\*/|//[^\\n]*", Pattern.DOTALL);
+
+	private static final Pattern URI_DIRECTIVE = Pattern.compile(
+			"^\\s*(?:import|export|part)\\s+(?:r?'([^']*)'|r?\"([^\"]*)\")", Pattern.MULTILINE);
+
+	private static final Pattern PART_OF = Pattern.compile("^\\s*part\\s+of\\b", Pattern.MULTILINE);
+
+	/**
+	 * A main function at the start of a line, i.e. assuming top level declarations are not indented, with an
+	 * optional return type.
+	 */
+	private static final Pattern MAIN = Pattern.compile("^(?:[\\w<>]+\\s+)?main\\s*\\(", Pattern.MULTILINE);
+
+	private final File file;
+
+	private final List<String> uris;
+
+	private final boolean part;
+
+	private final boolean main;
+
+	DartSource(final File file, final String content) {
+		this.file = file;
+		final String code = COMMENTS.matcher(content).replaceAll("");
+		final List<String> uris = new ArrayList<>();
+		final Matcher matcher = URI_DIRECTIVE.matcher(code);
+		while (matcher.find()) {
+			uris.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+		}
+		this.uris = Collections.unmodifiableList(uris);
+		this.part = PART_OF.matcher(code).find();
+		this.main = MAIN.matcher(code).find();
+	}
+
+	public static DartSource parse(final File file) throws IOException {
+		return new DartSource(file, Files.toString(file, Charsets.UTF_8));
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the uris of all import, export and part directives
+	 */
+	public List<String> getUris() {
+		return uris;
+	}
+
+	/**
+	 * @return true if the file is a part of another library, i.e. has a <code>part of</code> directive
+	 */
+	public boolean isPart() {
+		return part;
+	}
+
+	/**
+	 * @return true if the file declares a top level <code>main</code> function
+	 */
+	public boolean hasMain() {
+		return main;
+	}
+
+	/**
+	 * @return true if the file is a program, i.e. a library with a main function
+	 */
+	public boolean isEntrypoint() {
+		return main && !part;
+	}
+
+	/**
+	 * @return true if the file imports the unittest or test package
+	 */
+	public boolean importsTestFramework() {
+		for (final String uri : uris) {
+			for (final String testPackage : TEST_PACKAGES) {
+				if (uri.startsWith(testPackage)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Resolves a uri of a directive in the given file.
+	 *
+	 * @return the referenced file or <code>null</code> for dart: libraries and other unsupported schemes
+	 */
+	public static File resolve(final File from, final String uri, final File packagesDirectory) {
+		if (uri.startsWith(DART_SCHEME)) {
+			return null;
+		}
+		if (uri.startsWith(PACKAGE_SCHEME)) {
+			return new File(packagesDirectory, uri.substring(PACKAGE_SCHEME.length()));
+		}
+		if (uri.contains(":")) {
+			return null;
+		}
+		return new File(from.getParentFile(), uri);
+	}
+
+	/**
+	 * @return the given files and all existing files they reference directly or indirectly
+	 */
+	public static Set<File> closure(final Collection<File> roots, final File packagesDirectory) throws IOException {
+		final Set<File> closure = new LinkedHashSet<>();
+		final Deque<File> todo = new ArrayDeque<>(roots);
+		while (!todo.isEmpty()) {
+			final File file = todo.pop().toPath().toAbsolutePath().normalize().toFile();
+			if (!closure.add(file) || !file.isFile()) {
+				continue;
+			}
+			for (final String uri : parse(file).getUris()) {
+				final File referenced = resolve(file, uri, packagesDirectory);
+				if (referenced != null && referenced.isFile()) {
+					todo.push(referenced);
+				}
+			}
+		}
+		return closure;
+	}
+}
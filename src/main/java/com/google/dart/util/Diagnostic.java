@@ -0,0 +1,319 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * A diagnostic message of a dart tool, e.g. a dart2js warning.
+ */
+public class Diagnostic {
+
+	public enum Severity {
+		ERROR, WARNING, HINT, INFO;
+
+		/**
+		 * @return the severity with the given name, ignoring case, or <code>null</code> if unknown
+		 */
+		public static Severity forName(final String name) {
+			for (final Severity severity : values()) {
+				if (severity.name().equalsIgnoreCase(name)) {
+					return severity;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static final Pattern LOCATION = Pattern.compile("^(.+?\\.dart):(\\d+):(\\d+):\\s*(.*)$");
+
+	private static final Pattern MESSAGE = Pattern.compile("^(Error|Warning|Hint|Info|Internal Error):\\s*(.*)$",
+			Pattern.CASE_INSENSITIVE);
+
+	private final File file;
+
+	private final int line;
+
+	private final int column;
+
+	private final Severity severity;
+
+	private final String message;
+
+	public Diagnostic(final File file, final int line, final int column, final Severity severity,
+			final String message) {
+		this.file = file;
+		this.line = line;
+		this.column = column;
+		this.severity = severity;
+		this.message = message;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getColumn() {
+		return column;
+	}
+
+	public Severity getSeverity() {
+		return severity;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof Diagnostic)) {
+			return false;
+		}
+		final Diagnostic other = (Diagnostic) o;
+		return line == other.line && column == other.column && severity == other.severity
+				&& file.equals(other.file) && message.equals(other.message);
+	}
+
+	@Override
+	public int hashCode() {
+		return ((file.hashCode() * 31 + line) * 31 + column) * 31 + message.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return file + ":" + line + ":" + column + ": " + severity.name().toLowerCase() + ": " + message;
+	}
+
+	/**
+	 * Parses a line of the machine readable dartanalyzer output,
+	 * <code>SEVERITY|TYPE|CODE|FILE|LINE|COLUMN|LENGTH|MESSAGE</code> with '|' and '\' escaped by a backslash.
+	 *
+	 * @return the diagnostic or <code>null</code> if the line is not in that format
+	 */
+	public static Diagnostic parseMachineFormat(final String line) {
+		final List<String> fields = new ArrayList<>();
+		final StringBuilder field = new StringBuilder();
+		for (int i = 0; i < line.length(); i++) {
+			final char c = line.charAt(i);
+			if (c == '\\' && i + 1 < line.length()) {
+				field.append(line.charAt(++i));
+			} else if (c == '|') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		if (fields.size() != 8) {
+			return null;
+		}
+		final Severity severity = Severity.forName(fields.get(0));
+		if (severity == null) {
+			return null;
+		}
+		try {
+			return new Diagnostic(toFile(fields.get(3)), Integer.parseInt(fields.get(4)),
+					Integer.parseInt(fields.get(5)), severity, fields.get(7));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return this diagnostic in the format read by {@link #parseMachineFormat(String)}
+	 */
+	public String toMachineFormat() {
+		return severity.name() + "|||" + escape(file.getPath()) + "|" + line + "|" + column + "|0|"
+				+ escape(message);
+	}
+
+	private static String escape(final String value) {
+		return value.replace("\\", "\\\\").replace("|", "\\|");
+	}
+
+	private static File toFile(final String location) {
+		if (location.startsWith("file:")) {
+			return new File(URI.create(location));
+		}
+		return new File(location);
+	}
+
+	/**
+	 * Collects the diagnostics of dartanalyzer run with <code>--machine</code> from the lines it consumes.
+	 * Other lines are passed on to a delegate.
+	 */
+	public static class AnalyzerCollector implements StreamConsumer {
+
+		private final StreamConsumer delegate;
+
+		private final List<Diagnostic> diagnostics = Collections.synchronizedList(new ArrayList<Diagnostic>());
+
+		public AnalyzerCollector(final StreamConsumer delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void consumeLine(final String line) {
+			final Diagnostic diagnostic = parseMachineFormat(line);
+			if (diagnostic != null) {
+				diagnostics.add(diagnostic);
+			} else if (delegate != null) {
+				delegate.consumeLine(line);
+			}
+		}
+
+		public List<Diagnostic> getDiagnostics() {
+			synchronized (diagnostics) {
+				return new ArrayList<>(diagnostics);
+			}
+		}
+	}
+
+	/**
+	 * Collects dart2js diagnostics from the lines it consumes and passes the other lines on to a delegate. Both
+	 * the single line form <code>file:line:column: Warning: message</code> and the form with the location and the
+	 * message on separate lines are recognized.
+	 * <p/>
+	 * Diagnostic lines, including the source excerpt dart2js prints below them, are only passed on if
+	 * passDiagnostics is set. Otherwise a line is held back until it is known not to be part of a diagnostic, so
+	 * {@link #flush()} has to be called at the end of the output.
+	 */
+	public static class Dart2JsCollector implements StreamConsumer {
+
+		private static final Pattern CARETS = Pattern.compile("^\\s*\\^+\\s*$");
+
+		private final StreamConsumer delegate;
+
+		private final File baseDirectory;
+
+		private final boolean passDiagnostics;
+
+		private final List<Diagnostic> diagnostics = Collections.synchronizedList(new ArrayList<Diagnostic>());
+
+		private Matcher pendingLocation;
+
+		private String pendingLine;
+
+		private List<String> excerpt;
+
+		/**
+		 * @param baseDirectory the directory relative file names are resolved against
+		 */
+		public Dart2JsCollector(final StreamConsumer delegate, final File baseDirectory) {
+			this(delegate, baseDirectory, true);
+		}
+
+		/**
+		 * @param baseDirectory the directory relative file names are resolved against
+		 * @param passDiagnostics whether to pass the lines of diagnostics on to the delegate as well
+		 */
+		public Dart2JsCollector(final StreamConsumer delegate, final File baseDirectory,
+				final boolean passDiagnostics) {
+			this.delegate = delegate;
+			this.baseDirectory = baseDirectory;
+			this.passDiagnostics = passDiagnostics;
+		}
+
+		@Override
+		public synchronized void consumeLine(final String line) {
+			if (passDiagnostics && delegate != null) {
+				delegate.consumeLine(line);
+			}
+			if (excerpt != null) {
+				excerpt.add(line);
+				if (CARETS.matcher(line).matches()) {
+					excerpt = null;
+				} else if (excerpt.size() == 2) {
+					// no source excerpt after all
+					final List<String> lines = excerpt;
+					excerpt = null;
+					pass(lines.get(0));
+					consumeLine(lines.get(1));
+				}
+				return;
+			}
+			if (pendingLocation != null) {
+				final Matcher location = pendingLocation;
+				pendingLocation = null;
+				final Matcher message = MESSAGE.matcher(line.trim());
+				if (message.matches()) {
+					add(location, message);
+				} else {
+					pass(pendingLine);
+					pass(line);
+				}
+				return;
+			}
+			final Matcher location = LOCATION.matcher(line.trim());
+			if (!location.matches()) {
+				pass(line);
+				return;
+			}
+			final Matcher message = MESSAGE.matcher(location.group(4));
+			if (message.matches()) {
+				add(location, message);
+			} else if (location.group(4).isEmpty()) {
+				pendingLocation = location;
+				pendingLine = line;
+			} else {
+				pass(line);
+			}
+		}
+
+		/**
+		 * Passes lines held back on to the delegate.
+		 */
+		public synchronized void flush() {
+			if (pendingLocation != null) {
+				pendingLocation = null;
+				pass(pendingLine);
+			}
+			if (excerpt != null) {
+				for (final String line : excerpt) {
+					pass(line);
+				}
+				excerpt = null;
+			}
+		}
+
+		private void pass(final String line) {
+			if (!passDiagnostics && delegate != null) {
+				delegate.consumeLine(line);
+			}
+		}
+
+		private void add(final Matcher location, final Matcher message) {
+			File file = toFile(location.group(1));
+			if (!file.isAbsolute()) {
+				file = new File(baseDirectory, file.getPath());
+			}
+			Severity severity = Severity.forName(message.group(1));
+			if (severity == null) {
+				severity = Severity.ERROR;
+			}
+			diagnostics.add(new Diagnostic(file, Integer.parseInt(location.group(2)),
+					Integer.parseInt(location.group(3)), severity, message.group(2)));
+			if (!passDiagnostics) {
+				excerpt = new ArrayList<>();
+			}
+		}
+
+		public List<Diagnostic> getDiagnostics() {
+			synchronized (diagnostics) {
+				return new ArrayList<>(diagnostics);
+			}
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The diagnostics of several compilations, each diagnostic once with the entrypoints whose compilation reported
+ * it. A warning in a library shared by many entrypoints is reported by every compilation otherwise.
+ */
+public class DiagnosticReport {
+
+	private static final Comparator<Diagnostic> ORDER = new Comparator<Diagnostic>() {
+		@Override
+		public int compare(final Diagnostic a, final Diagnostic b) {
+			int result = a.getSeverity().compareTo(b.getSeverity());
+			if (result == 0) {
+				result = a.getFile().compareTo(b.getFile());
+			}
+			if (result == 0) {
+				result = Integer.compare(a.getLine(), b.getLine());
+			}
+			if (result == 0) {
+				result = Integer.compare(a.getColumn(), b.getColumn());
+			}
+			return result != 0 ? result : a.getMessage().compareTo(b.getMessage());
+		}
+	};
+
+	private final Map<Diagnostic, Set<String>> entrypoints = new HashMap<>();
+
+	/**
+	 * Adds the diagnostics of the compilation of an entrypoint.
+	 */
+	public synchronized void add(final String entrypoint, final Collection<Diagnostic> diagnostics) {
+		for (final Diagnostic diagnostic : diagnostics) {
+			Set<String> reportedBy = entrypoints.get(diagnostic);
+			if (reportedBy == null) {
+				reportedBy = new TreeSet<>();
+				entrypoints.put(diagnostic, reportedBy);
+			}
+			reportedBy.add(entrypoint);
+		}
+	}
+
+	/**
+	 * @return the distinct diagnostics, errors first, each with the entrypoints reporting it
+	 */
+	public synchronized Map<Diagnostic, Set<String>> getEntries() {
+		final Map<Diagnostic, Set<String>> entries = new TreeMap<>(ORDER);
+		for (final Map.Entry<Diagnostic, Set<String>> entry : entrypoints.entrySet()) {
+			entries.put(entry.getKey(), new TreeSet<>(entry.getValue()));
+		}
+		return entries;
+	}
+
+	public synchronized boolean isEmpty() {
+		return entrypoints.isEmpty();
+	}
+
+	/**
+	 * @return the report as a JSON array of objects with file, line, column, severity, message and entrypoints,
+	 *         file names relative to the base directory if below it
+	 */
+	public String toJson(final File baseDirectory) {
+		final StringBuilder sb = new StringBuilder("[");
+		boolean first = true;
+		for (final Map.Entry<Diagnostic, Set<String>> entry : getEntries().entrySet()) {
+			final Diagnostic diagnostic = entry.getKey();
+			sb.append(first ? "\n" : ",\n").append("  {\"file\": ")
+					.append(jsonString(relativize(baseDirectory, diagnostic.getFile())))
+					.append(", \"line\": ").append(diagnostic.getLine())
+					.append(", \"column\": ").append(diagnostic.getColumn())
+					.append(", \"severity\": ").append(jsonString(diagnostic.getSeverity().name().toLowerCase()))
+					.append(", \"message\": ").append(jsonString(diagnostic.getMessage()))
+					.append(", \"entrypoints\": [");
+			boolean firstEntrypoint = true;
+			for (final String entrypoint : entry.getValue()) {
+				sb.append(firstEntrypoint ? "" : ", ").append(jsonString(entrypoint));
+				firstEntrypoint = false;
+			}
+			sb.append("]}");
+			first = false;
+		}
+		return sb.append(first ? "]\n" : "\n]\n").toString();
+	}
+
+	static String relativize(final File baseDirectory, final File file) {
+		final String base = baseDirectory.getAbsolutePath() + File.separator;
+		final String path = file.getAbsolutePath();
+		return (path.startsWith(base) ? path.substring(base.length()) : path).replace(File.separatorChar, '/');
+	}
+
+	private static String jsonString(final String value) {
+		final StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < ' ') {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,147 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * The state of the files and directories a goal read and wrote in its last successful execution, together with
+ * a key of its parameters and dart-sdk. If the snapshot still matches, the goal has nothing to do and can be
+ * skipped without scanning its sources.
+ * <p/>
+ * Checking a snapshot only compares the recorded timestamps and lengths with the file system. Directories are
+ * not listed, adding, removing or renaming an entry changes the timestamp of its directory. Files are recorded
+ * as well, because writing a file in place does not change the timestamp of its directory. Links are recorded
+ * with their target and not followed, so the packages of the pub cache are not checked file by file.
+ */
+public class ExecutionSnapshot {
+
+	private static final char DIRECTORY = 'd';
+
+	private static final char FILE = 'f';
+
+	private static final char LINK = 'l';
+
+	private static final char MISSING = '-';
+
+	private final String key;
+
+	/**
+	 * The entries by path, recording a path again replaces its earlier entry.
+	 */
+	private final Map<String, String> entries = new LinkedHashMap<>();
+
+	public ExecutionSnapshot(final String key) {
+		this.key = key;
+	}
+
+	/**
+	 * Records the current state of the file or directory, or that it does not exist.
+	 */
+	public ExecutionSnapshot addFile(final File file) {
+		final File absolute = file.getAbsoluteFile();
+		entries.put(absolute.getPath(), describe(absolute));
+		return this;
+	}
+
+	/**
+	 * @return the type, timestamp and length of the file, or of a link the type and a fingerprint of its target
+	 */
+	private static String describe(final File file) {
+		if (java.nio.file.Files.isSymbolicLink(file.toPath())) {
+			return LINK + " " + new Fingerprint().add(canonicalPath(file)) + " 0";
+		}
+		final char type = file.isDirectory() ? DIRECTORY : file.isFile() ? FILE : MISSING;
+		return type + " " + (type == MISSING ? 0 : file.lastModified()) + " " + (type == FILE ? file.length() : 0);
+	}
+
+	/**
+	 * Records the directory with all directories and files below it. Links are recorded with their target but
+	 * not followed, e.g. into the packages of the pub cache, which do not change in place.
+	 */
+	public ExecutionSnapshot addTree(final File root) {
+		addTree(root.getAbsoluteFile(), true);
+		return this;
+	}
+
+	/**
+	 * Records the directory with all directories below it, but not the files and links.
+	 */
+	public ExecutionSnapshot addDirectories(final File root) {
+		addTree(root.getAbsoluteFile(), false);
+		return this;
+	}
+
+	private void addTree(final File directory, final boolean files) {
+		addFile(directory);
+		final File[] children = directory.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (final File child : children) {
+			if (java.nio.file.Files.isSymbolicLink(child.toPath())) {
+				if (files) {
+					addFile(child);
+				}
+			} else if (child.isDirectory()) {
+				addTree(child, files);
+			} else if (files) {
+				addFile(child);
+			}
+		}
+	}
+
+	private static String canonicalPath(final File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void write(final File file) throws IOException {
+		final StringBuilder sb = new StringBuilder(key).append('\n');
+		for (final Map.Entry<String, String> entry : entries.entrySet()) {
+			sb.append(entry.getValue()).append(' ').append(entry.getKey()).append('\n');
+		}
+		final File tmp = new File(file.getPath() + ".tmp");
+		Files.createParentDirs(tmp);
+		Files.write(sb, tmp, Charsets.UTF_8);
+		Files.move(tmp, file);
+	}
+
+	/**
+	 * @return true if the snapshot in the given file has the key and every file and directory recorded in it is
+	 *         unchanged
+	 */
+	public static boolean matches(final File file, final String key) {
+		if (!file.isFile()) {
+			return false;
+		}
+		final List<String> lines;
+		try {
+			lines = Files.readLines(file, Charsets.UTF_8);
+		} catch (IOException e) {
+			return false;
+		}
+		if (lines.isEmpty() || !lines.get(0).equals(key)) {
+			return false;
+		}
+		for (final String line : lines.subList(1, lines.size())) {
+			final String[] entry = line.split(" ", 4);
+			if (entry.length != 4 || !line.startsWith(describe(new File(entry[3])) + " ")) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,89 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Content fingerprint of a set of files and values, used to detect whether the inputs of a tool run changed
+ * since the last successful run.
+ */
+public class Fingerprint {
+
+	private static final String MISSING = "<missing>";
+
+	private final Hasher hasher = Hashing.sha1().newHasher();
+
+	private String value;
+
+	public Fingerprint add(final String value) {
+		hasher.putString(value == null ? MISSING : value, Charsets.UTF_8);
+		hasher.putByte((byte) 0);
+		return this;
+	}
+
+	/**
+	 * Adds the content of the given file, or a marker if it does not exist.
+	 */
+	public Fingerprint addFile(final File file) throws IOException {
+		add(file.getName());
+		if (file.isFile()) {
+			hasher.putLong(file.length());
+			Files.copy(file, Funnels.asOutputStream(hasher));
+		} else {
+			add(MISSING);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the name and the resolved target of every entry in the given directory, e.g. the symlinks in a
+	 * pub <code>packages</code> directory.
+	 */
+	public Fingerprint addLinkTargets(final File directory) throws IOException {
+		add(directory.getName());
+		final File[] entries = directory.listFiles();
+		if (entries == null) {
+			return add(MISSING);
+		}
+		Arrays.sort(entries);
+		for (final File entry : entries) {
+			add(entry.getName());
+			add(entry.exists() ? entry.getCanonicalPath() : MISSING);
+		}
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		if (value == null) {
+			value = hasher.hash().toString();
+		}
+		return value;
+	}
+
+	/**
+	 * @return the fingerprint stored in the given file or <code>null</code> if there is none.
+	 */
+	public static String read(final File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			return Files.toString(file, Charsets.UTF_8).trim();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	public static void write(final File file, final String fingerprint) throws IOException {
+		Files.createParentDirs(file);
+		Files.write(fingerprint, file, Charsets.UTF_8);
+	}
+}
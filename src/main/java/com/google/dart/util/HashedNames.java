@@ -0,0 +1,133 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Gives files names containing a hash of their content, e.g. <code>main.dart.js</code> becomes
+ * <code>main.1a2b3c4d5e.dart.js</code>, so that they can be cached by browsers forever.
+ */
+public class HashedNames {
+
+	private final static String DART_JS_SUFFIX = ".dart.js";
+
+	private final File directory;
+
+	private final int hashLength;
+
+	private final Pattern hashedNamePattern;
+
+	/**
+	 * @param directory the directory the logical names are relative to
+	 * @param hashLength number of hex digits of the content hash used in the names
+	 */
+	public HashedNames(final File directory, final int hashLength) {
+		this.directory = directory;
+		this.hashLength = hashLength;
+		this.hashedNamePattern = Pattern.compile("(.+)\\.[0-9a-f]{" + hashLength + "}(\\.dart\\.js|\\.[^.]+)?");
+	}
+
+	/**
+	 * Links the file to its hashed name and removes hashed files of earlier content.
+	 *
+	 * @return the hashed name relative to the directory
+	 */
+	public String link(final String logicalName) throws IOException {
+		final File file = new File(directory, logicalName);
+		final String hash = Files.hash(file, Hashing.sha1()).toString().substring(0, hashLength);
+		final String hashedName = hashedName(logicalName, hash);
+		final File hashed = new File(directory, hashedName);
+
+		if (!hashed.isFile()) {
+			LinkUtil.linkFile(hashed.toPath(), file.toPath());
+		}
+
+		final File[] siblings = file.getParentFile().listFiles();
+		if (siblings != null) {
+			for (final File sibling : siblings) {
+				if (!sibling.equals(hashed) && isHashedVariant(sibling.getName(), file.getName())) {
+					LinkUtil.delete(sibling.toPath());
+				}
+			}
+		}
+		return hashedName;
+	}
+
+	/**
+	 * @return true if the name, of a file in any directory, is a hashed name
+	 */
+	public boolean isHashedName(final String name) {
+		return hashedNamePattern.matcher(new File(name).getName()).matches();
+	}
+
+	/**
+	 * @return the name without the hash of its file name, or the name itself if it is not a hashed name
+	 */
+	public String logicalName(final String name) {
+		final int slash = name.lastIndexOf('/');
+		final Matcher matcher = hashedNamePattern.matcher(name.substring(slash + 1));
+		if (!matcher.matches()) {
+			return name;
+		}
+		return name.substring(0, slash + 1) + matcher.group(1) + Strings.nullToEmpty(matcher.group(2));
+	}
+
+	private String hashedName(final String logicalName, final String hash) {
+		final int suffix = logicalName.endsWith(DART_JS_SUFFIX) ? logicalName.length() - DART_JS_SUFFIX.length()
+				: logicalName.lastIndexOf('.');
+		if (suffix <= 0) {
+			return logicalName + "." + hash;
+		}
+		return logicalName.substring(0, suffix) + "." + hash + logicalName.substring(suffix);
+	}
+
+	private boolean isHashedVariant(final String candidate, final String logicalName) {
+		final Matcher matcher = hashedNamePattern.matcher(candidate);
+		return matcher.matches()
+				&& (matcher.group(1) + Strings.nullToEmpty(matcher.group(2))).equals(logicalName);
+	}
+
+	/**
+	 * Writes a JSON manifest mapping logical names to hashed names, unless the file has that content already.
+	 *
+	 * @return true if the file changed
+	 */
+	public static boolean writeManifest(final File file, final Map<String, String> manifest) throws IOException {
+		return writeIfChanged(file, toJson(manifest));
+	}
+
+	/**
+	 * @return true if the file changed
+	 */
+	public static boolean writeIfChanged(final File file, final String content) throws IOException {
+		if (file.isFile() && Files.toString(file, Charsets.UTF_8).equals(content)) {
+			return false;
+		}
+		Files.createParentDirs(file);
+		Files.write(content, file, Charsets.UTF_8);
+		return true;
+	}
+
+	private static String toJson(final Map<String, String> manifest) {
+		final StringBuilder sb = new StringBuilder("{\n");
+		boolean first = true;
+		for (final Map.Entry<String, String> entry : manifest.entrySet()) {
+			sb.append(first ? "" : ",\n").append("  ").append(jsonString(entry.getKey())).append(": ")
+					.append(jsonString(entry.getValue()));
+			first = false;
+		}
+		return sb.append("\n}\n").toString();
+	}
+
+	private static String jsonString(final String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+}
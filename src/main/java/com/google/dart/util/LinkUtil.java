@@ -0,0 +1,122 @@
+package com.google.dart.util;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Creates symbolic links or hard links where the platform allows it and falls back to copying otherwise.
+ */
+public class LinkUtil {
+
+	public enum Mode {
+		SYMLINK, HARDLINK, COPY
+	}
+
+	/**
+	 * Makes <code>link</code> point to the directory <code>target</code>, preferring a symbolic link, then a
+	 * tree of hard links and finally a copy.
+	 *
+	 * @return how the link was created
+	 */
+	public static Mode linkDirectory(final Path link, final Path target) throws IOException {
+		Files.createDirectories(link.getParent());
+		try {
+			Files.createSymbolicLink(link, target.toAbsolutePath());
+			return Mode.SYMLINK;
+		} catch (UnsupportedOperationException | IOException e) {
+			// e.g. windows without the required privilege
+		}
+		return linkTree(target, link);
+	}
+
+	/**
+	 * Mirrors the directory tree <code>source</code> into <code>destination</code>, hard linking every file if
+	 * possible and copying it otherwise.
+	 *
+	 * @return {@link Mode#HARDLINK} if all files could be hard linked, {@link Mode#COPY} otherwise
+	 */
+	public static Mode linkTree(final Path source, final Path destination) throws IOException {
+		final Mode[] mode = {Mode.HARDLINK};
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+					throws IOException {
+				Files.createDirectories(destination.resolve(source.relativize(dir).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+				if (linkFile(destination.resolve(source.relativize(file).toString()), file) == Mode.COPY) {
+					mode[0] = Mode.COPY;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return mode[0];
+	}
+
+	/**
+	 * Hard links <code>target</code> to <code>link</code>, replacing an existing file, or copies it if hard
+	 * links are not supported (e.g. across file systems).
+	 */
+	public static Mode linkFile(final Path link, final Path target) throws IOException {
+		Files.deleteIfExists(link);
+		try {
+			Files.createLink(link, target);
+			return Mode.HARDLINK;
+		} catch (UnsupportedOperationException | IOException e) {
+			Files.copy(target, link, StandardCopyOption.COPY_ATTRIBUTES);
+			return Mode.COPY;
+		}
+	}
+
+	/**
+	 * @return true if <code>link</code> is a symbolic link to <code>target</code>
+	 */
+	public static boolean isLinkTo(final Path link, final Path target) {
+		if (!Files.isSymbolicLink(link)) {
+			return false;
+		}
+		try {
+			return Files.readSymbolicLink(link).equals(target.toAbsolutePath());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Deletes a file, a symbolic link (without following it) or a directory tree.
+	 */
+	public static void delete(final Path path) throws IOException {
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			return;
+		}
+		if (Files.isSymbolicLink(path) || !Files.isDirectory(path)) {
+			Files.delete(path);
+			return;
+		}
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(final Path dir, final IOException e) throws IOException {
+				if (e != null) {
+					throw e;
+				}
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -0,0 +1,297 @@
+package com.google.dart.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Admits memory hungry processes only while the available memory covers their expected peak, so that as many
+ * run concurrently as the machine allows without swapping.
+ * <p/>
+ * The expected peak of a process is what the process with the same key needed last time, learned by sampling
+ * the resident memory of the process and its children from <code>/proc/&lt;pid&gt;/status</code> and kept in a
+ * properties file. A process is admitted if the available memory from <code>/proc/meminfo</code>, less the
+ * memory running processes are still expected to take and a reserve, covers its expected peak. One process is
+ * always admitted. Without <code>/proc</code> every process is admitted.
+ */
+public class MemoryScheduler {
+
+	private static final long SAMPLE_MILLIS = 200;
+
+	private static final File MEMINFO = new File("/proc/meminfo");
+
+	/**
+	 * Learned peaks are raised by this factor, as the memory of a process varies between runs.
+	 */
+	private static final double MARGIN = 1.1;
+
+	private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("dart-memory-sampler").setDaemon(true).build());
+
+	/**
+	 * The admission of a process. Registered as listener of its {@link ProcessRunner} to sample its memory.
+	 */
+	public class Ticket implements ProcessRunner.Listener {
+
+		private final String key;
+
+		private final long estimate;
+
+		private final long waitMillis;
+
+		private volatile Integer pid;
+
+		private volatile long current;
+
+		private volatile long peak;
+
+		Ticket(final String key, final long estimate, final long waitMillis) {
+			this.key = key;
+			this.estimate = estimate;
+			this.waitMillis = waitMillis;
+		}
+
+		@Override
+		public void started(final ProcessRunner runner, final Integer pid) {
+			this.pid = pid;
+		}
+
+		@Override
+		public void finished(final ProcessRunner runner, final int exitCode, final long durationMillis) {
+			sample();
+			pid = null;
+		}
+
+		void sample() {
+			final Integer running = pid;
+			if (running == null) {
+				return;
+			}
+			final long[] memory = readTreeMemory(running);
+			current = memory[0];
+			peak = Math.max(peak, Math.max(memory[0], memory[1]));
+		}
+
+		/**
+		 * @return the memory the process is still expected to take
+		 */
+		long getOutstanding() {
+			return Math.max(0, estimate - current);
+		}
+
+		/**
+		 * @return the expected peak memory in bytes
+		 */
+		public long getEstimate() {
+			return estimate;
+		}
+
+		/**
+		 * @return the highest memory use in bytes sampled so far
+		 */
+		public long getPeak() {
+			return peak;
+		}
+
+		/**
+		 * @return the time the process waited for memory
+		 */
+		public long getWaitMillis() {
+			return waitMillis;
+		}
+	}
+
+	private final File peaksFile;
+
+	private final long defaultEstimate;
+
+	private final long reserve;
+
+	private final Properties peaks = new Properties();
+
+	private final Set<Ticket> running = Collections.newSetFromMap(new ConcurrentHashMap<Ticket, Boolean>());
+
+	private final ScheduledFuture<?> sampling;
+
+	/**
+	 * @param peaksFile the file the peaks learned are kept in
+	 * @param defaultEstimate the expected peak in bytes of a process without a learned peak
+	 * @param reserve the memory in bytes to leave available
+	 */
+	public MemoryScheduler(final File peaksFile, final long defaultEstimate, final long reserve) {
+		this.peaksFile = peaksFile;
+		this.defaultEstimate = defaultEstimate;
+		this.reserve = reserve;
+		if (peaksFile.isFile()) {
+			try (InputStream in = new FileInputStream(peaksFile)) {
+				peaks.load(in);
+			} catch (IOException e) {
+				peaks.clear();
+			}
+		}
+		sampling = SAMPLER.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				for (final Ticket ticket : running) {
+					ticket.sample();
+				}
+			}
+		}, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Waits until the process with the given key can be started.
+	 */
+	public synchronized Ticket acquire(final String key) throws InterruptedException {
+		final long estimate = estimate(key);
+		final long start = System.currentTimeMillis();
+		while (!running.isEmpty()) {
+			final long available = readAvailableMemory();
+			if (available < 0) {
+				break;
+			}
+			long outstanding = 0;
+			for (final Ticket ticket : running) {
+				outstanding += ticket.getOutstanding();
+			}
+			if (available - outstanding - reserve >= estimate) {
+				break;
+			}
+			// memory is released by other programs too, so check again after a while
+			wait(SAMPLE_MILLIS);
+		}
+		final Ticket ticket = new Ticket(key, estimate, System.currentTimeMillis() - start);
+		running.add(ticket);
+		return ticket;
+	}
+
+	/**
+	 * Marks the process as done, learning its peak if it succeeded.
+	 */
+	public synchronized void release(final Ticket ticket, final boolean succeeded) {
+		running.remove(ticket);
+		if (succeeded && ticket.getPeak() > 0) {
+			peaks.setProperty(ticket.key, String.valueOf(ticket.getPeak()));
+		}
+		notifyAll();
+	}
+
+	/**
+	 * @return the expected peak memory in bytes of the process with the given key
+	 */
+	public synchronized long estimate(final String key) {
+		final String peak = peaks.getProperty(key);
+		if (peak != null) {
+			try {
+				return (long) (Long.parseLong(peak) * MARGIN);
+			} catch (NumberFormatException e) {
+				// unreadable entry, use the default
+			}
+		}
+		return defaultEstimate;
+	}
+
+	/**
+	 * Stops sampling and writes the learned peaks.
+	 */
+	public synchronized void close() throws IOException {
+		sampling.cancel(false);
+		com.google.common.io.Files.createParentDirs(peaksFile);
+		final File scratch = new File(peaksFile.getPath() + ".tmp-" + UUID.randomUUID());
+		try (OutputStream out = new FileOutputStream(scratch)) {
+			peaks.store(out, "learned peak memory in bytes");
+		}
+		Files.move(scratch.toPath(), peaksFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @return the memory available for new processes in bytes, or -1 if unknown
+	 */
+	protected long readAvailableMemory() {
+		if (!MEMINFO.isFile()) {
+			return -1;
+		}
+		return readKilobytes(MEMINFO, "MemAvailable:");
+	}
+
+	/**
+	 * @return the current and the peak resident memory in bytes of the process and all its children, zero if
+	 *         unknown
+	 */
+	static long[] readTreeMemory(final int pid) {
+		final long[] memory = new long[2];
+		final File status = new File("/proc/" + pid + "/status");
+		if (!status.isFile()) {
+			return memory;
+		}
+		memory[0] = Math.max(0, readKilobytes(status, "VmRSS:"));
+		memory[1] = Math.max(0, readKilobytes(status, "VmHWM:"));
+		for (final int child : readChildren(pid)) {
+			final long[] childMemory = readTreeMemory(child);
+			memory[0] += childMemory[0];
+			memory[1] += childMemory[1];
+		}
+		return memory;
+	}
+
+	private static int[] readChildren(final int pid) {
+		final File[] tasks = new File("/proc/" + pid + "/task").listFiles();
+		if (tasks == null) {
+			return new int[0];
+		}
+		final StringBuilder children = new StringBuilder();
+		for (final File task : tasks) {
+			try {
+				children.append(com.google.common.io.Files.toString(new File(task, "children"), Charsets.UTF_8))
+						.append(' ');
+			} catch (IOException e) {
+				// task ended or kernel without children files
+			}
+		}
+		final String list = children.toString().trim();
+		if (list.isEmpty()) {
+			return new int[0];
+		}
+		final String[] ids = list.split("\\s+");
+		final int[] pids = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			pids[i] = Integer.parseInt(ids[i]);
+		}
+		return pids;
+	}
+
+	/**
+	 * @return the value of a line like <code>MemAvailable:  1234 kB</code> in bytes, or -1 if missing
+	 */
+	private static long readKilobytes(final File file, final String prefix) {
+		try (BufferedReader reader = com.google.common.io.Files.newReader(file, Charsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(prefix)) {
+					return Long.parseLong(line.substring(prefix.length()).trim().split("\\s+")[0]) * 1024;
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			// process ended or unexpected format
+		}
+		return -1;
+	}
+}
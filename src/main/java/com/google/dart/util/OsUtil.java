@@ -48,4 +48,13 @@ public class OsUtil {
 	public static boolean isArch64() {
 		return OS_ARCH.contains("64");
 	}
+
+	/**
+	 * @return the platform as named by dart-sdk archives, e.g. <code>linux-x64</code> or
+	 *         <code>windows-ia32</code>
+	 */
+	public static String getPlatform() {
+		final String os = isWindows() ? "windows" : isMac() ? "macos" : "linux";
+		return os + (isArch64() ? "-x64" : "-ia32");
+	}
 }
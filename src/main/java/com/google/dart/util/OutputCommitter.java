@@ -0,0 +1,181 @@
+package com.google.dart.util;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Moves freshly generated output into place, touching only files whose content changed. Unchanged files keep
+ * their modification time, so tools further down the build see them as up to date.
+ */
+public class OutputCommitter {
+
+	/**
+	 * Number of files per outcome of a commit.
+	 */
+	public static class Result {
+
+		private int updated;
+
+		private int unchanged;
+
+		private int deleted;
+
+		public int getUpdated() {
+			return updated;
+		}
+
+		public int getUnchanged() {
+			return unchanged;
+		}
+
+		public int getDeleted() {
+			return deleted;
+		}
+
+		@Override
+		public String toString() {
+			return updated + " updated, " + unchanged + " unchanged, " + deleted + " deleted";
+		}
+	}
+
+	/**
+	 * Makes <code>target</code> a mirror of <code>staging</code>: changed and new files are moved, identical
+	 * files are left alone and files missing in staging are deleted. Symbolic links are compared by their
+	 * target, not followed. The staging directory is consumed.
+	 */
+	public static Result commitDirectory(final Path staging, final Path target) throws IOException {
+		final Result result = new Result();
+		final Set<Path> committed = commitFiles(staging, target, result);
+
+		final List<Path> obsolete = new ArrayList<>();
+		Files.walkFileTree(target, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+				if (!committed.contains(dir)) {
+					obsolete.add(dir);
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+				if (!committed.contains(file)) {
+					obsolete.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		for (final Path path : obsolete) {
+			LinkUtil.delete(path);
+			result.deleted++;
+		}
+
+		LinkUtil.delete(staging);
+		return result;
+	}
+
+	/**
+	 * Commits every file of <code>staging</code> into <code>target</code> like
+	 * {@link #commitDirectory(Path, Path)}, but keeps files of target that are not in staging, e.g. the outputs
+	 * of other compilations. The staging directory is consumed.
+	 */
+	public static Result mergeDirectory(final Path staging, final Path target) throws IOException {
+		final Result result = new Result();
+		commitFiles(staging, target, result);
+		LinkUtil.delete(staging);
+		return result;
+	}
+
+	/**
+	 * @return the target paths of all committed files and directories
+	 */
+	private static Set<Path> commitFiles(final Path staging, final Path target, final Result result)
+			throws IOException {
+		final Set<Path> committed = new HashSet<>();
+		Files.createDirectories(target);
+
+		Files.walkFileTree(staging, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+					throws IOException {
+				final Path targetDir = target.resolve(staging.relativize(dir).toString());
+				if (Files.exists(targetDir, LinkOption.NOFOLLOW_LINKS) && !Files.isDirectory(targetDir,
+						LinkOption.NOFOLLOW_LINKS)) {
+					LinkUtil.delete(targetDir);
+				}
+				Files.createDirectories(targetDir);
+				committed.add(targetDir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+				final Path targetFile = target.resolve(staging.relativize(file).toString());
+				committed.add(targetFile);
+				if (commitFile(file, targetFile)) {
+					result.updated++;
+				} else {
+					result.unchanged++;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return committed;
+	}
+
+	/**
+	 * Moves <code>staged</code> to <code>target</code> unless target already has the same content, in which
+	 * case staged is deleted and target keeps its modification time.
+	 *
+	 * @return true if target was created or changed
+	 */
+	public static boolean commitFile(final Path staged, final Path target) throws IOException {
+		if (isSame(staged, target)) {
+			Files.delete(staged);
+			return false;
+		}
+		LinkUtil.delete(target);
+		Files.createDirectories(target.getParent());
+		Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING);
+		return true;
+	}
+
+	private static boolean isSame(final Path staged, final Path target) throws IOException {
+		if (Files.isSymbolicLink(staged)) {
+			return Files.isSymbolicLink(target)
+					&& Files.readSymbolicLink(staged).equals(Files.readSymbolicLink(target));
+		}
+		if (Files.isSymbolicLink(target) || !Files.isRegularFile(target)) {
+			return false;
+		}
+		return sameContent(staged, target);
+	}
+
+	/**
+	 * Compares two regular files, by identity first, e.g. hard links to the same file, then by size and by a
+	 * streaming digest of their content only if the sizes match.
+	 */
+	public static boolean sameContent(final Path a, final Path b) throws IOException {
+		if (Files.isSameFile(a, b)) {
+			return true;
+		}
+		if (Files.size(a) != Files.size(b)) {
+			return false;
+		}
+		return com.google.common.io.Files.hash(a.toFile(), Hashing.sha1())
+				.equals(com.google.common.io.Files.hash(b.toFile(), Hashing.sha1()));
+	}
+}
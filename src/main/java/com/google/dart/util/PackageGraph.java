@@ -0,0 +1,195 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Dependency graph of pub packages built from their path dependencies.
+ * <p/>
+ * {@link #execute(Executor, Task)} runs a task for every package as soon as the tasks of all packages it
+ * depends on have finished, so independent packages are processed concurrently and the build time is bound by
+ * the longest chain of dependent packages.
+ */
+public class PackageGraph {
+
+	/**
+	 * Work to do for a single package.
+	 */
+	public interface Task {
+		void run(Pub pub) throws Exception;
+	}
+
+	private final Map<File, Pub> pubs = new LinkedHashMap<>();
+
+	private final Map<Pub, Set<Pub>> dependencies = new HashMap<>();
+
+	private final Map<Pub, Set<Pub>> dependents = new HashMap<>();
+
+	public PackageGraph(final Collection<Pub> pubs) {
+		for (final Pub pub : pubs) {
+			this.pubs.put(canonical(pub.getPath()), pub);
+			dependencies.put(pub, new LinkedHashSet<Pub>());
+			dependents.put(pub, new LinkedHashSet<Pub>());
+		}
+		for (final Pub pub : pubs) {
+			for (final PubDependency dependency : pub.getAllDependencies()) {
+				if (!dependency.isPath()) {
+					continue;
+				}
+				final Pub target = this.pubs.get(canonical(dependency.resolvePath(pub.getPath())));
+				if (target != null && target != pub) {
+					dependencies.get(pub).add(target);
+					dependents.get(target).add(pub);
+				}
+			}
+		}
+	}
+
+	private static File canonical(final File file) {
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			return file.getAbsoluteFile();
+		}
+	}
+
+	public Collection<Pub> getPackages() {
+		return Collections.unmodifiableCollection(pubs.values());
+	}
+
+	/**
+	 * @return the packages of this graph the given package depends on by path
+	 */
+	public Set<Pub> getDependencies(final Pub pub) {
+		return Collections.unmodifiableSet(dependencies.get(pub));
+	}
+
+	/**
+	 * @return all packages, every package after the packages it depends on
+	 * @throws IllegalStateException if the path dependencies are cyclic
+	 */
+	public List<Pub> getTopologicalOrder() {
+		final Map<Pub, Integer> pending = new HashMap<>();
+		final List<Pub> order = new ArrayList<>();
+		for (final Pub pub : pubs.values()) {
+			pending.put(pub, dependencies.get(pub).size());
+			if (dependencies.get(pub).isEmpty()) {
+				order.add(pub);
+			}
+		}
+		for (int i = 0; i < order.size(); i++) {
+			for (final Pub dependent : dependents.get(order.get(i))) {
+				final int remaining = pending.get(dependent) - 1;
+				pending.put(dependent, remaining);
+				if (remaining == 0) {
+					order.add(dependent);
+				}
+			}
+		}
+		if (order.size() != pubs.size()) {
+			final List<Pub> cyclic = new ArrayList<>(pubs.values());
+			cyclic.removeAll(order);
+			throw new IllegalStateException("Cyclic path dependencies between " + cyclic);
+		}
+		return order;
+	}
+
+	/**
+	 * Runs the task for all packages in dependency order, using the given executor for independent packages.
+	 * Packages depending on a failed package are not run and reported as failed, too.
+	 *
+	 * @return the failure per failed package, empty if all tasks succeeded
+	 */
+	public Map<Pub, Throwable> execute(final Executor executor, final Task task) throws InterruptedException {
+		// fail early on cycles
+		getTopologicalOrder();
+
+		final CompletionService<Pub> completion = new ExecutorCompletionService<>(executor);
+		final Map<Pub, Integer> pending = new HashMap<>();
+		final Map<Pub, Throwable> failures = new LinkedHashMap<>();
+		int running = 0;
+
+		for (final Pub pub : pubs.values()) {
+			pending.put(pub, dependencies.get(pub).size());
+			if (dependencies.get(pub).isEmpty()) {
+				submit(completion, task, pub);
+				running++;
+			}
+		}
+
+		while (running > 0) {
+			final Future<Pub> done = completion.take();
+			running--;
+			Pub finished;
+			try {
+				finished = done.get();
+			} catch (ExecutionException e) {
+				final PackageFailure failure = (PackageFailure) e.getCause();
+				finished = failure.pub;
+				failures.put(finished, failure.getCause());
+				skipDependents(finished, failures);
+				continue;
+			}
+			for (final Pub dependent : dependents.get(finished)) {
+				final int remaining = pending.get(dependent) - 1;
+				pending.put(dependent, remaining);
+				if (remaining == 0 && !failures.containsKey(dependent)) {
+					submit(completion, task, dependent);
+					running++;
+				}
+			}
+		}
+		return failures;
+	}
+
+	private void skipDependents(final Pub failed, final Map<Pub, Throwable> failures) {
+		for (final Pub dependent : dependents.get(failed)) {
+			if (!failures.containsKey(dependent)) {
+				failures.put(dependent, new IllegalStateException("Skipped, dependency " + failed.getName()
+						+ " failed"));
+				skipDependents(dependent, failures);
+			}
+		}
+	}
+
+	private static void submit(final CompletionService<Pub> completion, final Task task, final Pub pub) {
+		completion.submit(new Callable<Pub>() {
+			@Override
+			public Pub call() throws PackageFailure {
+				try {
+					task.run(pub);
+				} catch (Exception e) {
+					throw new PackageFailure(pub, e);
+				}
+				return pub;
+			}
+		});
+	}
+
+	private static class PackageFailure extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Pub pub;
+
+		PackageFailure(final Pub pub, final Exception cause) {
+			super(cause);
+			this.pub = pub;
+		}
+	}
+}
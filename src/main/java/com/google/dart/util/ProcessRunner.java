@@ -0,0 +1,348 @@
+package com.google.dart.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs an external process with its output pumped to {@link StreamConsumer}s on background threads.
+ * <p/>
+ * Supports an environment, a timeout and cancellation. A timed out or cancelled process is killed together with
+ * all its child processes, as are all running processes when the JVM shuts down, e.g. when the maven build is
+ * aborted. {@link Listener}s are notified when a process starts and finishes.
+ */
+public class ProcessRunner {
+
+	/**
+	 * Notified about the processes run.
+	 */
+	public interface Listener {
+
+		void started(ProcessRunner runner, Integer pid);
+
+		void finished(ProcessRunner runner, int exitCode, long durationMillis);
+	}
+
+	/**
+	 * Thrown if a process did not finish within its timeout.
+	 */
+	public static class TimeoutException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public TimeoutException(final String message) {
+			super(message);
+		}
+	}
+
+	private static final ExecutorService PUMPS = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setNameFormat("dart-process-pump-%d").setDaemon(true).build());
+
+	private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("dart-process-watchdog").setDaemon(true).build());
+
+	private static final Set<ProcessRunner> RUNNING = Collections.newSetFromMap(
+			new ConcurrentHashMap<ProcessRunner, Boolean>());
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("dart-process-reaper") {
+			@Override
+			public void run() {
+				for (final ProcessRunner runner : RUNNING) {
+					runner.cancel();
+				}
+			}
+		});
+	}
+
+	private final List<String> command;
+
+	private File workingDirectory;
+
+	private final Map<String, String> environment = new HashMap<>();
+
+	private long timeoutMillis;
+
+	private StreamConsumer output;
+
+	private StreamConsumer error;
+
+	private final List<Listener> listeners = new ArrayList<>();
+
+	private volatile Process process;
+
+	private volatile boolean cancelled;
+
+	public ProcessRunner(final List<String> command) {
+		this.command = new ArrayList<>(command);
+	}
+
+	/**
+	 * Creates a runner for the executable, arguments and working directory of a plexus commandline.
+	 */
+	public static ProcessRunner forCommandline(final Commandline cl) {
+		final List<String> command = new ArrayList<>();
+		command.add(cl.getExecutable());
+		command.addAll(Arrays.asList(cl.getArguments()));
+		final ProcessRunner runner = new ProcessRunner(command);
+		runner.setWorkingDirectory(cl.getWorkingDirectory());
+		return runner;
+	}
+
+	public ProcessRunner setWorkingDirectory(final File workingDirectory) {
+		this.workingDirectory = workingDirectory;
+		return this;
+	}
+
+	/**
+	 * Adds variables to the environment inherited from this process.
+	 */
+	public ProcessRunner setEnvironment(final Map<String, String> environment) {
+		this.environment.putAll(environment);
+		return this;
+	}
+
+	/**
+	 * @param timeoutMillis the time after which the process is killed, 0 for no timeout
+	 */
+	public ProcessRunner setTimeout(final long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+		return this;
+	}
+
+	public ProcessRunner setOutput(final StreamConsumer output) {
+		this.output = output;
+		return this;
+	}
+
+	public ProcessRunner setError(final StreamConsumer error) {
+		this.error = error;
+		return this;
+	}
+
+	public ProcessRunner addListener(final Listener listener) {
+		listeners.add(listener);
+		return this;
+	}
+
+	public List<String> getCommand() {
+		return Collections.unmodifiableList(command);
+	}
+
+	/**
+	 * @return the name of the executable without its directory
+	 */
+	public String getName() {
+		return new File(command.get(0)).getName();
+	}
+
+	/**
+	 * @return the process while it is running, <code>null</code> otherwise
+	 */
+	public Process getProcess() {
+		return process;
+	}
+
+	/**
+	 * Starts the process and waits for it to finish.
+	 *
+	 * @return the exit code, also if the process was killed by {@link #cancel()}
+	 * @throws TimeoutException if the process was killed because it exceeded its timeout
+	 * @throws InterruptedException if the calling thread was interrupted, the process is killed then
+	 */
+	public int run() throws IOException, InterruptedException {
+		final ProcessBuilder builder = new ProcessBuilder(command);
+		if (workingDirectory != null) {
+			builder.directory(workingDirectory);
+		}
+		builder.environment().putAll(environment);
+
+		final long start = System.nanoTime();
+		process = builder.start();
+		RUNNING.add(this);
+		ScheduledFuture<?> watchdog = null;
+		final AtomicBoolean finished = new AtomicBoolean();
+		try {
+			final Integer pid = pid(process);
+			for (final Listener listener : listeners) {
+				listener.started(this, pid);
+			}
+			process.getOutputStream().close();
+			final Future<?> outputPump = pump(process.getInputStream(), output);
+			final Future<?> errorPump = pump(process.getErrorStream(), error);
+			if (timeoutMillis > 0) {
+				watchdog = WATCHDOG.schedule(new Runnable() {
+					@Override
+					public void run() {
+						if (finished.compareAndSet(false, true)) {
+							cancel();
+						}
+					}
+				}, timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+
+			final int exitCode = process.waitFor();
+			// whoever gets here first decides, a watchdog firing after the process finished is no timeout
+			final boolean timedOut = !finished.compareAndSet(false, true);
+			if (watchdog != null) {
+				watchdog.cancel(false);
+			}
+			await(outputPump);
+			await(errorPump);
+
+			final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			for (final Listener listener : listeners) {
+				listener.finished(this, exitCode, durationMillis);
+			}
+			if (timedOut) {
+				throw new TimeoutException(getName() + " did not finish within " + timeoutMillis + " ms");
+			}
+			return exitCode;
+		} catch (InterruptedException e) {
+			cancel();
+			throw e;
+		} finally {
+			if (watchdog != null) {
+				watchdog.cancel(false);
+			}
+			RUNNING.remove(this);
+			process = null;
+		}
+	}
+
+	/**
+	 * @return true if the process was killed by {@link #cancel()} or its timeout
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Kills the running process and all its children.
+	 */
+	public void cancel() {
+		final Process running = process;
+		if (running == null) {
+			return;
+		}
+		cancelled = true;
+		final Integer pid = pid(running);
+		if (pid != null) {
+			killTree(pid);
+		}
+		running.destroy();
+	}
+
+	private static Future<?> pump(final InputStream in, final StreamConsumer consumer) {
+		return PUMPS.submit(new Runnable() {
+			@Override
+			public void run() {
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (consumer != null) {
+							consumer.consumeLine(line);
+						}
+					}
+				} catch (IOException e) {
+					// stream closed because the process was killed
+				}
+			}
+		});
+	}
+
+	private static void await(final Future<?> pump) throws InterruptedException {
+		try {
+			pump.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the operating system id of a process or <code>null</code> if it cannot be determined
+	 */
+	public static Integer pid(final Process process) {
+		try {
+			final Method method = Process.class.getMethod("pid");
+			return ((Long) method.invoke(process)).intValue();
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// before java 9
+		}
+		try {
+			final Field field = process.getClass().getDeclaredField("pid");
+			field.setAccessible(true);
+			return field.getInt(process);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static void killTree(final int pid) {
+		if (OsUtil.isWindows()) {
+			exec(Arrays.asList("taskkill", "/F", "/T", "/PID", String.valueOf(pid)));
+			return;
+		}
+		for (final String child : exec(Arrays.asList("pgrep", "-P", String.valueOf(pid)))) {
+			try {
+				killTree(Integer.parseInt(child.trim()));
+			} catch (NumberFormatException e) {
+				// ignore unexpected output
+			}
+		}
+		exec(Arrays.asList("kill", "-KILL", String.valueOf(pid)));
+	}
+
+	private static List<String> exec(final List<String> command) {
+		final List<String> lines = new ArrayList<>();
+		try {
+			final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					lines.add(line);
+				}
+			}
+			process.waitFor();
+		} catch (IOException e) {
+			// tool not available, the process itself is still destroyed
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return lines;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (final String part : command) {
+			sb.append(sb.length() == 0 ? "" : " ").append(part);
+		}
+		return sb.toString();
+	}
+}
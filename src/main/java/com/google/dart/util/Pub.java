@@ -3,25 +3,174 @@ package com.google.dart.util;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.yaml.snakeyaml.Yaml;
 
+import com.google.common.base.Charsets;
+
+/**
+ * Model of a pubspec.yaml.
+ * <p/>
+ * Use {@link #load(File)} to share parsed instances: they are cached per file as long as its size and
+ * modification time do not change.
+ */
 public class Pub {
 
-	protected final HashMap data;
+	public static final String PUBSPEC = "pubspec.yaml";
+
+	private static final String PACKAGES = "packages";
+
+	private static final ConcurrentMap<File, Pub> CACHE = new ConcurrentHashMap<>();
+
 	protected final File yamlFile;
 
+	private final long length;
+
+	private final long lastModified;
+
+	private final String name;
+
+	private final String version;
+
+	private final Map<String, PubDependency> dependencies;
+
+	private final Map<String, PubDependency> devDependencies;
+
 	public Pub(File file) throws FileNotFoundException {
 		this.yamlFile = file;
+		this.length = file.length();
+		this.lastModified = file.lastModified();
+
+		final Map<?, ?> data = load(file, Map.class);
+		this.name = data.get("name") == null ? null : data.get("name").toString();
+		this.version = data.get("version") == null ? null : data.get("version").toString();
+		this.dependencies = parseDependencies(data.get("dependencies"));
+		this.devDependencies = parseDependencies(data.get("dev_dependencies"));
+	}
+
+	/**
+	 * @return the cached model of the given pubspec.yaml, parsing it if it is not cached or has changed
+	 */
+	public static Pub load(final File file) throws FileNotFoundException {
+		final File key = file.getAbsoluteFile();
+		final Pub cached = CACHE.get(key);
+		if (cached != null && cached.isCurrent()) {
+			return cached;
+		}
+		final Pub pub = new Pub(key);
+		CACHE.put(key, pub);
+		return pub;
+	}
+
+	/**
+	 * Parses a YAML file into the given type. An empty file results in an empty map.
+	 */
+	static <T> T load(final File file, final Class<T> type) throws FileNotFoundException {
+		try (Reader reader = new InputStreamReader(new FileInputStream(file), Charsets.UTF_8)) {
+			final Object data = new Yaml().load(reader);
+			if (data == null && type == Map.class) {
+				return type.cast(Collections.emptyMap());
+			}
+			if (!type.isInstance(data)) {
+				throw new IllegalArgumentException("Unexpected content in " + file.getAbsolutePath());
+			}
+			return type.cast(data);
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read " + file.getAbsolutePath(), e);
+		}
+	}
+
+	private static Map<String, PubDependency> parseDependencies(final Object section) {
+		if (!(section instanceof Map)) {
+			return Collections.emptyMap();
+		}
+		final Map<String, PubDependency> dependencies = new LinkedHashMap<>();
+		for (final Map.Entry<?, ?> entry : ((Map<?, ?>) section).entrySet()) {
+			final String name = entry.getKey().toString();
+			dependencies.put(name, PubDependency.parse(name, entry.getValue()));
+		}
+		return Collections.unmodifiableMap(dependencies);
+	}
+
+	/**
+	 * Finds all pub packages, that is directories containing a pubspec.yaml, below the given root. Packages
+	 * directories and hidden directories are not searched.
+	 */
+	public static List<Pub> findAll(final File root) throws FileNotFoundException {
+		final List<Pub> pubs = new ArrayList<>();
+		findAll(root, pubs);
+		return pubs;
+	}
 
-		FileInputStream fileInputStream = new FileInputStream(file);
-		Yaml yaml = new Yaml();
-		this.data = (HashMap) yaml.load(fileInputStream);
+	private static void findAll(final File directory, final List<Pub> pubs) throws FileNotFoundException {
+		final File pubspec = new File(directory, PUBSPEC);
+		if (pubspec.isFile()) {
+			pubs.add(load(pubspec));
+		}
+		final File[] children = directory.listFiles();
+		if (children == null) {
+			return;
+		}
+		Arrays.sort(children);
+		for (final File child : children) {
+			if (child.isDirectory() && !PACKAGES.equals(child.getName()) && !child.getName().startsWith(".")) {
+				findAll(child, pubs);
+			}
+		}
+	}
+
+	boolean isCurrent() {
+		return yamlFile.length() == length && yamlFile.lastModified() == lastModified;
 	}
 
 	public String getName() {
-		return (String) data.get("name");
+		return name;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public Map<String, PubDependency> getDependencies() {
+		return dependencies;
+	}
+
+	public Map<String, PubDependency> getDevDependencies() {
+		return devDependencies;
+	}
+
+	/**
+	 * @return dependencies and dev_dependencies
+	 */
+	public List<PubDependency> getAllDependencies() {
+		final List<PubDependency> all = new ArrayList<>(dependencies.values());
+		all.addAll(devDependencies.values());
+		return all;
+	}
+
+	/**
+	 * @return the parsed pubspec.lock next to this pubspec or <code>null</code> if there is none
+	 */
+	public PubLock getLock() throws FileNotFoundException {
+		final File lockFile = new File(getPath(), PubLock.PUBSPEC_LOCK);
+		return lockFile.isFile() ? PubLock.load(lockFile) : null;
+	}
+
+	public File getFile() {
+		return yamlFile;
 	}
 
 	/**
@@ -30,4 +179,9 @@ public class Pub {
 	public File getPath() {
 		return yamlFile.getParentFile();
 	}
+
+	@Override
+	public String toString() {
+		return name + " (" + getPath() + ")";
+	}
 }
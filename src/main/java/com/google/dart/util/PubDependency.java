@@ -0,0 +1,132 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * A dependency declared in a pubspec.yaml.
+ */
+public class PubDependency {
+
+	public enum Source {
+		HOSTED, PATH, GIT, SDK;
+
+		/**
+		 * @return the source with the given name as used in pubspec.lock, or <code>null</code> if unknown
+		 */
+		public static Source forName(final String name) {
+			for (final Source source : values()) {
+				if (source.name().equalsIgnoreCase(name)) {
+					return source;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static final String ANY = "any";
+
+	private final String name;
+
+	private final Source source;
+
+	private final String version;
+
+	private final String location;
+
+	private final String ref;
+
+	PubDependency(final String name, final Source source, final String version, final String location,
+			final String ref) {
+		this.name = name;
+		this.source = source;
+		this.version = version;
+		this.location = location;
+		this.ref = ref;
+	}
+
+	/**
+	 * Creates a dependency from its pubspec.yaml description, which is either a version constraint or a map
+	 * describing the source.
+	 */
+	static PubDependency parse(final String name, final Object description) {
+		if (!(description instanceof Map)) {
+			return new PubDependency(name, Source.HOSTED, description == null ? ANY : description.toString(),
+					null, null);
+		}
+		final Map<?, ?> map = (Map<?, ?>) description;
+		final String version = map.containsKey("version") ? String.valueOf(map.get("version")) : ANY;
+		if (map.containsKey("path")) {
+			return new PubDependency(name, Source.PATH, version, String.valueOf(map.get("path")), null);
+		}
+		if (map.containsKey("git")) {
+			final Object git = map.get("git");
+			if (git instanceof Map) {
+				final Map<?, ?> gitMap = (Map<?, ?>) git;
+				return new PubDependency(name, Source.GIT, version, string(gitMap.get("url")),
+						string(gitMap.get("ref")));
+			}
+			return new PubDependency(name, Source.GIT, version, string(git), null);
+		}
+		if (map.containsKey("sdk")) {
+			return new PubDependency(name, Source.SDK, version, string(map.get("sdk")), null);
+		}
+		final Object hosted = map.get("hosted");
+		final String url = hosted instanceof Map ? string(((Map<?, ?>) hosted).get("url")) : null;
+		return new PubDependency(name, Source.HOSTED, version, url, null);
+	}
+
+	private static String string(final Object value) {
+		return value == null ? null : value.toString();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Source getSource() {
+		return source;
+	}
+
+	/**
+	 * The version constraint, "any" if none is given.
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * The path of a path dependency, the url of a git or custom hosted dependency or the name of the sdk.
+	 */
+	public String getLocation() {
+		return location;
+	}
+
+	/**
+	 * The git ref, if any.
+	 */
+	public String getRef() {
+		return ref;
+	}
+
+	public boolean isPath() {
+		return source == Source.PATH;
+	}
+
+	/**
+	 * @return the directory of a path dependency, resolved against the directory of the depending package
+	 */
+	public File resolvePath(final File packageDirectory) {
+		if (!isPath()) {
+			throw new IllegalStateException(name + " is not a path dependency");
+		}
+		final File path = new File(location);
+		return path.isAbsolute() ? path : new File(packageDirectory, location);
+	}
+
+	@Override
+	public String toString() {
+		return name + " " + version + " (" + source.name().toLowerCase() + (location != null ? " " + location : "")
+				+ ")";
+	}
+}
@@ -0,0 +1,139 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Model of a pubspec.lock, that is the resolved versions and sources of all packages.
+ * <p/>
+ * Like {@link Pub}, instances obtained by {@link #load(File)} are cached per file as long as its size and
+ * modification time do not change.
+ */
+public class PubLock {
+
+	public static final String PUBSPEC_LOCK = "pubspec.lock";
+
+	private static final ConcurrentMap<File, PubLock> CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * A package resolved in a pubspec.lock.
+	 */
+	public static class LockedPackage {
+
+		private final String name;
+
+		private final String version;
+
+		private final PubDependency.Source source;
+
+		private final Object description;
+
+		LockedPackage(final String name, final String version, final PubDependency.Source source,
+				final Object description) {
+			this.name = name;
+			this.version = version;
+			this.source = source;
+			this.description = description;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getVersion() {
+			return version;
+		}
+
+		/**
+		 * The source, <code>null</code> if it is not known to this plugin.
+		 */
+		public PubDependency.Source getSource() {
+			return source;
+		}
+
+		/**
+		 * The source specific description, e.g. the path of a path package or a map of url and ref for git.
+		 */
+		public Object getDescription() {
+			return description;
+		}
+
+		@Override
+		public String toString() {
+			return name + " " + version + " (" + source + ")";
+		}
+	}
+
+	private final File lockFile;
+
+	private final long length;
+
+	private final long lastModified;
+
+	private final Map<String, LockedPackage> packages;
+
+	public PubLock(final File file) throws FileNotFoundException {
+		this.lockFile = file;
+		this.length = file.length();
+		this.lastModified = file.lastModified();
+
+		final Map<?, ?> data = Pub.load(file, Map.class);
+		final Map<String, LockedPackage> packages = new LinkedHashMap<>();
+		if (data.get("packages") instanceof Map) {
+			for (final Map.Entry<?, ?> entry : ((Map<?, ?>) data.get("packages")).entrySet()) {
+				final String name = entry.getKey().toString();
+				final Map<?, ?> locked = entry.getValue() instanceof Map ? (Map<?, ?>) entry.getValue()
+						: Collections.emptyMap();
+				packages.put(name, new LockedPackage(name,
+						locked.get("version") == null ? null : locked.get("version").toString(),
+						locked.get("source") == null ? null : PubDependency.Source.forName(locked.get("source")
+								.toString()),
+						locked.get("description")));
+			}
+		}
+		this.packages = Collections.unmodifiableMap(packages);
+	}
+
+	/**
+	 * @return the cached model of the given pubspec.lock, parsing it if it is not cached or has changed
+	 */
+	public static PubLock load(final File file) throws FileNotFoundException {
+		final File key = file.getAbsoluteFile();
+		final PubLock cached = CACHE.get(key);
+		if (cached != null && cached.isCurrent()) {
+			return cached;
+		}
+		final PubLock lock = new PubLock(key);
+		CACHE.put(key, lock);
+		return lock;
+	}
+
+	boolean isCurrent() {
+		return lockFile.length() == length && lockFile.lastModified() == lastModified;
+	}
+
+	public Map<String, LockedPackage> getPackages() {
+		return packages;
+	}
+
+	/**
+	 * @return true if any package is resolved from a path, which makes the lock file specific to its location
+	 */
+	public boolean hasPathPackages() {
+		for (final LockedPackage locked : packages.values()) {
+			if (locked.getSource() == PubDependency.Source.PATH) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public File getFile() {
+		return lockFile;
+	}
+}
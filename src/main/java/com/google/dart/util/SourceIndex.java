@@ -0,0 +1,201 @@
+package com.google.dart.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Persistent cache of the classification of dart source files, so that finding the entrypoints of a large tree
+ * does not scan every file on every build. A file is looked up by path, size and modification time first and
+ * by a hash of its content second, so that touched or copied files are not scanned again either.
+ */
+public class SourceIndex {
+
+	private static final String HEADER = "# dart source index 2";
+
+	private static final char SEPARATOR = '\t';
+
+	/**
+	 * The facts about a source file the goals select files by.
+	 */
+	public static class Classification {
+
+		private final boolean main;
+
+		private final boolean part;
+
+		private final boolean test;
+
+		Classification(final boolean main, final boolean part, final boolean test) {
+			this.main = main;
+			this.part = part;
+			this.test = test;
+		}
+
+		static Classification of(final DartSource source) {
+			return new Classification(source.hasMain(), source.isPart(), source.importsTestFramework());
+		}
+
+		static Classification parse(final String flags) {
+			return new Classification(flags.indexOf('m') >= 0, flags.indexOf('p') >= 0, flags.indexOf('t') >= 0);
+		}
+
+		String toFlags() {
+			return (main ? "m" : "") + (part ? "p" : "") + (test ? "t" : "") + "-";
+		}
+
+		/**
+		 * @see DartSource#hasMain()
+		 */
+		public boolean hasMain() {
+			return main;
+		}
+
+		/**
+		 * @see DartSource#isPart()
+		 */
+		public boolean isPart() {
+			return part;
+		}
+
+		/**
+		 * @see DartSource#isEntrypoint()
+		 */
+		public boolean isEntrypoint() {
+			return main && !part;
+		}
+
+		/**
+		 * @see DartSource#importsTestFramework()
+		 */
+		public boolean importsTestFramework() {
+			return test;
+		}
+	}
+
+	private static class Entry {
+
+		final long length;
+
+		final long lastModified;
+
+		final String hash;
+
+		final Classification classification;
+
+		Entry(final long length, final long lastModified, final String hash, final Classification classification) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.hash = hash;
+			this.classification = classification;
+		}
+	}
+
+	private final File indexFile;
+
+	private final Map<String, Entry> entries = new TreeMap<>();
+
+	private final Map<String, Classification> byHash = new HashMap<>();
+
+	private int scanned;
+
+	private boolean dirty;
+
+	/**
+	 * Loads the index from the given file. A missing or unreadable file results in an empty index.
+	 */
+	public SourceIndex(final File indexFile) {
+		this.indexFile = indexFile;
+		if (!indexFile.isFile()) {
+			return;
+		}
+		try (BufferedReader reader = Files.newReader(indexFile, Charsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) {
+				return;
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] fields = line.split(String.valueOf(SEPARATOR));
+				if (fields.length != 5) {
+					continue;
+				}
+				final Entry entry = new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3],
+						Classification.parse(fields[4]));
+				entries.put(fields[0], entry);
+				byHash.put(entry.hash, entry.classification);
+			}
+		} catch (IOException | NumberFormatException e) {
+			entries.clear();
+			byHash.clear();
+		}
+	}
+
+	/**
+	 * @return the classification of the given file, scanning it only if neither its path and timestamp nor its
+	 *         content are known
+	 */
+	public synchronized Classification classify(final File file) throws IOException {
+		final String path = file.getAbsolutePath();
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+		final Entry known = entries.get(path);
+		if (known != null && known.length == length && known.lastModified == lastModified) {
+			return known.classification;
+		}
+
+		final byte[] content = Files.toByteArray(file);
+		final String hash = Hashing.sha1().hashBytes(content).toString();
+		Classification classification = byHash.get(hash);
+		if (classification == null) {
+			classification = Classification.of(new DartSource(file, new String(content, Charsets.UTF_8)));
+			byHash.put(hash, classification);
+			scanned++;
+		}
+		entries.put(path, new Entry(length, lastModified, hash, classification));
+		dirty = true;
+		return classification;
+	}
+
+	/**
+	 * @return the number of files scanned since the index was loaded
+	 */
+	public synchronized int getScanned() {
+		return scanned;
+	}
+
+	/**
+	 * Writes the index if it changed, dropping entries of files that no longer exist.
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		Files.createParentDirs(indexFile);
+		final File scratch = new File(indexFile.getPath() + ".tmp-" + UUID.randomUUID());
+		try (BufferedWriter writer = Files.newWriter(scratch, Charsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.newLine();
+			for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+				if (!new File(entry.getKey()).isFile()) {
+					continue;
+				}
+				final Entry value = entry.getValue();
+				writer.write(entry.getKey() + SEPARATOR + value.length + SEPARATOR + value.lastModified + SEPARATOR
+						+ value.hash + SEPARATOR + value.classification.toFlags());
+				writer.newLine();
+			}
+		}
+		java.nio.file.Files.move(scratch.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		dirty = false;
+	}
+}
@@ -0,0 +1,104 @@
+package com.google.dart;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Generates a dart sdk whose tools are shell scripts, so the mojos can be exercised and timed without a real
+ * sdk. Every tool sleeps, prints a number of lines and exits with a given code; the defaults can be overridden
+ * per process with the environment variables FAKE_DART_LATENCY (seconds), FAKE_DART_LINES and FAKE_DART_EXIT.
+ * If FAKE_DART_STDERR is set, every line is followed by one on standard error and a short pause, so that the
+ * lines of the two streams arrive interleaved.
+ * If FAKE_DART_LOG names a file, every invocation appends a line with the tool, working directory and arguments.
+ * <p/>
+ * Besides that dart2js writes the file given with -o and prints the line in FAKE_DART2JS_DIAGNOSTIC, dart with
+ * --out (i.e. dwc) writes an index.html and the bootstrap of the HTML file into that directory, pub creates the
+ * packages directory with a link to the browser package and dartanalyzer reports a hint for every file it
+ * analyzes and the line in FAKE_ANALYZER_DIAGNOSTIC.
+ */
+public class FakeDartSdk {
+
+    private final File directory;
+
+    private double latencySeconds;
+
+    private int outputLines;
+
+    private int exitCode;
+
+    public FakeDartSdk(File directory) {
+        this.directory = directory;
+    }
+
+    public FakeDartSdk latency(long millis) {
+        this.latencySeconds = millis / 1000.0;
+        return this;
+    }
+
+    public FakeDartSdk outputLines(int outputLines) {
+        this.outputLines = outputLines;
+        return this;
+    }
+
+    public FakeDartSdk exitCode(int exitCode) {
+        this.exitCode = exitCode;
+        return this;
+    }
+
+    public File create() throws IOException {
+        File version = new File(directory, "version");
+        Files.createParentDirs(version);
+        Files.write("0.0.0.fake\n", version, Charsets.UTF_8);
+
+        script("dart", ""
+                + "out=\n"
+                + "while [ $# -gt 0 ]; do\n"
+                + "  if [ \"$1\" = --out ]; then out=\"$2\"; fi\n"
+                + "  last=\"$1\"\n"
+                + "  shift\n"
+                + "done\n"
+                + "if [ -n \"$out\" ]; then\n"
+                + "  mkdir -p \"$out\" && echo '<html></html>' > \"$out/index.html\"\n"
+                + "  echo 'main() {}' > \"$out/$(basename \"$last\")_bootstrap.dart\"\n"
+                + "fi\n");
+        script("dart2js", ""
+                + "for arg in \"$@\"; do\n"
+                + "  case \"$arg\" in -o*) out=\"${arg#-o}\"; mkdir -p \"$(dirname \"$out\")\"; "
+                + "echo '// compiled' > \"$out\";; esac\n"
+                + "done\n"
+                + "if [ -n \"$FAKE_DART2JS_DIAGNOSTIC\" ]; then echo \"$FAKE_DART2JS_DIAGNOSTIC\"; fi\n");
+        File browser = new File(directory, "pub-cache/browser/lib/dart.js");
+        Files.createParentDirs(browser);
+        Files.write("// bootstrap\n", browser, Charsets.UTF_8);
+        script("pub", "mkdir -p packages && ln -sfn '" + browser.getParentFile().getAbsolutePath()
+                + "' packages/browser\n");
+        script("dartanalyzer", ""
+                + "for arg in \"$@\"; do\n"
+                + "  case \"$arg\" in *.dart) echo \"INFO|HINT|FAKE|$arg|1|1|1|fake hint\" >&2;; esac\n"
+                + "done\n"
+                + "if [ -n \"$FAKE_ANALYZER_DIAGNOSTIC\" ]; then echo \"$FAKE_ANALYZER_DIAGNOSTIC\" >&2; fi\n");
+        return directory;
+    }
+
+    private void script(String name, String body) throws IOException {
+        File file = new File(directory, "bin/" + name);
+        Files.createParentDirs(file);
+        Files.write("#!/bin/sh\n"
+                + "if [ -n \"$FAKE_DART_LOG\" ]; then echo \"" + name + " $PWD $*\" >> \"$FAKE_DART_LOG\"; fi\n"
+                + "sleep ${FAKE_DART_LATENCY:-" + latencySeconds + "}\n"
+                + "i=0\n"
+                + "while [ $i -lt ${FAKE_DART_LINES:-" + outputLines + "} ]; do\n"
+                + "  echo \"" + name + " output line $i\"\n"
+                + "  if [ -n \"$FAKE_DART_STDERR\" ]; then echo \"" + name + " error line $i\" >&2; sleep 0.01; fi\n"
+                + "  i=$((i + 1))\n"
+                + "done\n"
+                + body
+                + "exit ${FAKE_DART_EXIT:-" + exitCode + "}\n", file, Charsets.UTF_8);
+        if (!file.setExecutable(true)) {
+            throw new IOException("Unable to make " + file + " executable");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.google.dart;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * A project in a temporary directory to run the goals in. The parameters of the mojos are not injected outside
+ * of maven, so they are set directly.
+ */
+public class FakeProject {
+
+    private final File root = Files.createTempDir();
+
+    public File getRoot() {
+        return root;
+    }
+
+    public File write(String path, String content) throws IOException {
+        File file = new File(root, path);
+        Files.createParentDirs(file);
+        Files.write(content, file, Charsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * Configures the mojo to use the sdk and this project as basedir and sourceDirectory.
+     */
+    public <T extends AbstractDartMojo> T configure(T mojo, File sdk, int threads) {
+        mojo.setLog(new DefaultLog(new ConsoleLogger(Logger.LEVEL_WARN, "dart-maven-plugin")));
+        mojo.basedir = root;
+        mojo.sourceDirectory = root;
+        mojo.packagePath = "packages";
+        mojo.dartSdk = sdk;
+        mojo.stateDirectory = Files.createTempDir();
+        mojo.threads = threads;
+        return mojo;
+    }
+
+    public static void set(Object mojo, String name, Object value) throws ReflectiveOperationException {
+        for (Class<?> type = mojo.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(mojo, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                // declared in a super class
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+}
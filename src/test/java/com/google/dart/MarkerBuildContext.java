@@ -0,0 +1,43 @@
+package com.google.dart;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the messages like an IDE keeps markers.
+ */
+public class MarkerBuildContext extends DefaultBuildContext {
+
+    private final Map<File, List<String>> markers = new HashMap<>();
+
+    public MarkerBuildContext() {
+        enableLogging(new ConsoleLogger(Logger.LEVEL_WARN, "build-context"));
+    }
+
+    @Override
+    public synchronized void addMessage(File file, int line, int column, String message, int severity,
+            Throwable cause) {
+        List<String> messages = markers.get(file);
+        if (messages == null) {
+            messages = new ArrayList<>();
+            markers.put(file, messages);
+        }
+        messages.add(message);
+    }
+
+    @Override
+    public synchronized void removeMessages(File file) {
+        markers.remove(file);
+    }
+
+    public synchronized List<String> getMarkers(File file) {
+        return markers.get(file);
+    }
+}
@@ -0,0 +1,127 @@
+package com.google.dart;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+@Test
+public class TestAnalyzeMojo {
+
+    private File sdk;
+
+    private FakeProject project;
+
+    private File log;
+
+    @BeforeClass
+    public void createSdk() throws IOException {
+        if (!System.getProperty("os.name").toLowerCase(Locale.US).contains("linux")) {
+            throw new SkipException("needs linux for the fake dart sdk");
+        }
+        sdk = new FakeDartSdk(new File(Files.createTempDir(), "dart-sdk")).create();
+    }
+
+    @BeforeMethod
+    public void createProject() throws IOException {
+        project = new FakeProject();
+        project.write("web/main.dart", "library main;\n\npart 'part.dart';\n\nmain() {}\n");
+        project.write("web/part.dart", "part of main;\n");
+        project.write("lib/other.dart", "library other;\n");
+        log = new File(Files.createTempDir(), "tools.log");
+    }
+
+    private AnalyzeMojo createMojo(String failOnSeverity) throws ReflectiveOperationException {
+        AnalyzeMojo mojo = project.configure(new AnalyzeMojo(), sdk, 1);
+        FakeProject.set(mojo, "failOnSeverity", failOnSeverity);
+        mojo.environmentVariables.put("FAKE_DART_LOG", log.getAbsolutePath());
+        return mojo;
+    }
+
+    /**
+     * @return the libraries every dartanalyzer run analyzed, relative to the project
+     */
+    private List<String> analyzed() throws IOException {
+        List<String> libraries = new ArrayList<>();
+        if (!log.isFile()) {
+            return libraries;
+        }
+        String root = project.getRoot().getAbsolutePath() + "/";
+        for (String line : Files.readLines(log, Charsets.UTF_8)) {
+            for (String arg : line.split(" ")) {
+                if (arg.endsWith(".dart")) {
+                    libraries.add(arg.substring(root.length()));
+                }
+            }
+        }
+        log.delete();
+        return libraries;
+    }
+
+    @Test
+    public void testReusesResultsOfUnchangedLibraries() throws Exception {
+        AnalyzeMojo mojo = createMojo("error");
+        mojo.execute();
+        List<String> libraries = analyzed();
+        Collections.sort(libraries);
+        Assert.assertEquals(libraries, Arrays.asList("lib/other.dart", "web/main.dart"));
+
+        mojo.execute();
+        Assert.assertEquals(analyzed(), Collections.emptyList(), "unchanged libraries");
+
+        project.write("web/part.dart", "part of main;\n\nconst answer = 42;\n");
+        mojo.execute();
+        Assert.assertEquals(analyzed(), Collections.singletonList("web/main.dart"), "a changed part");
+    }
+
+    @Test
+    public void testRemovesMessagesOfParts() throws Exception {
+        File part = new File(project.getRoot(), "web/part.dart");
+        MarkerBuildContext context = new MarkerBuildContext();
+        AnalyzeMojo mojo = createMojo("error");
+        FakeProject.set(mojo, "buildContext", context);
+        mojo.environmentVariables.put("FAKE_ANALYZER_DIAGNOSTIC",
+                "WARNING|STATIC_WARNING|FAKE|" + part.getAbsolutePath() + "|1|1|1|fake warning");
+        mojo.execute();
+        Assert.assertEquals(context.getMarkers(part), Collections.singletonList("fake warning"));
+
+        // the warning is fixed, the library is analyzed again
+        mojo.environmentVariables.remove("FAKE_ANALYZER_DIAGNOSTIC");
+        project.write("web/part.dart", "part of main;\n\nconst answer = 42;\n");
+        mojo.execute();
+        Assert.assertNull(context.getMarkers(part));
+    }
+
+    @Test
+    public void testFailsOnSeverity() throws Exception {
+        // the fake dartanalyzer reports an info for every library
+        AnalyzeMojo mojo = createMojo("warning");
+        mojo.execute();
+        Assert.assertEquals(analyzed().size(), 2);
+
+        FakeProject.set(mojo, "failOnSeverity", "info");
+        try {
+            mojo.execute();
+            Assert.fail("the infos of the cached results fail the build");
+        } catch (MojoFailureException e) {
+            Assert.assertTrue(e.getMessage().contains("found 2 issues of severity info"), e.getMessage());
+        }
+        Assert.assertEquals(analyzed(), Collections.emptyList(), "the results of the first run are reused");
+
+        FakeProject.set(mojo, "failOnSeverity", "none");
+        mojo.execute();
+    }
+}
@@ -0,0 +1,51 @@
+package com.google.dart;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+@Test
+public class TestAssembleMojo {
+
+    private FakeProject project;
+
+    @BeforeMethod
+    public void createProject() throws IOException {
+        project = new FakeProject();
+        project.write("web/index.html", "<html><script type=\"application/dart\" src=\"main.dart\"></script></html>\n");
+        project.write("web/main.dart", "main() {}\n");
+        project.write("browser/lib/dart.js", "// bootstrap\n");
+        project.write("browser/lib/interop.dart", "library interop;\n");
+        project.write("target/dart2js/web/main.dart.js", "// compiled\n");
+        File root = project.getRoot();
+        new File(root, "packages").mkdirs();
+        Files.createSymbolicLink(new File(root, "packages/browser").toPath(), new File(root, "browser/lib").toPath());
+        Files.createSymbolicLink(new File(root, "web/packages").toPath(), new File(root, "packages").toPath());
+    }
+
+    @Test
+    public void testAssemblesJavascriptOnly() throws Exception {
+        File root = project.getRoot();
+        AssembleMojo mojo = project.configure(new AssembleMojo(), null, 1);
+        File web = new File(root, "target/web");
+        FakeProject.set(mojo, "webDirectory", web);
+        FakeProject.set(mojo, "dwcOutputDirectory", new File(root, "target/dwc"));
+        FakeProject.set(mojo, "dart2jsOutputDirectory", new File(root, "target/dart2js"));
+        FakeProject.set(mojo, "includes", Collections.singleton("web/**"));
+        FakeProject.set(mojo, "jsOnly", true);
+        mojo.execute();
+
+        Assert.assertTrue(new File(web, "web/index.html").isFile());
+        Assert.assertTrue(new File(web, "web/main.dart.js").isFile());
+        Assert.assertFalse(new File(web, "web/main.dart").exists());
+        Assert.assertTrue(new File(web, "packages/browser/dart.js").isFile());
+        Assert.assertFalse(new File(web, "packages/browser/interop.dart").exists());
+        Assert.assertTrue(Files.isSymbolicLink(new File(web, "web/packages").toPath()));
+        Assert.assertTrue(new File(web, "web/packages/browser/dart.js").isFile());
+    }
+}
@@ -0,0 +1,190 @@
+package com.google.dart;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+@Test
+public class TestDart2JsMojo {
+
+    /**
+     * Keeps the info messages.
+     */
+    private static class RecordingLog extends SystemStreamLog {
+
+        private final List<String> infos = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void info(CharSequence content) {
+            infos.add(content.toString());
+        }
+    }
+
+    private File sdk;
+
+    private FakeProject project;
+
+    @BeforeClass
+    public void createSdk() throws IOException {
+        if (!System.getProperty("os.name").toLowerCase(Locale.US).contains("linux")) {
+            throw new SkipException("needs linux for the fake dart sdk");
+        }
+        sdk = new FakeDartSdk(new File(Files.createTempDir(), "dart-sdk")).create();
+    }
+
+    @BeforeMethod
+    public void createProject() throws IOException {
+        project = new FakeProject();
+        project.write("web/main.dart", "import '../lib/shared.dart';\n\nmain() {}\n");
+        project.write("lib/shared.dart", "library shared;\n");
+    }
+
+    private Dart2JsMojo createMojo() throws Exception {
+        Dart2JsMojo mojo = project.configure(new Dart2JsMojo(), sdk, 1);
+        FakeProject.set(mojo, "dwcSourceDirectory", project.getRoot());
+        FakeProject.set(mojo, "outputDirectory", new File(project.getRoot(), "target/dart2js"));
+        FakeProject.set(mojo, "includes", new HashSet<>(Collections.singleton("web/*.dart")));
+        return mojo;
+    }
+
+    @Test
+    public void testRemovesMessagesOfLibraries() throws Exception {
+        File shared = new File(project.getRoot(), "lib/shared.dart");
+        MarkerBuildContext context = new MarkerBuildContext();
+        Dart2JsMojo mojo = createMojo();
+        FakeProject.set(mojo, "buildContext", context);
+        mojo.environmentVariables.put("FAKE_DART2JS_DIAGNOSTIC",
+                shared.getAbsolutePath() + ":1:1: Warning: fake warning");
+        mojo.execute();
+        Assert.assertEquals(context.getMarkers(shared), Collections.singletonList("fake warning"));
+
+        // the warning is fixed, the entrypoint is compiled again
+        mojo.environmentVariables.remove("FAKE_DART2JS_DIAGNOSTIC");
+        File main = new File(project.getRoot(), "web/main.dart");
+        Assert.assertTrue(main.setLastModified(main.lastModified() + 60000));
+        mojo.execute();
+        Assert.assertNull(context.getMarkers(shared));
+    }
+
+    @Test
+    public void testLogsOutputAndErrorSeparately() throws Exception {
+        Dart2JsMojo mojo = createMojo();
+        RecordingLog log = new RecordingLog();
+        mojo.setLog(log);
+        mojo.environmentVariables.put("FAKE_DART_LINES", "20");
+        mojo.environmentVariables.put("FAKE_DART_STDERR", "true");
+        mojo.execute();
+
+        String block = null;
+        for (String info : log.infos) {
+            if (info.startsWith("dart2js output for 'web/main.dart':")) {
+                block = info;
+            }
+        }
+        Assert.assertNotNull(block, log.infos.toString());
+        String[] lines = block.trim().split("\\R");
+        Assert.assertEquals(lines.length, 41);
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(lines[1 + i], "dart2js output line " + i);
+            Assert.assertEquals(lines[21 + i], "dart2js error line " + i);
+        }
+    }
+
+    @Test
+    public void testLogsNoEmptyOutput() throws Exception {
+        Dart2JsMojo mojo = createMojo();
+        RecordingLog log = new RecordingLog();
+        mojo.setLog(log);
+        mojo.execute();
+
+        for (String info : log.infos) {
+            Assert.assertFalse(info.startsWith("dart2js output for"), log.infos.toString());
+        }
+        Assert.assertTrue(log.infos.contains("Compiled 'web/main.dart': 1 updated, 0 unchanged, 0 deleted"),
+                log.infos.toString());
+    }
+
+    @Test
+    public void testKeepsUnchangedOutput() throws Exception {
+        Dart2JsMojo mojo = createMojo();
+        mojo.execute();
+
+        File js = new File(project.getRoot(), "target/dart2js/web/main.dart.js");
+        long lastModified = js.lastModified() - 60000;
+        Assert.assertTrue(js.setLastModified(lastModified));
+        File main = new File(project.getRoot(), "web/main.dart");
+        Assert.assertTrue(main.setLastModified(System.currentTimeMillis() + 60000));
+        mojo.execute();
+
+        Assert.assertEquals(js.lastModified(), lastModified);
+        Assert.assertFalse(new File(project.getRoot(), "target/dart2js.staging-0").exists());
+    }
+
+    @Test
+    public void testCompilesVariantsInOneExecution() throws Exception {
+        Dart2JsMojo mojo = createMojo();
+        FakeProject.set(mojo, "variants", Arrays.asList(new Variant("debug", true, false, null, null),
+                new Variant("release", false, true, null, null)));
+        File log = new File(Files.createTempDir(), "tools.log");
+        mojo.environmentVariables.put("FAKE_DART_LOG", log.getAbsolutePath());
+        mojo.execute();
+
+        File output = new File(project.getRoot(), "target/dart2js");
+        Assert.assertTrue(new File(output, "debug/web/main.dart.js").isFile());
+        Assert.assertTrue(new File(output, "release/web/main.dart.js").isFile());
+        List<String> lines = Files.readLines(log, Charsets.UTF_8);
+        Assert.assertEquals(lines.size(), 2);
+        int checked = 0;
+        int minified = 0;
+        for (String line : lines) {
+            checked += line.contains(" -c ") ? 1 : 0;
+            minified += line.contains(" --minify ") ? 1 : 0;
+        }
+        Assert.assertEquals(checked, 1);
+        Assert.assertEquals(minified, 1);
+
+        Assert.assertTrue(log.delete());
+        mojo.execute();
+        Assert.assertFalse(log.exists());
+    }
+
+    @Test
+    public void testSkipsUpToDate() throws Exception {
+        Dart2JsMojo mojo = createMojo();
+        FakeProject.set(mojo, "skipUpToDate", true);
+        // outside of the sources, which are recorded in the snapshot
+        File target = Files.createTempDir();
+        FakeProject.set(mojo, "outputDirectory", new File(target, "dart2js"));
+        File log = new File(target, "tools.log");
+        mojo.environmentVariables.put("FAKE_DART_LOG", log.getAbsolutePath());
+        mojo.execute();
+        Assert.assertTrue(log.delete());
+
+        // without the stamps every file would be compiled again, unless the goal is skipped as a whole
+        FileUtils.deleteDirectory(new File(mojo.stateDirectory, "dart2js/stamps"));
+        mojo.execute();
+        Assert.assertFalse(log.exists());
+
+        File main = new File(project.getRoot(), "web/main.dart");
+        Files.append("// edited in place\n", main, Charsets.UTF_8);
+        Assert.assertTrue(main.setLastModified(main.lastModified() + 60000));
+        mojo.execute();
+        Assert.assertTrue(log.isFile());
+    }
+}
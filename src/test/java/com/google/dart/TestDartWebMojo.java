@@ -0,0 +1,94 @@
+package com.google.dart;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+@Test
+public class TestDartWebMojo {
+
+    private File sdk;
+
+    private FakeProject project;
+
+    private File log;
+
+    @BeforeClass
+    public void createSdk() throws IOException {
+        if (!System.getProperty("os.name").toLowerCase(Locale.US).contains("linux")) {
+            throw new SkipException("needs linux for the fake dart sdk");
+        }
+        sdk = new FakeDartSdk(new File(Files.createTempDir(), "dart-sdk")).create();
+    }
+
+    @BeforeMethod
+    public void createProject() throws IOException {
+        project = new FakeProject();
+        project.write("packages/web_ui/dwc.dart", "main() {}\n");
+        project.write("web/index.html", "<html><link rel=\"import\" href=\"component.html\">"
+                + "<script type=\"application/dart\" src=\"main.dart\"></script></html>\n");
+        project.write("web/component.html", "<element name=\"x-component\"></element>\n");
+        project.write("web/main.dart", "import 'util.dart';\n\nmain() {}\n");
+        project.write("web/util.dart", "library util;\n");
+        project.write("web/unrelated.dart", "library unrelated;\n");
+        log = new File(Files.createTempDir(), "tools.log");
+    }
+
+    private DartWebMojo createMojo() throws ReflectiveOperationException {
+        DartWebMojo mojo = project.configure(new DartWebMojo(), sdk, 1);
+        FakeProject.set(mojo, "outputDir", new File(project.getRoot(), "target/dwc"));
+        FakeProject.set(mojo, "htmlFile", "web/index.html");
+        FakeProject.set(mojo, "script", "packages/web_ui/dwc.dart");
+        mojo.environmentVariables.put("FAKE_DART_LOG", log.getAbsolutePath());
+        return mojo;
+    }
+
+    private int runs() throws IOException {
+        return log.isFile() ? Files.readLines(log, Charsets.UTF_8).size() : 0;
+    }
+
+    @Test
+    public void testRunsOnlyForChangedInputs() throws Exception {
+        DartWebMojo mojo = createMojo();
+        mojo.execute();
+        Assert.assertEquals(runs(), 1);
+        Assert.assertTrue(new File(project.getRoot(), "target/dwc/index.html").isFile());
+
+        mojo.execute();
+        Assert.assertEquals(runs(), 1, "unchanged inputs");
+
+        project.write("web/unrelated.dart", "library unrelated;\n\nclass Unrelated {}\n");
+        mojo.execute();
+        Assert.assertEquals(runs(), 1, "a file the HTML file does not reference");
+
+        project.write("web/component.html", "<element name=\"x-component\"><template></template></element>\n");
+        mojo.execute();
+        Assert.assertEquals(runs(), 2, "a component referenced by the HTML file");
+
+        project.write("web/util.dart", "library util;\n\nconst answer = 42;\n");
+        mojo.execute();
+        Assert.assertEquals(runs(), 3, "a library imported by the script of the HTML file");
+    }
+
+    @Test
+    public void testFailureRemovesStagingDirectory() throws Exception {
+        DartWebMojo mojo = createMojo();
+        mojo.environmentVariables.put("FAKE_DART_EXIT", "1");
+        try {
+            mojo.execute();
+            Assert.fail("expected dwc to fail");
+        } catch (MojoExecutionException e) {
+            Assert.assertFalse(new File(project.getRoot(), "target/dwc.staging").exists());
+        }
+    }
+}
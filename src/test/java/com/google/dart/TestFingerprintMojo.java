@@ -0,0 +1,85 @@
+package com.google.dart;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+@Test
+public class TestFingerprintMojo {
+
+    private FakeProject project;
+
+    @BeforeMethod
+    public void createProject() {
+        project = new FakeProject();
+    }
+
+    private FingerprintMojo createMojo() throws ReflectiveOperationException {
+        FingerprintMojo mojo = project.configure(new FingerprintMojo(), null, 1);
+        FakeProject.set(mojo, "fingerprintDirectory", new File(project.getRoot(), "dart2js"));
+        FakeProject.set(mojo, "includes", Collections.singleton("**/*.dart.js"));
+        FakeProject.set(mojo, "hashLength", 10);
+        FakeProject.set(mojo, "manifestFile", new File(project.getRoot(), "dart2js/manifest.json"));
+        FakeProject.set(mojo, "rewriteHtml", true);
+        FakeProject.set(mojo, "htmlDirectory", new File(project.getRoot(), "dwc"));
+        FakeProject.set(mojo, "htmlOutputDirectory", new File(project.getRoot(), "fingerprint"));
+        return mojo;
+    }
+
+    private String readOutput(String path) throws IOException {
+        return Files.toString(new File(project.getRoot(), "fingerprint/" + path), Charsets.UTF_8);
+    }
+
+    private static String scriptSource(String html) {
+        int start = html.indexOf("src=\"") + "src=\"".length();
+        return html.substring(start, html.indexOf('"', start));
+    }
+
+    public void testRewritesChangedContent() throws Exception {
+        String html = "<html><script src=\"web/main.dart.js\"></script></html>";
+        File htmlFile = project.write("dwc/web/index.html", html);
+        project.write("dart2js/web/main.dart.js", "first");
+
+        createMojo().execute();
+        String first = scriptSource(readOutput("web/index.html"));
+        Assert.assertTrue(first.matches("web/main\\.[0-9a-f]{10}\\.dart\\.js"), first);
+        Assert.assertTrue(new File(project.getRoot(), "dart2js/" + first).isFile());
+        Assert.assertEquals(Files.toString(htmlFile, Charsets.UTF_8), html, "the dwc output is left untouched");
+
+        project.write("dart2js/web/main.dart.js", "second");
+        createMojo().execute();
+        String second = scriptSource(readOutput("web/index.html"));
+        Assert.assertTrue(second.matches("web/main\\.[0-9a-f]{10}\\.dart\\.js"), second);
+        Assert.assertNotEquals(second, first);
+        Assert.assertEquals(Files.toString(new File(project.getRoot(), "dart2js/" + second), Charsets.UTF_8),
+                "second");
+        Assert.assertFalse(new File(project.getRoot(), "dart2js/" + first).exists());
+    }
+
+    public void testRewritesHashedReferences() throws Exception {
+        project.write("dwc/index.html", "<script src=\"main.0123456789.dart.js\"></script>");
+        project.write("dart2js/main.dart.js", "content");
+
+        createMojo().execute();
+        String src = scriptSource(readOutput("index.html"));
+        Assert.assertTrue(src.matches("main\\.[0-9a-f]{10}\\.dart\\.js"), src);
+        Assert.assertNotEquals(src, "main.0123456789.dart.js");
+    }
+
+    @Test(expectedExceptions = MojoExecutionException.class)
+    public void testAmbiguousFileNameFails() throws Exception {
+        project.write("dwc/index.html", "<script src=\"main.dart.js\"></script>");
+        project.write("dart2js/a/main.dart.js", "a");
+        project.write("dart2js/b/main.dart.js", "b");
+
+        createMojo().execute();
+    }
+}
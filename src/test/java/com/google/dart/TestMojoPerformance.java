@@ -0,0 +1,235 @@
+package com.google.dart;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Runs the goals against a {@link FakeDartSdk} and synthetic multi-package projects and reports wall time,
+ * throughput and the overhead of the plugin beyond the simulated tool latency for several thread counts.
+ * <p/>
+ * The size can be tuned with the system properties dart.benchmark.packages, dart.benchmark.latency (ms per tool
+ * invocation) and dart.benchmark.threads (comma separated), e.g.
+ * <code>mvn test -Pbenchmark -Dtest=TestMojoPerformance -Ddart.benchmark.packages=32 -Ddart.benchmark.threads=1,2,4,8</code>.
+ * The tests are in the benchmark group, which is only run with the benchmark profile.
+ */
+@Test(groups = "benchmark")
+public class TestMojoPerformance {
+
+    private static final int PACKAGES = Integer.getInteger("dart.benchmark.packages", 6);
+
+    private static final long LATENCY = Long.getLong("dart.benchmark.latency", 100);
+
+    private static final String THREADS = System.getProperty("dart.benchmark.threads", "1,4");
+
+    private final List<String> report = new ArrayList<>();
+
+    private File sdk;
+
+    private FakeProject project;
+
+    private File root;
+
+    @BeforeClass(groups = "benchmark")
+    public void createSdk() throws IOException {
+        if (!System.getProperty("os.name").toLowerCase(Locale.US).contains("linux")) {
+            throw new SkipException("needs linux for the fake dart sdk");
+        }
+        sdk = new FakeDartSdk(new File(Files.createTempDir(), "dart-sdk"))
+                .latency(LATENCY)
+                .outputLines(20)
+                .create();
+    }
+
+    @BeforeMethod(groups = "benchmark")
+    public void createProject() throws IOException {
+        project = new FakeProject();
+        root = project.getRoot();
+        project.write("packages/web_ui/dwc.dart", "main() {}\n");
+        for (int i = 0; i < PACKAGES; i++) {
+            String name = "pkg" + i;
+            project.write(name + "/pubspec.yaml", "name: " + name + "\ndependencies:\n  browser: any\n");
+            project.write(name + "/web/index.html", "<html><script type=\"application/dart\" src=\"main.dart\"></script></html>\n");
+            project.write(name + "/web/main.dart", "library " + name + ";\n\npart 'view.dart';\n\nmain() {}\n");
+            project.write(name + "/web/view.dart", "part of " + name + ";\n\nclass View {}\n");
+            project.write(name + "/test/all_test.dart", "library " + name + "_test;\n\nmain() {}\n");
+            project.write(name + "/test/fixtures.dart", "library " + name + "_fixtures;\n\nconst fixture = 1;\n");
+        }
+    }
+
+    @AfterClass(groups = "benchmark", alwaysRun = true)
+    public void printReport() {
+        if (report.isEmpty()) {
+            return;
+        }
+        System.out.println();
+        System.out.println(String.format("%-10s %8s %10s %10s %10s %14s %12s", "goal", "threads", "processes",
+                "wall ms", "ideal ms", "overhead ms/p", "processes/s"));
+        for (String line : report) {
+            System.out.println(line);
+        }
+        System.out.println();
+    }
+
+    @Test
+    public void testPub() throws Exception {
+        for (int threads : threadCounts()) {
+            PubMojo mojo = configure(new PubMojo(), threads);
+            FakeProject.set(mojo, "discoverPackages", true);
+            long millis = time(mojo);
+            for (int i = 0; i < PACKAGES; i++) {
+                Assert.assertTrue(new File(root, "pkg" + i + "/packages").isDirectory());
+            }
+            record("pub", threads, PACKAGES, threads, millis);
+        }
+    }
+
+    @Test
+    public void testSharedPub() throws Exception {
+        for (int i = 0; i < PACKAGES; i++) {
+            project.write("pkg" + i + "/pubspec.lock", "packages:\n  browser:\n    description: browser\n"
+                    + "    source: hosted\n    version: \"0.5.20\"\n");
+        }
+        int threads = threadCounts().get(threadCounts().size() - 1);
+        PubMojo mojo = configure(new PubMojo(), threads);
+        FakeProject.set(mojo, "discoverPackages", true);
+        FakeProject.set(mojo, "sharePackages", true);
+        FakeProject.set(mojo, "sharedPackagesDirectory", new File(root, "target/pub-shared"));
+        File log = new File(root, "target/tools.log");
+        Files.createParentDirs(log);
+        mojo.environmentVariables.put("FAKE_DART_LOG", log.getAbsolutePath());
+        long millis = time(mojo);
+
+        Assert.assertEquals(Files.readLines(log, Charsets.UTF_8).size(), 1);
+        for (int i = 0; i < PACKAGES; i++) {
+            Assert.assertTrue(new File(root, "pkg" + i + "/packages/browser/dart.js").isFile());
+            Assert.assertTrue(java.nio.file.Files.isSymbolicLink(new File(root, "pkg" + i + "/web/packages").toPath()));
+            Assert.assertTrue(new File(root, "pkg" + i + "/web/packages/browser/dart.js").isFile());
+        }
+        record("pub-shared", threads, 1, 1, millis);
+    }
+
+    @Test
+    public void testDwc() throws Exception {
+        for (int threads : threadCounts()) {
+            DartWebMojo mojo = configure(new DartWebMojo(), threads);
+            File output = new File(root, "target/dwc-" + threads);
+            FakeProject.set(mojo, "outputDir", output);
+            FakeProject.set(mojo, "script", "packages/web_ui/dwc.dart");
+            FakeProject.set(mojo, "htmlFiles", Collections.singleton("*/web/index.html"));
+            long millis = time(mojo);
+            for (int i = 0; i < PACKAGES; i++) {
+                Assert.assertTrue(new File(output, "pkg" + i + "/web/index/index.html").isFile());
+            }
+            record("dwc", threads, PACKAGES, threads, millis);
+        }
+    }
+
+    @Test
+    public void testDart2Js() throws Exception {
+        for (int threads : threadCounts()) {
+            Dart2JsMojo mojo = configure(new Dart2JsMojo(), threads);
+            File output = new File(root, "target/dart2js-" + threads);
+            FakeProject.set(mojo, "dwcSourceDirectory", root);
+            FakeProject.set(mojo, "outputDirectory", output);
+            FakeProject.set(mojo, "includes", new HashSet<>(Collections.singleton("*/web/*.dart")));
+            FakeProject.set(mojo, "entrypointsOnly", true);
+            FakeProject.set(mojo, "memoryAware", true);
+            FakeProject.set(mojo, "memoryEstimate", 16);
+            long millis = time(mojo);
+            for (int i = 0; i < PACKAGES; i++) {
+                Assert.assertTrue(new File(output, "pkg" + i + "/web/main.dart.js").isFile());
+                Assert.assertFalse(new File(output, "pkg" + i + "/web/view.dart.js").exists());
+            }
+            Assert.assertFalse(new File(root, "target/dart2js-" + threads + ".staging-0").exists());
+            Assert.assertTrue(new File(mojo.stateDirectory, "dart2js/memory.properties").isFile());
+            record("dart2js", threads, PACKAGES, threads, millis);
+        }
+    }
+
+    @Test
+    public void testPipeline() throws Exception {
+        for (int threads : threadCounts()) {
+            PipelineMojo mojo = configure(new PipelineMojo(), threads);
+            File output = new File(root, "target/pipeline-" + threads);
+            FakeProject.set(mojo, "script", "packages/web_ui/dwc.dart");
+            FakeProject.set(mojo, "htmlFiles", Collections.singleton("*/web/index.html"));
+            FakeProject.set(mojo, "dwcSourceDirectory", new File(root, "target/pipeline-dwc-" + threads));
+            FakeProject.set(mojo, "outputDirectory", output);
+            FakeProject.set(mojo, "compress", true);
+            long millis = time(mojo);
+            for (int i = 0; i < PACKAGES; i++) {
+                Assert.assertTrue(new File(output, "pkg" + i + "/web/index/index.html_bootstrap.dart.js").isFile());
+            }
+            // dwc and dart2js of different entrypoints overlap
+            record("pipeline", threads, 2 * PACKAGES, threads, millis);
+        }
+    }
+
+    @Test
+    public void testAnalyze() throws Exception {
+        for (int threads : threadCounts()) {
+            AnalyzeMojo mojo = configure(new AnalyzeMojo(), threads);
+            FakeProject.set(mojo, "failOnSeverity", "error");
+            long millis = time(mojo);
+            int processes = Math.min(threads, 3 * PACKAGES);
+            record("analyze", threads, processes, processes, millis);
+
+            long cached = time(mojo);
+            record("analyze*", threads, 0, 1, cached);
+        }
+    }
+
+    @Test
+    public void testTest() throws Exception {
+        for (int threads : threadCounts()) {
+            TestMojo mojo = configure(new TestMojo(), threads);
+            FakeProject.set(mojo, "discoverPackages", true);
+            FakeProject.set(mojo, "testEntrypointsOnly", true);
+            File log = new File(mojo.stateDirectory, "tools.log");
+            mojo.environmentVariables.put("FAKE_DART_LOG", log.getAbsolutePath());
+            long millis = time(mojo);
+            Assert.assertEquals(Files.readLines(log, Charsets.UTF_8).size(), PACKAGES);
+            record("test", threads, PACKAGES, threads, millis);
+        }
+    }
+
+    private <T extends AbstractDartMojo> T configure(T mojo, int threads) {
+        return project.configure(mojo, sdk, threads);
+    }
+
+    private static long time(AbstractDartMojo mojo) throws Exception {
+        long start = System.nanoTime();
+        mojo.execute();
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private void record(String goal, int threads, int processes, int parallelism, long millis) {
+        long ideal = (processes + parallelism - 1) / parallelism * LATENCY;
+        report.add(String.format("%-10s %8d %10d %10d %10d %14.1f %12.1f", goal, threads, processes, millis, ideal,
+                processes == 0 ? 0.0 : (millis - ideal) / (double) processes,
+                millis == 0 ? 0.0 : processes * 1000.0 / millis));
+    }
+
+    private static List<Integer> threadCounts() {
+        List<Integer> counts = new ArrayList<>();
+        for (String count : THREADS.split(",")) {
+            counts.add(Integer.parseInt(count.trim()));
+        }
+        return counts;
+    }
+}
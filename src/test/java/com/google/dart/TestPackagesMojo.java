@@ -0,0 +1,122 @@
+package com.google.dart;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.project.MavenProject;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.dart.util.LinkUtil;
+
+@Test
+public class TestPackagesMojo {
+
+    private FakeProject project;
+
+    private File cacheDirectory;
+
+    private File stateDirectory;
+
+    @BeforeMethod
+    public void createProject() {
+        project = new FakeProject();
+        cacheDirectory = Files.createTempDir();
+        stateDirectory = Files.createTempDir();
+    }
+
+    private PackagesMojo createMojo(Artifact... artifacts) throws ReflectiveOperationException {
+        PackagesMojo mojo = project.configure(new PackagesMojo(), null, 1);
+        mojo.stateDirectory = stateDirectory;
+        MavenProject mavenProject = new MavenProject();
+        mavenProject.setArtifacts(new LinkedHashSet<>(Arrays.asList(artifacts)));
+        FakeProject.set(mojo, "project", mavenProject);
+        FakeProject.set(mojo, "packageType", "zip");
+        FakeProject.set(mojo, "packageCacheDirectory", cacheDirectory);
+        return mojo;
+    }
+
+    /**
+     * @return a released dart package with its library nested in a top level directory
+     */
+    private Artifact createPackage(String name) throws IOException {
+        File zip = new File(Files.createTempDir(), name + "-1.0.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry(name + "-1.0/lib/" + name + ".dart"));
+            out.write(("library " + name + ";\n").getBytes(Charsets.UTF_8));
+            out.closeEntry();
+        }
+        Artifact artifact = new DefaultArtifact("com.example", name, "1.0", Artifact.SCOPE_COMPILE, "zip", null,
+                new DefaultArtifactHandler("zip"));
+        artifact.setFile(zip);
+        return artifact;
+    }
+
+    private Object fileKey(File file) throws IOException {
+        return java.nio.file.Files.readAttributes(file.toPath(), BasicFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS).fileKey();
+    }
+
+    @Test
+    public void testLinksExtractedPackages() throws Exception {
+        Artifact foo = createPackage("foo");
+        createMojo(foo).execute();
+        File library = new File(project.getRoot(), "packages/foo/foo.dart");
+        Assert.assertEquals(Files.toString(library, Charsets.UTF_8), "library foo;\n");
+
+        // the second run leaves the link alone
+        File link = new File(project.getRoot(), "packages/foo");
+        Object key = fileKey(link);
+        createMojo(foo).execute();
+        Assert.assertEquals(fileKey(link), key);
+    }
+
+    @Test
+    public void testKeepsUpToDateLinkedTree() throws Exception {
+        Artifact foo = createPackage("foo");
+        createMojo(foo).execute();
+
+        // like on a platform without symbolic links
+        Path link = new File(project.getRoot(), "packages/foo").toPath();
+        Path target = java.nio.file.Files.readSymbolicLink(link);
+        LinkUtil.delete(link);
+        Assert.assertEquals(LinkUtil.linkTree(target, link), LinkUtil.Mode.HARDLINK);
+        Object key = fileKey(link.toFile());
+
+        createMojo(foo).execute();
+        Assert.assertFalse(java.nio.file.Files.isSymbolicLink(link));
+        Assert.assertEquals(fileKey(link.toFile()), key);
+        Assert.assertTrue(new File(link.toFile(), "foo.dart").isFile());
+    }
+
+    @Test
+    public void testRemovesStalePackages() throws Exception {
+        Artifact foo = createPackage("foo");
+        Artifact bar = createPackage("bar");
+        File other = project.write("packages/other/other.dart", "library other;\n");
+        createMojo(foo, bar).execute();
+        Path extracted = java.nio.file.Files.readSymbolicLink(new File(project.getRoot(), "packages/bar").toPath());
+
+        createMojo(foo).execute();
+        Set<String> entries = new HashSet<>(Arrays.asList(new File(project.getRoot(), "packages").list()));
+        Assert.assertEquals(entries, new HashSet<>(Arrays.asList("foo", "other")));
+        Assert.assertTrue(other.isFile(), "an entry this goal did not create");
+        Assert.assertTrue(new File(extracted.toFile(), "bar.dart").isFile(), "the shared cache is kept");
+    }
+}
@@ -0,0 +1,66 @@
+package com.google.dart;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+@Test
+public class TestPipelineMojo {
+
+    private File sdk;
+
+    private FakeProject project;
+
+    @BeforeClass
+    public void createSdk() throws IOException {
+        if (!System.getProperty("os.name").toLowerCase(Locale.US).contains("linux")) {
+            throw new SkipException("needs linux for the fake dart sdk");
+        }
+        sdk = new FakeDartSdk(new File(Files.createTempDir(), "dart-sdk")).create();
+    }
+
+    @BeforeMethod
+    public void createProject() throws IOException {
+        project = new FakeProject();
+        project.write("packages/web_ui/dwc.dart", "main() {}\n");
+        for (String name : new String[] {"a", "b"}) {
+            project.write(name + "/web/index.html",
+                    "<html><script type=\"application/dart\" src=\"main.dart\"></script></html>\n");
+            project.write(name + "/web/main.dart", "main() {}\n");
+        }
+    }
+
+    @Test
+    public void testCompressesAndFingerprints() throws Exception {
+        File root = project.getRoot();
+        PipelineMojo mojo = project.configure(new PipelineMojo(), sdk, 2);
+        File output = new File(root, "target/pipeline");
+        FakeProject.set(mojo, "script", "packages/web_ui/dwc.dart");
+        FakeProject.set(mojo, "htmlFiles", Collections.singleton("*/web/index.html"));
+        FakeProject.set(mojo, "dwcSourceDirectory", new File(root, "target/dwc"));
+        FakeProject.set(mojo, "outputDirectory", output);
+        FakeProject.set(mojo, "compress", true);
+        FakeProject.set(mojo, "fingerprint", true);
+        FakeProject.set(mojo, "hashLength", 10);
+        mojo.execute();
+
+        for (String name : new String[] {"a", "b"}) {
+            File js = new File(output, name + "/web/index/index.html_bootstrap.dart.js");
+            Assert.assertTrue(js.isFile());
+            Assert.assertTrue(new File(js.getPath() + ".gz").isFile());
+        }
+        String manifest = Files.toString(new File(output, "manifest.json"), Charsets.UTF_8);
+        Assert.assertTrue(manifest.contains("\"a/web/index/index.html_bootstrap.dart.js\""), manifest);
+        Assert.assertTrue(manifest.contains("\"b/web/index/index.html_bootstrap.dart.js\""), manifest);
+    }
+}
@@ -0,0 +1,79 @@
+package com.google.dart;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+@Test
+public class TestPubMojo {
+
+    private static final String HOSTED_LOCK = "packages:\n  browser:\n    description: browser\n"
+            + "    source: hosted\n    version: \"0.5.20\"\n";
+
+    private File sdk;
+
+    @BeforeClass
+    public void createSdk() throws IOException {
+        if (!System.getProperty("os.name").toLowerCase(Locale.US).contains("linux")) {
+            throw new SkipException("needs linux for the fake dart sdk");
+        }
+        sdk = new FakeDartSdk(new File(Files.createTempDir(), "dart-sdk")).create();
+    }
+
+    @Test
+    public void testSharesResolutionOfIdenticalLockFiles() throws Exception {
+        FakeProject project = new FakeProject();
+        for (String name : new String[] {"a", "b"}) {
+            project.write(name + "/pubspec.yaml", "name: " + name + "\ndependencies:\n  browser: any\n");
+            project.write(name + "/pubspec.lock", HOSTED_LOCK);
+            project.write(name + "/web/main.dart", "main() {}\n");
+        }
+        project.write("c/pubspec.yaml", "name: c\ndependencies:\n  browser: any\n  shared:\n    path: ../shared\n");
+        project.write("c/pubspec.lock", HOSTED_LOCK
+                + "  shared:\n    description:\n      path: ../shared\n    source: path\n    version: \"0.0.1\"\n");
+
+        PubMojo mojo = project.configure(new PubMojo(), sdk, 2);
+        File shared = new File(project.getRoot(), "target/pub-shared");
+        FakeProject.set(mojo, "discoverPackages", true);
+        FakeProject.set(mojo, "sharePackages", true);
+        FakeProject.set(mojo, "sharedPackagesDirectory", shared);
+        File log = new File(Files.createTempDir(), "tools.log");
+        mojo.environmentVariables.put("FAKE_DART_LOG", log.getAbsolutePath());
+        mojo.execute();
+
+        // one resolution for a and b, pub for c with its location specific lock file
+        List<String> runs = Files.readLines(log, Charsets.UTF_8);
+        Assert.assertEquals(runs.size(), 2, runs.toString());
+        int sharedRuns = 0;
+        for (String run : runs) {
+            sharedRuns += run.startsWith("pub " + shared.getAbsolutePath() + "/") ? 1 : 0;
+        }
+        Assert.assertEquals(sharedRuns, 1, runs.toString());
+        Assert.assertTrue(runs.contains("pub " + new File(project.getRoot(), "c").getAbsolutePath() + " install"),
+                runs.toString());
+        for (String name : new String[] {"a", "b", "c"}) {
+            Assert.assertTrue(new File(project.getRoot(), name + "/packages/browser/dart.js").isFile(), name);
+        }
+        Assert.assertTrue(java.nio.file.Files.isSymbolicLink(
+                new File(project.getRoot(), "a/web/packages").toPath()));
+    }
+
+    @Test(expectedExceptions = MojoExecutionException.class)
+    public void testFailingTool() throws Exception {
+        FakeProject project = new FakeProject();
+        project.write("pubspec.yaml", "name: app\n");
+        PubMojo mojo = project.configure(new PubMojo(), sdk, 1);
+        mojo.environmentVariables.put("FAKE_DART_EXIT", "1");
+        mojo.execute();
+    }
+}
@@ -0,0 +1,237 @@
+package com.google.dart;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+@Test
+public class TestServeMojo {
+
+    private File sdk;
+
+    private FakeProject project;
+
+    private File log;
+
+    private ServeMojo mojo;
+
+    private Thread server;
+
+    private int port;
+
+    @BeforeClass
+    public void createSdk() throws IOException {
+        if (!System.getProperty("os.name").toLowerCase(Locale.US).contains("linux")) {
+            throw new SkipException("needs linux for the fake dart sdk");
+        }
+        sdk = new FakeDartSdk(new File(Files.createTempDir(), "dart-sdk")).create();
+    }
+
+    @BeforeMethod
+    public void createProject() throws Exception {
+        project = new FakeProject();
+        project.write("dwc/index.html", "<html></html>\n");
+        project.write("src/web/main.dart", "import '../lib/shared.dart';\n\nmain() {}\n");
+        project.write("src/lib/shared.dart", "library shared;\n");
+        project.write("secret.txt", "secret\n");
+        log = new File(Files.createTempDir(), "tools.log");
+
+        mojo = project.configure(new ServeMojo(), sdk, 1);
+        mojo.sourceDirectory = new File(project.getRoot(), "src");
+        FakeProject.set(mojo, "dwcSourceDirectory", new File(project.getRoot(), "dwc"));
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        FakeProject.set(mojo, "port", port);
+        mojo.environmentVariables.put("FAKE_DART_LOG", log.getAbsolutePath());
+    }
+
+    @AfterMethod
+    public void stopServer() throws InterruptedException {
+        if (server != null) {
+            server.interrupt();
+            server.join(10000);
+            server = null;
+        }
+    }
+
+    private void startServer() throws Exception {
+        server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mojo.execute();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        server.start();
+        for (int i = 0; ; i++) {
+            try {
+                request("/index.html", null, null).disconnect();
+                return;
+            } catch (ConnectException e) {
+                if (i == 100) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private HttpURLConnection request(String path, String ifNoneMatch, String acceptEncoding) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path)
+                .openConnection();
+        if (ifNoneMatch != null) {
+            connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        if (acceptEncoding != null) {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        }
+        connection.getResponseCode();
+        return connection;
+    }
+
+    private static String body(HttpURLConnection connection) throws IOException {
+        InputStream stream = connection.getResponseCode() < 400 ? connection.getInputStream()
+                : connection.getErrorStream();
+        try (InputStream in = "gzip".equals(connection.getContentEncoding()) ? new GZIPInputStream(stream)
+                : stream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteStreams.copy(in, out);
+            return new String(out.toByteArray(), Charsets.UTF_8);
+        }
+    }
+
+    private int compilations() throws IOException {
+        int compilations = 0;
+        if (log.isFile()) {
+            for (String line : Files.readLines(log, Charsets.UTF_8)) {
+                if (line.startsWith("dart2js ")) {
+                    compilations++;
+                }
+            }
+        }
+        return compilations;
+    }
+
+    @Test
+    public void testAnswersMatchingEtagWithNotModified() throws Exception {
+        startServer();
+        for (String path : new String[] {"/index.html", "/web/main.dart", "/web/main.dart.js"}) {
+            HttpURLConnection response = request(path, null, null);
+            Assert.assertEquals(response.getResponseCode(), 200, path);
+            String etag = response.getHeaderField("ETag");
+            Assert.assertNotNull(etag, path);
+            body(response);
+
+            Assert.assertEquals(request(path, etag, null).getResponseCode(), 304, path);
+            Assert.assertEquals(request(path, "\"other\"", null).getResponseCode(), 200, path);
+        }
+        Assert.assertEquals(compilations(), 1);
+
+        project.write("src/lib/shared.dart", "library shared;\n\nconst answer = 42;\n");
+        HttpURLConnection response = request("/web/main.dart.js", null, null);
+        Assert.assertEquals(response.getResponseCode(), 200);
+        Assert.assertEquals(compilations(), 2, "a changed import");
+    }
+
+    @Test
+    public void testSendsGzipIfAccepted() throws Exception {
+        startServer();
+        HttpURLConnection plain = request("/web/main.dart.js", null, null);
+        Assert.assertEquals(plain.getResponseCode(), 200);
+        Assert.assertNull(plain.getContentEncoding());
+        Assert.assertEquals(plain.getHeaderField("Vary"), "Accept-Encoding");
+        Assert.assertEquals(body(plain), "// compiled\n");
+
+        HttpURLConnection compressed = request("/web/main.dart.js", null, "deflate, gzip");
+        Assert.assertEquals(compressed.getResponseCode(), 200);
+        Assert.assertEquals(compressed.getContentEncoding(), "gzip");
+        Assert.assertEquals(compressed.getHeaderField("Vary"), "Accept-Encoding");
+        Assert.assertEquals(body(compressed), "// compiled\n");
+
+        HttpURLConnection source = request("/web/main.dart", null, "gzip");
+        Assert.assertNull(source.getContentEncoding(), "no compressed variant of a source");
+        Assert.assertEquals(source.getHeaderField("Vary"), "Accept-Encoding");
+    }
+
+    @Test
+    public void testConcurrentRequestsShareCompilation() throws Exception {
+        mojo.environmentVariables.put("FAKE_DART_LATENCY", "1");
+        startServer();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Integer>> responses = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                responses.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        return request("/web/main.dart.js", null, null).getResponseCode();
+                    }
+                }));
+            }
+            for (Future<Integer> response : responses) {
+                Assert.assertEquals(response.get().intValue(), 200);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(compilations(), 1);
+    }
+
+    @Test
+    public void testRetriesFailedCompilation() throws Exception {
+        mojo.environmentVariables.put("FAKE_DART_EXIT", "1");
+        mojo.environmentVariables.put("FAKE_DART_STDERR", "true");
+        mojo.environmentVariables.put("FAKE_DART_LINES", "1");
+        startServer();
+        HttpURLConnection failed = request("/web/main.dart.js", null, null);
+        Assert.assertEquals(failed.getResponseCode(), 500);
+        String message = body(failed);
+        Assert.assertTrue(message.contains("dart2js output line 0"), message);
+        Assert.assertTrue(message.contains("dart2js error line 0"), message);
+
+        mojo.environmentVariables.remove("FAKE_DART_EXIT");
+        Assert.assertEquals(request("/web/main.dart.js", null, null).getResponseCode(), 200);
+        Assert.assertEquals(compilations(), 2);
+    }
+
+    @Test
+    public void testServesNothingOutsideOfTheDirectories() throws Exception {
+        File link = new File(project.getRoot(), "src/packages/browser");
+        java.nio.file.Files.createDirectories(link.getParentFile().toPath());
+        java.nio.file.Files.createSymbolicLink(link.toPath(), new File(sdk, "pub-cache/browser/lib").toPath());
+        startServer();
+        Assert.assertEquals(request("/packages/browser/dart.js", null, null).getResponseCode(), 200,
+                "a link in the packages directory");
+        Assert.assertEquals(request("/%2e%2e/secret.txt", null, null).getResponseCode(), 404);
+        Assert.assertEquals(request("/web/%2e%2e/%2e%2e/secret.txt", null, null).getResponseCode(), 404);
+        Assert.assertEquals(request("/web/..%2f..%2fsecret.txt", null, null).getResponseCode(), 404);
+    }
+}
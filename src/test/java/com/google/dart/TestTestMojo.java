@@ -0,0 +1,56 @@
+package com.google.dart;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+@Test
+public class TestTestMojo {
+
+    private File sdk;
+
+    @BeforeClass
+    public void createSdk() throws IOException {
+        if (!System.getProperty("os.name").toLowerCase(Locale.US).contains("linux")) {
+            throw new SkipException("needs linux for the fake dart sdk");
+        }
+        sdk = new FakeDartSdk(new File(Files.createTempDir(), "dart-sdk")).create();
+    }
+
+    @Test
+    public void testRunsTestsWithTheirPackageRoot() throws Exception {
+        FakeProject project = new FakeProject();
+        for (String name : new String[] {"a", "b"}) {
+            project.write(name + "/pubspec.yaml", "name: " + name + "\n");
+            project.write(name + "/test/all_test.dart", "main() {}\n");
+        }
+        TestMojo mojo = project.configure(new TestMojo(), sdk, 2);
+        FakeProject.set(mojo, "discoverPackages", true);
+        FakeProject.set(mojo, "checkedMode", true);
+        File log = new File(Files.createTempDir(), "tools.log");
+        mojo.environmentVariables.put("FAKE_DART_LOG", log.getAbsolutePath());
+        mojo.execute();
+
+        List<String> runs = Files.readLines(log, Charsets.UTF_8);
+        Assert.assertEquals(runs.size(), 2, runs.toString());
+        for (String name : new String[] {"a", "b"}) {
+            File packageDirectory = new File(project.getRoot(), name);
+            String arguments = "--checked --package-root=" + new File(packageDirectory, "packages") + "/ "
+                    + new File(packageDirectory, "test/all_test.dart");
+            boolean found = false;
+            for (String run : runs) {
+                found |= run.endsWith(" " + arguments);
+            }
+            Assert.assertTrue(found, arguments + " in " + runs);
+        }
+    }
+}
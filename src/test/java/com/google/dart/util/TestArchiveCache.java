@@ -0,0 +1,75 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+
+@Test
+public class TestArchiveCache {
+
+    @Test
+    public void testExtractTarGz() throws Exception {
+        if (!System.getProperty("os.name").toLowerCase(Locale.US).contains("linux")) {
+            return;
+        }
+        File archive = createSdkArchive();
+        File cacheDirectory = com.google.common.io.Files.createTempDir();
+        String sha256 = com.google.common.io.Files.hash(archive, Hashing.sha256()).toString();
+
+        File extracted = new ArchiveCache(cacheDirectory).extract(archive, "sdk/1.0", sha256);
+        File sdk = new File(extracted, "dart-sdk");
+        Assert.assertEquals(com.google.common.io.Files.toString(new File(sdk, "version"), Charsets.UTF_8), "1.0\n");
+        Assert.assertTrue(new File(sdk, "bin/dart").canExecute());
+        Assert.assertFalse(new File(sdk, "version").canExecute());
+        Assert.assertTrue(Files.isSymbolicLink(new File(sdk, "bin/dart2js").toPath()));
+        Assert.assertTrue(new File(sdk, "lib/" + Strings.repeat("long", 40) + "/x.dart").isFile());
+
+        // extracted once, reused by other caches on the same directory
+        Assert.assertEquals(new ArchiveCache(cacheDirectory).extract(archive, "sdk/1.0", sha256), extracted);
+    }
+
+    @Test
+    public void testChecksumMismatch() throws Exception {
+        if (!System.getProperty("os.name").toLowerCase(Locale.US).contains("linux")) {
+            return;
+        }
+        File archive = createSdkArchive();
+        File cacheDirectory = com.google.common.io.Files.createTempDir();
+        try {
+            new ArchiveCache(cacheDirectory).extract(archive, "sdk/1.0", Strings.repeat("0", 64));
+            Assert.fail("extracted an archive with a wrong checksum");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("Checksum mismatch"), e.getMessage());
+        }
+        Assert.assertFalse(new File(cacheDirectory, "sdk/1.0/dart-sdk").exists());
+    }
+
+    private File createSdkArchive() throws Exception {
+        File directory = com.google.common.io.Files.createTempDir();
+        File sdk = new File(directory, "dart-sdk");
+        File dart = new File(sdk, "bin/dart");
+        com.google.common.io.Files.createParentDirs(dart);
+        com.google.common.io.Files.write("#!/bin/sh\n", dart, Charsets.UTF_8);
+        Assert.assertTrue(dart.setExecutable(true, false));
+        Files.createSymbolicLink(new File(sdk, "bin/dart2js").toPath(), new File("dart").toPath());
+        com.google.common.io.Files.write("1.0\n", new File(sdk, "version"), Charsets.UTF_8);
+        File nested = new File(sdk, "lib/" + Strings.repeat("long", 40) + "/x.dart");
+        com.google.common.io.Files.createParentDirs(nested);
+        com.google.common.io.Files.write("main() {}\n", nested, Charsets.UTF_8);
+
+        File archive = new File(directory, "dart-sdk.tar.gz");
+        ProcessRunner tar = new ProcessRunner(Arrays.asList("tar", "czf", archive.getAbsolutePath(), "-C",
+                directory.getAbsolutePath(), "dart-sdk"));
+        Assert.assertEquals(tar.run(), 0);
+        return archive;
+    }
+}
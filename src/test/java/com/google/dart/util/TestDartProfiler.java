@@ -0,0 +1,141 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the profiler against a fake VM service with one isolate paused at its exit.
+ */
+@Test
+public class TestDartProfiler {
+
+    private static final String CPU_SAMPLES = "{\"jsonrpc\":\"2.0\",\"result\":{\"type\":\"CpuSamples\","
+            + "\"sampleCount\":200,\"functions\":["
+            + "{\"kind\":\"Dart\",\"inclusiveTicks\":200,\"exclusiveTicks\":20,\"resolvedUrl\":\"file:///gen.dart\","
+            + "\"function\":{\"type\":\"@Function\",\"name\":\"main\","
+            + "\"owner\":{\"type\":\"@Library\",\"name\":\"gen\"}}},"
+            + "{\"kind\":\"Dart\",\"inclusiveTicks\":150,\"exclusiveTicks\":150,\"resolvedUrl\":\"file:///gen.dart\","
+            + "\"function\":{\"type\":\"@Function\",\"name\":\"render\","
+            + "\"owner\":{\"type\":\"@Class\",\"name\":\"Template\"}}}]},\"id\":\"1\"}";
+
+    private final Map<String, String> responses = new HashMap<>();
+
+    /**
+     * Methods the service does not answer for a while, like a VM that hangs.
+     */
+    private final Set<String> hanging = new HashSet<>();
+
+    private HttpServer server;
+
+    private volatile DartProfiler profiler;
+
+    @BeforeMethod
+    public void startService() throws IOException {
+        hanging.clear();
+        responses.put("getVM", "{\"jsonrpc\":\"2.0\",\"result\":{\"type\":\"VM\","
+                + "\"isolates\":[{\"type\":\"@Isolate\",\"id\":\"isolates/1\",\"name\":\"main\"}]},\"id\":\"1\"}");
+        responses.put("getIsolate", "{\"jsonrpc\":\"2.0\",\"result\":{\"type\":\"Isolate\",\"id\":\"isolates/1\","
+                + "\"pauseEvent\":{\"type\":\"Event\",\"kind\":\"PauseExit\"}},\"id\":\"1\"}");
+        responses.put("getCpuSamples", CPU_SAMPLES);
+        responses.put("getVMTimeline", "{\"jsonrpc\":\"2.0\",\"result\":{\"type\":\"Timeline\","
+                + "\"traceEvents\":[]},\"id\":\"1\"}");
+        responses.put("resume", "{\"jsonrpc\":\"2.0\",\"result\":{\"type\":\"Success\"},\"id\":\"1\"}");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String method = exchange.getRequestURI().getPath().substring(1);
+                if (hanging.contains(method)) {
+                    try {
+                        Thread.sleep(60000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                String response = responses.get(method);
+                if (response == null) {
+                    response = "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32601,\"message\":\"Method not found\"}}";
+                }
+                if (method.equals("resume")) {
+                    profiler.finished();
+                }
+                byte[] body = response.getBytes(Charsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).build()));
+        server.start();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopService() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCapture() throws Exception {
+        File directory = Files.createTempDir();
+        profiler = new DartProfiler(server.getAddress().getPort(), directory);
+
+        Assert.assertEquals(profiler.capture(), 1);
+
+        Assert.assertEquals(Files.toString(new File(directory, "cpu-main.json"), Charsets.UTF_8), CPU_SAMPLES);
+        Assert.assertTrue(new File(directory, "timeline.json").isFile());
+        Assert.assertEquals(profiler.getSampleCount(), 200);
+        List<DartProfiler.HotFunction> hot = profiler.getHotFunctions(1);
+        Assert.assertEquals(hot.size(), 1);
+        Assert.assertEquals(hot.get(0).getName(), "Template.render");
+        Assert.assertEquals(hot.get(0).getExclusiveTicks(), 150);
+    }
+
+    @Test(timeOut = 30000)
+    public void testHangingServiceTimesOut() throws Exception {
+        hanging.add("getCpuSamples");
+        hanging.add("_getCpuProfile");
+        File directory = Files.createTempDir();
+        profiler = new DartProfiler(server.getAddress().getPort(), directory).setReadTimeout(200);
+
+        // the isolate is resumed without a profile
+        Assert.assertEquals(profiler.capture(), 1);
+        Assert.assertFalse(new File(directory, "cpu-main.json").exists());
+    }
+
+    @Test
+    public void testServiceUrlFromOutput() throws Exception {
+        File directory = Files.createTempDir();
+        profiler = new DartProfiler(1, directory);
+        profiler.watch(new StreamConsumer() {
+            @Override
+            public void consumeLine(String line) {
+            }
+        }).consumeLine("Observatory listening on http://127.0.0.1:" + server.getAddress().getPort() + "/");
+
+        Assert.assertEquals(profiler.capture(), 1);
+    }
+}
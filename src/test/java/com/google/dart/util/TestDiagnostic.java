@@ -0,0 +1,73 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+
+@Test
+public class TestDiagnostic {
+
+    @Test
+    public void testParseMachineFormat() {
+        Diagnostic diagnostic = Diagnostic.parseMachineFormat(
+                "WARNING|STATIC_TYPE_WARNING|UNDEFINED_METHOD|/src/web/app.dart|12|7|3|The method 'a\\|b' is not defined");
+        Assert.assertNotNull(diagnostic);
+        Assert.assertEquals(diagnostic.getSeverity(), Diagnostic.Severity.WARNING);
+        Assert.assertEquals(diagnostic.getFile(), new File("/src/web/app.dart"));
+        Assert.assertEquals(diagnostic.getLine(), 12);
+        Assert.assertEquals(diagnostic.getColumn(), 7);
+        Assert.assertEquals(diagnostic.getMessage(), "The method 'a|b' is not defined");
+
+        Assert.assertEquals(Diagnostic.parseMachineFormat(diagnostic.toMachineFormat()), diagnostic);
+        Assert.assertNull(Diagnostic.parseMachineFormat("Analyzing [web/app.dart]..."));
+    }
+
+    @Test
+    public void testDart2JsCollectorWithholdsDiagnostics() {
+        CommandLineUtils.StringStreamConsumer output = new CommandLineUtils.StringStreamConsumer();
+        Diagnostic.Dart2JsCollector collector = new Diagnostic.Dart2JsCollector(output, new File("/src"), false);
+        for (String line : Arrays.asList("Compiling web/app.dart",
+                "lib/shared.dart:3:5:", "Warning: Cannot resolve 'foo'.", "    foo();", "    ^^^",
+                "web/app.dart:1:1: Hint: Unused import.", "Compiled 1 file")) {
+            collector.consumeLine(line);
+        }
+        collector.flush();
+
+        Assert.assertEquals(output.getOutput().trim().split("\\R"),
+                new String[] {"Compiling web/app.dart", "Compiled 1 file"});
+        Assert.assertEquals(collector.getDiagnostics().size(), 2);
+        Assert.assertEquals(collector.getDiagnostics().get(0).getFile(), new File("/src/lib/shared.dart"));
+    }
+
+    @Test
+    public void testReportDeduplicates() {
+        Diagnostic shared = new Diagnostic(new File("/src/lib/shared.dart"), 3, 5, Diagnostic.Severity.WARNING,
+                "Cannot resolve 'foo'.");
+        Diagnostic error = new Diagnostic(new File("/src/web/b.dart"), 1, 1, Diagnostic.Severity.ERROR, "Oops");
+        DiagnosticReport report = new DiagnosticReport();
+        report.add("web/a.dart", Collections.singletonList(shared));
+        report.add("web/b.dart", Arrays.asList(shared, error));
+
+        Map<Diagnostic, Set<String>> entries = report.getEntries();
+        Assert.assertEquals(entries.keySet().toArray(), new Diagnostic[] {error, shared});
+        Assert.assertEquals(entries.get(shared).size(), 2);
+        Assert.assertTrue(report.toJson(new File("/src")).contains("{\"file\": \"lib/shared.dart\", \"line\": 3, "
+                + "\"column\": 5, \"severity\": \"warning\", \"message\": \"Cannot resolve 'foo'.\", "
+                + "\"entrypoints\": [\"web/a.dart\", \"web/b.dart\"]}"));
+    }
+
+    @Test
+    public void testPartOf() {
+        Assert.assertTrue(new DartSource(new File("a.dart"), "// comment\npart of app;\n").isPart());
+        Assert.assertFalse(new DartSource(new File("b.dart"), "library app;\n// part of other;\npart 'a.dart';\n")
+                .isPart());
+    }
+
+}
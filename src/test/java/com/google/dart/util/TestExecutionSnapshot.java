@@ -0,0 +1,111 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+@Test
+public class TestExecutionSnapshot {
+
+    private static final long PAST = 1000000000000L;
+
+    private File root;
+
+    private File sources;
+
+    private File snapshotFile;
+
+    @BeforeMethod
+    public void createTree() throws IOException {
+        root = Files.createTempDir();
+        sources = new File(root, "sources");
+        write(new File(sources, "web/main.dart"), "main() {}");
+        write(new File(root, "pub-cache/browser-1/lib/dart.js"), "// 1");
+        write(new File(root, "pub-cache/browser-2/lib/dart.js"), "// 2");
+        new File(sources, "packages").mkdirs();
+        java.nio.file.Files.createSymbolicLink(link(), new File(root, "pub-cache/browser-1/lib").toPath());
+        snapshotFile = new File(root, "snapshot");
+        new ExecutionSnapshot("key").addTree(sources).write(snapshotFile);
+    }
+
+    private Path link() {
+        return new File(sources, "packages/browser").toPath();
+    }
+
+    private void resetTimestamps() {
+        setPast(sources);
+        setPast(new File(sources, "web"));
+        setPast(new File(sources, "packages"));
+        setPast(new File(sources, "web/main.dart"));
+    }
+
+    @Test
+    public void testMatches() throws IOException {
+        resetTimestamps();
+        new ExecutionSnapshot("key").addTree(sources).write(snapshotFile);
+        Assert.assertTrue(ExecutionSnapshot.matches(snapshotFile, "key"));
+        Assert.assertFalse(ExecutionSnapshot.matches(snapshotFile, "other key"));
+    }
+
+    @Test
+    public void testDoesNotFollowLinks() throws IOException {
+        ExecutionSnapshot snapshot = new ExecutionSnapshot("key").addTree(sources);
+        // sources, web, web/main.dart, packages and the link
+        Assert.assertEquals(snapshot.size(), 5);
+
+        write(new File(root, "pub-cache/browser-1/lib/dart.js"), "// changed in place");
+        Assert.assertTrue(ExecutionSnapshot.matches(snapshotFile, "key"));
+    }
+
+    @Test
+    public void testTouchedFile() throws IOException {
+        resetTimestamps();
+        new ExecutionSnapshot("key").addTree(sources).write(snapshotFile);
+        Assert.assertTrue(new File(sources, "web/main.dart").setLastModified(PAST + 1000));
+        Assert.assertFalse(ExecutionSnapshot.matches(snapshotFile, "key"));
+    }
+
+    @Test
+    public void testAddedFile() throws IOException {
+        resetTimestamps();
+        new ExecutionSnapshot("key").addTree(sources).write(snapshotFile);
+        write(new File(sources, "web/view.dart"), "class View {}");
+        Assert.assertFalse(ExecutionSnapshot.matches(snapshotFile, "key"));
+    }
+
+    @Test
+    public void testRemovedFile() throws IOException {
+        resetTimestamps();
+        new ExecutionSnapshot("key").addTree(sources).write(snapshotFile);
+        Assert.assertTrue(new File(sources, "web/main.dart").delete());
+        setPast(new File(sources, "web"));
+        Assert.assertFalse(ExecutionSnapshot.matches(snapshotFile, "key"));
+    }
+
+    @Test
+    public void testRetargetedLink() throws IOException {
+        resetTimestamps();
+        new ExecutionSnapshot("key").addTree(sources).write(snapshotFile);
+        java.nio.file.Files.delete(link());
+        java.nio.file.Files.createSymbolicLink(link(), new File(root, "pub-cache/browser-2/lib").toPath());
+        // only the link tells
+        resetTimestamps();
+        Assert.assertFalse(ExecutionSnapshot.matches(snapshotFile, "key"));
+    }
+
+    private static void setPast(File file) {
+        Assert.assertTrue(file.setLastModified(PAST), file.getPath());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.createParentDirs(file);
+        Files.write(content, file, Charsets.UTF_8);
+    }
+}
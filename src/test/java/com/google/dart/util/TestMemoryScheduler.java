@@ -0,0 +1,92 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.io.Files;
+
+@Test
+public class TestMemoryScheduler {
+
+    /**
+     * A scheduler on a machine with a fixed amount of available memory.
+     */
+    private static class FixedMemoryScheduler extends MemoryScheduler {
+
+        private volatile long available;
+
+        FixedMemoryScheduler(File peaksFile, long defaultEstimate, long available) {
+            super(peaksFile, defaultEstimate, 0);
+            this.available = available;
+        }
+
+        @Override
+        protected long readAvailableMemory() {
+            return available;
+        }
+    }
+
+    @Test
+    public void testAdmission() throws Exception {
+        final FixedMemoryScheduler scheduler = new FixedMemoryScheduler(new File(Files.createTempDir(), "peaks"),
+                600, 1000);
+        MemoryScheduler.Ticket first = scheduler.acquire("a");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<MemoryScheduler.Ticket> second = executor.submit(new Callable<MemoryScheduler.Ticket>() {
+                @Override
+                public MemoryScheduler.Ticket call() throws InterruptedException {
+                    return scheduler.acquire("b");
+                }
+            });
+            try {
+                second.get(500, TimeUnit.MILLISECONDS);
+                Assert.fail("admitted without memory");
+            } catch (TimeoutException e) {
+                // waits for the first process
+            }
+            scheduler.release(first, false);
+            Assert.assertTrue(second.get(5, TimeUnit.SECONDS).getWaitMillis() > 0);
+        } finally {
+            executor.shutdownNow();
+            scheduler.close();
+        }
+    }
+
+    @Test
+    public void testOneProcessAlwaysAdmitted() throws Exception {
+        FixedMemoryScheduler scheduler = new FixedMemoryScheduler(new File(Files.createTempDir(), "peaks"), 600, 0);
+        Assert.assertEquals(scheduler.acquire("a").getWaitMillis(), 0);
+        scheduler.close();
+    }
+
+    @Test
+    public void testLearnsPeak() throws Exception {
+        if (!System.getProperty("os.name").toLowerCase(Locale.US).contains("linux")) {
+            return;
+        }
+        File peaks = new File(Files.createTempDir(), "peaks");
+        MemoryScheduler scheduler = new MemoryScheduler(peaks, 1, 0);
+        MemoryScheduler.Ticket ticket = scheduler.acquire("sleep");
+        ProcessRunner runner = new ProcessRunner(Arrays.asList("sh", "-c", "sleep 0.5")).addListener(ticket);
+        Assert.assertEquals(runner.run(), 0);
+        Assert.assertTrue(ticket.getPeak() > 0);
+        scheduler.release(ticket, true);
+        scheduler.close();
+
+        MemoryScheduler reloaded = new MemoryScheduler(peaks, 1, 0);
+        Assert.assertTrue(reloaded.estimate("sleep") > ticket.getPeak());
+        reloaded.close();
+    }
+}
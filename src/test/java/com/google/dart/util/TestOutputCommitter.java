@@ -0,0 +1,74 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+@Test
+public class TestOutputCommitter {
+
+    @Test
+    public void testCommitDirectory() throws Exception {
+        File root = Files.createTempDir();
+        File staging = new File(root, "staging");
+        File target = new File(root, "target");
+        write(new File(staging, "index.html"), "<html>");
+        write(new File(staging, "lib/main.dart"), "main() {}");
+        OutputCommitter.Result first = OutputCommitter.commitDirectory(staging.toPath(), target.toPath());
+        Assert.assertEquals(first.getUpdated(), 2);
+        Assert.assertEquals(first.getDeleted(), 0);
+        Assert.assertEquals(Files.toString(new File(target, "lib/main.dart"), Charsets.UTF_8), "main() {}");
+        Assert.assertFalse(staging.exists());
+
+        File unchanged = new File(target, "index.html");
+        long lastModified = unchanged.lastModified() - 60000;
+        Assert.assertTrue(unchanged.setLastModified(lastModified));
+        write(new File(staging, "index.html"), "<html>");
+        write(new File(staging, "lib/main.dart"), "main() { print(1); }");
+        write(new File(staging, "lib/view.dart"), "class View {}");
+        OutputCommitter.Result second = OutputCommitter.commitDirectory(staging.toPath(), target.toPath());
+        Assert.assertEquals(second.getUpdated(), 2);
+        Assert.assertEquals(second.getUnchanged(), 1);
+        Assert.assertEquals(second.getDeleted(), 0);
+        Assert.assertEquals(unchanged.lastModified(), lastModified);
+        Assert.assertEquals(Files.toString(new File(target, "lib/main.dart"), Charsets.UTF_8),
+                "main() { print(1); }");
+
+        write(new File(staging, "index.html"), "<html>");
+        OutputCommitter.Result third = OutputCommitter.commitDirectory(staging.toPath(), target.toPath());
+        Assert.assertEquals(third.getUnchanged(), 1);
+        Assert.assertEquals(third.getDeleted(), 1);
+        Assert.assertTrue(unchanged.isFile());
+        Assert.assertFalse(new File(target, "lib").exists());
+    }
+
+    @Test
+    public void testHardLinkIsUnchanged() throws Exception {
+        File root = Files.createTempDir();
+        File source = new File(root, "main.dart.js");
+        write(source, "// compiled");
+        File staging = new File(root, "staging");
+        File target = new File(root, "target");
+        Assert.assertTrue(staging.mkdirs());
+        java.nio.file.Files.createLink(new File(staging, "main.dart.js").toPath(), source.toPath());
+        OutputCommitter.commitDirectory(staging.toPath(), target.toPath());
+
+        Assert.assertTrue(staging.mkdirs());
+        java.nio.file.Files.createLink(new File(staging, "main.dart.js").toPath(), source.toPath());
+        Assert.assertTrue(OutputCommitter.sameContent(new File(staging, "main.dart.js").toPath(),
+                new File(target, "main.dart.js").toPath()));
+        OutputCommitter.Result result = OutputCommitter.commitDirectory(staging.toPath(), target.toPath());
+        Assert.assertEquals(result.getUnchanged(), 1);
+        Assert.assertEquals(result.getUpdated(), 0);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.createParentDirs(file);
+        Files.write(content, file, Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,80 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+@Test
+public class TestPackageGraph {
+
+    private Pub app;
+    private Pub core;
+    private Pub ui;
+    private Pub tool;
+
+    @BeforeMethod
+    public void createPackages() throws IOException {
+        File root = Files.createTempDir();
+        core = createPackage(root, "core", "");
+        ui = createPackage(root, "ui", "  core:\n    path: ../core\n");
+        app = createPackage(root, "app", "  ui:\n    path: ../ui\n  core:\n    path: ../core\n  browser: any\n");
+        tool = createPackage(root, "tool", "");
+    }
+
+    private Pub createPackage(File root, String name, String dependencies) throws IOException {
+        File pubspec = new File(root, name + "/pubspec.yaml");
+        Files.createParentDirs(pubspec);
+        Files.write("name: " + name + "\ndependencies:\n" + dependencies, pubspec, Charsets.UTF_8);
+        return Pub.load(pubspec);
+    }
+
+    @Test
+    public void testTopologicalOrder() {
+        PackageGraph graph = new PackageGraph(Arrays.asList(app, ui, tool, core));
+        List<Pub> order = graph.getTopologicalOrder();
+        Assert.assertEquals(order.size(), 4);
+        Assert.assertTrue(order.indexOf(core) < order.indexOf(ui));
+        Assert.assertTrue(order.indexOf(ui) < order.indexOf(app));
+        Assert.assertEquals(graph.getDependencies(app), new HashSet<>(Arrays.asList(ui, core)));
+    }
+
+    @Test
+    public void testExecuteSkipsDependentsOfFailures() throws InterruptedException {
+        PackageGraph graph = new PackageGraph(Arrays.asList(app, ui, tool, core));
+        final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Map<Pub, Throwable> failures = graph.execute(executor, new PackageGraph.Task() {
+                @Override
+                public void run(Pub pub) throws Exception {
+                    executed.add(pub.getName());
+                    if (pub == ui) {
+                        throw new IOException("ui failed");
+                    }
+                }
+            });
+            Assert.assertEquals(failures.keySet(), new HashSet<>(Arrays.asList(ui, app)));
+            Assert.assertEquals(failures.get(ui).getMessage(), "ui failed");
+            Assert.assertFalse(executed.contains("app"));
+            Assert.assertTrue(executed.contains("tool"));
+            Assert.assertTrue(executed.indexOf("core") < executed.indexOf("ui"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
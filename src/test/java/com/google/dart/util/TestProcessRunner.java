@@ -0,0 +1,71 @@
+package com.google.dart.util;
+
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Test
+public class TestProcessRunner {
+
+    @BeforeMethod
+    public void requireShell() {
+        if (OsUtil.isWindows()) {
+            throw new SkipException("needs /bin/sh");
+        }
+    }
+
+    @Test
+    public void testExitCodeAndOutput() throws IOException, InterruptedException {
+        CommandLineUtils.StringStreamConsumer output = new CommandLineUtils.StringStreamConsumer();
+        CommandLineUtils.StringStreamConsumer error = new CommandLineUtils.StringStreamConsumer();
+        int exitCode = new ProcessRunner(Arrays.asList("/bin/sh", "-c", "echo $GREETING; echo oops >&2; exit 3"))
+                .setEnvironment(Collections.singletonMap("GREETING", "hello"))
+                .setOutput(output)
+                .setError(error)
+                .run();
+        Assert.assertEquals(exitCode, 3);
+        Assert.assertEquals(output.getOutput().trim(), "hello");
+        Assert.assertEquals(error.getOutput().trim(), "oops");
+    }
+
+    @Test
+    public void testCancelIsNoTimeout() throws Exception {
+        final ProcessRunner runner = new ProcessRunner(Arrays.asList("/bin/sh", "-c", "sleep 30"));
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    runner.cancel();
+                }
+            }, 300, TimeUnit.MILLISECONDS);
+            Assert.assertNotEquals(runner.run(), 0);
+            Assert.assertTrue(runner.isCancelled());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTimeoutKillsProcessTree() throws InterruptedException, IOException {
+        long start = System.currentTimeMillis();
+        try {
+            new ProcessRunner(Arrays.asList("/bin/sh", "-c", "sleep 30 & sleep 30; wait"))
+                    .setTimeout(500)
+                    .run();
+            Assert.fail("expected timeout");
+        } catch (ProcessRunner.TimeoutException e) {
+            Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+        }
+    }
+
+}
@@ -15,4 +15,44 @@ public class TestPub {
         Assert.assertEquals(thePub.getName(), "darterop");
     }
 
+    @Test
+    public void testDependencies() throws FileNotFoundException {
+        Pub thePub = new Pub(new File(getClass().getResource("pubspec.yaml").getFile()));
+        Assert.assertEquals(thePub.getVersion(), "0.1.0");
+        Assert.assertEquals(thePub.getDependencies().size(), 4);
+
+        PubDependency browser = thePub.getDependencies().get("browser");
+        Assert.assertEquals(browser.getSource(), PubDependency.Source.HOSTED);
+        Assert.assertEquals(browser.getVersion(), "any");
+
+        PubDependency webUi = thePub.getDependencies().get("web_ui");
+        Assert.assertEquals(webUi.getSource(), PubDependency.Source.GIT);
+        Assert.assertEquals(webUi.getLocation(), "git://github.com/dart-lang/web-ui.git");
+        Assert.assertEquals(webUi.getRef(), "master");
+
+        PubDependency piffle = thePub.getDependencies().get("piffle_core");
+        Assert.assertTrue(piffle.isPath());
+        Assert.assertEquals(piffle.resolvePath(thePub.getPath()), new File(thePub.getPath(), "../piffle_core"));
+
+        PubDependency unittest = thePub.getDevDependencies().get("unittest");
+        Assert.assertEquals(unittest.getVersion(), ">=0.5.0 <0.6.0");
+    }
+
+    @Test
+    public void testReadLockFile() throws FileNotFoundException {
+        Pub thePub = Pub.load(new File(getClass().getResource("pubspec.yaml").getFile()));
+        PubLock lock = thePub.getLock();
+        Assert.assertNotNull(lock);
+        Assert.assertEquals(lock.getPackages().size(), 4);
+        Assert.assertEquals(lock.getPackages().get("browser").getVersion(), "0.5.20");
+        Assert.assertEquals(lock.getPackages().get("web_ui").getSource(), PubDependency.Source.GIT);
+        Assert.assertTrue(lock.hasPathPackages());
+    }
+
+    @Test
+    public void testLoadIsCached() throws FileNotFoundException {
+        File file = new File(getClass().getResource("pubspec.yaml").getFile());
+        Assert.assertSame(Pub.load(file), Pub.load(file));
+    }
+
 }
@@ -0,0 +1,57 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+@Test
+public class TestSourceIndex {
+
+    @Test
+    public void testClassification() throws IOException {
+        File dir = Files.createTempDir();
+        SourceIndex index = new SourceIndex(new File(dir, "index"));
+
+        Assert.assertTrue(index.classify(write(dir, "app.dart", "library app;\n\nvoid main() {\n}\n")).isEntrypoint());
+        Assert.assertTrue(index.classify(write(dir, "short.dart", "main() => print('hi');\n")).isEntrypoint());
+        Assert.assertFalse(index.classify(write(dir, "lib.dart", "library lib;\n\nclass A {\n  main() {}\n}\n"))
+                .isEntrypoint());
+        Assert.assertFalse(index.classify(write(dir, "commented.dart", "library c;\n/*\nmain() {}\n*/\n"))
+                .isEntrypoint());
+        SourceIndex.Classification part = index.classify(write(dir, "part.dart", "part of app;\n\nmain() {}\n"));
+        Assert.assertTrue(part.isPart());
+        Assert.assertFalse(part.isEntrypoint());
+
+        Assert.assertTrue(index.classify(write(dir, "a_test.dart",
+                "import 'package:unittest/unittest.dart';\n\nmain() {}\n")).importsTestFramework());
+        Assert.assertFalse(index.classify(write(dir, "b_test.dart",
+                "import 'package:unittest_helpers/helpers.dart';\n\nmain() {}\n")).importsTestFramework());
+    }
+
+    @Test
+    public void testCachedByContent() throws IOException {
+        File dir = Files.createTempDir();
+        File indexFile = new File(dir, "index");
+        SourceIndex index = new SourceIndex(indexFile);
+        index.classify(write(dir, "a.dart", "main() {}\n"));
+        index.classify(write(dir, "b.dart", "main() {}\n"));
+        Assert.assertEquals(index.getScanned(), 1);
+        index.save();
+
+        SourceIndex reloaded = new SourceIndex(indexFile);
+        Assert.assertTrue(reloaded.classify(new File(dir, "a.dart")).isEntrypoint());
+        Assert.assertFalse(reloaded.classify(write(dir, "a.dart", "library a;\n")).isEntrypoint());
+        Assert.assertEquals(reloaded.getScanned(), 1);
+    }
+
+    private static File write(File dir, String name, String content) throws IOException {
+        File file = new File(dir, name);
+        Files.write(content, file, Charsets.UTF_8);
+        return file;
+    }
+}